@@ -2,6 +2,8 @@ plugins {
     id("java")
     id("org.springframework.boot") version "3.5.3"
     id("io.spring.dependency-management") version "1.1.7"
+    // JMH 效能基準測試：src/jmh/java，執行 ./gradlew jmh
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "org.example.demo"
@@ -19,6 +21,9 @@ repositories {
 
 dependencies {
     implementation("org.springframework.boot:spring-boot-starter-web")
+    // 指標：每個端點的延遲直方圖、處理中請求數、批次筆數分佈，由 /actuator/prometheus 提供抓取
+    implementation("org.springframework.boot:spring-boot-starter-actuator")
+    runtimeOnly("io.micrometer:micrometer-registry-prometheus")
     testImplementation("org.springframework.boot:spring-boot-starter-test")
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 
@@ -26,8 +31,31 @@ dependencies {
     // 【Spring Boot】第13課－使用 Swagger UI 製作 API 文件與呼叫介面
     // https://mvnrepository.com/artifact/org.springdoc/springdoc-openapi-starter-webmvc-ui
     implementation("org.springdoc:springdoc-openapi-starter-webmvc-ui:2.8.6")
+
+    // 二進位格式的內容協商：Accept / Content-Type 為 application/cbor、application/x-jackson-smile、application/x-protobuf
+    implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-cbor")
+    implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-smile")
+    implementation("com.google.protobuf:protobuf-java:4.31.1")
 }
 
 tasks.withType<Test> {
     useJUnitPlatform()
 }
+
+// JMH 設定：結果以 JSON 輸出到 build/results/jmh/results.json，方便在版本之間比較、抓出效能退步
+jmh {
+    jmhVersion = "1.37"
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("results/jmh/results.json")
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    // 只跑部分基準、部分資料量或部分存儲時：./gradlew jmh -Pjmh.includes=CoffeeLookupBenchmark -Pjmh.size=1000,100000 -Pjmh.engine=off-heap
+    providers.gradleProperty("jmh.includes").orNull?.let { includes = listOf(it) }
+    providers.gradleProperty("jmh.size").orNull?.let {
+        benchmarkParameters.put("size", objects.listProperty<String>().value(it.split(",")))
+    }
+    providers.gradleProperty("jmh.engine").orNull?.let {
+        benchmarkParameters.put("engine", objects.listProperty<String>().value(it.split(",")))
+    }
+}
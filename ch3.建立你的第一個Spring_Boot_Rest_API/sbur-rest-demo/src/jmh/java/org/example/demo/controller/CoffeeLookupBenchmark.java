@@ -0,0 +1,109 @@
+package org.example.demo.controller;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// RestApiDemoController 熱點路徑的 JMH 基準測試：id 查詢、名稱查詢、PUT 更新。
+// 和控制器放在同一個 package，才能直接呼叫 package-private 的端點方法，不經過 HTTP。
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.example.demo.metrics.CoffeeMetrics;
+import org.example.demo.model.Coffee;
+import org.example.demo.repository.CoffeeStore;
+import org.example.demo.repository.HeapCoffeeStore;
+import org.example.demo.repository.OffHeapCoffeeStore;
+import org.example.demo.service.CoffeeCatalogCache;
+import org.example.demo.service.CoffeeStreamReader;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.context.request.ServletWebRequest;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+public class CoffeeLookupBenchmark
+{
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    // coffee.store.engine：堆積內的索引或堆積外的欄式存儲
+    @Param({"heap", "off-heap"})
+    private String engine;
+
+    private RestApiDemoController controller;
+    private String[] ids;
+    private String[] names;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        CoffeeStore store = engine.equals("heap") ? new HeapCoffeeStore() : new OffHeapCoffeeStore();
+        ObjectMapper objectMapper = new ObjectMapper();
+        controller = new RestApiDemoController(store, new CoffeeCatalogCache(store, objectMapper, Integer.MAX_VALUE),
+                new CoffeeStreamReader(objectMapper), 1000, 10000, new CoffeeMetrics(new SimpleMeterRegistry()));
+
+        List<Coffee> coffees = new ArrayList<>(size);
+        ids = new String[size];
+        names = new String[size];
+        for (int i = 0; i < size; i++)
+        {
+            Coffee coffee = new Coffee("Coffee " + i);
+            coffees.add(coffee);
+            ids[i] = coffee.getId();
+            names[i] = coffee.getName();
+        }
+        controller.postCoffees(coffees);
+    }
+
+    @Benchmark
+    public ResponseEntity<Optional<Coffee>> getCoffeeById() throws HttpMediaTypeNotAcceptableException
+    {
+        // 沒有 If-None-Match 的請求：每次都要比對版本號、設定 ETag 標頭並返回咖啡
+        ServletWebRequest request = new ServletWebRequest(new MockHttpServletRequest("GET", "/coffees"),
+                new MockHttpServletResponse());
+        return controller.getCoffeeById(ids[ThreadLocalRandom.current().nextInt(size)], request);
+    }
+
+    // 版本沒有變更時 GET /coffees 直接返回快取的 gzip 位元組
+    @Benchmark
+    public ResponseEntity<?> getCoffees()
+    {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/coffees");
+        request.addHeader("Accept-Encoding", "gzip, deflate, br");
+        return controller.getCoffees(new ServletWebRequest(request, new MockHttpServletResponse()));
+    }
+
+    @Benchmark
+    public Optional<Coffee> getCoffeeByName()
+    {
+        ServletWebRequest request = new ServletWebRequest(new MockHttpServletRequest("GET", "/coffees/name"),
+                new MockHttpServletResponse());
+        return controller.getCoffeeByName(names[ThreadLocalRandom.current().nextInt(size)], request);
+    }
+
+    @Benchmark
+    public ResponseEntity<Coffee> putCoffee()
+    {
+        int i = ThreadLocalRandom.current().nextInt(size);
+        return controller.putCoffee(ids[i], new Coffee(ids[i], names[i]));
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.demo.model;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 比較 JSON、CBOR、Smile、Protobuf 四種格式編碼和解碼 POST /coffees/batch 大小的咖啡集合所需的時間，
+// 並在每一輪開始時印出各格式的位元組數。
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.example.demo.protobuf.CoffeeProtobuf;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CoffeeFormatBenchmark
+{
+    @Param({"100000"})
+    private int size;
+
+    @Param({"json", "cbor", "smile", "protobuf"})
+    private String format;
+
+    private ObjectMapper mapper;        // protobuf 時為 null
+    private List<Coffee> coffees;
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        mapper = switch (format)
+        {
+            case "json" -> new ObjectMapper();
+            case "cbor" -> new CBORMapper();
+            case "smile" -> new SmileMapper();
+            default -> null;
+        };
+
+        coffees = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+        {
+            coffees.add(new Coffee("Coffee " + i));
+        }
+        payload = encode();
+        System.out.printf("%n%s: %d coffees = %d bytes (%.1f bytes/coffee)%n",
+                format, size, payload.length, (double) payload.length / size);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException
+    {
+        if (mapper != null)
+        {
+            return mapper.writeValueAsBytes(coffees);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CoffeeProtobuf.writeCoffees(coffees, out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public List<Coffee> decode() throws IOException
+    {
+        if (mapper != null)
+        {
+            return Arrays.asList(mapper.readValue(payload, Coffee[].class));
+        }
+        return CoffeeProtobuf.readCoffees(new ByteArrayInputStream(payload));
+    }
+}
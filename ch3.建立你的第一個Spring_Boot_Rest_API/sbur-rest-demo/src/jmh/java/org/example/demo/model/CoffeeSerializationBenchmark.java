@@ -0,0 +1,56 @@
+package org.example.demo.model;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// Coffee 清單的 Jackson 序列化基準測試，也就是 GET /coffees 的主要成本。
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CoffeeSerializationBenchmark
+{
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<Coffee> coffees;
+    private byte[] json;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JsonProcessingException
+    {
+        coffees = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+        {
+            coffees.add(new Coffee("Coffee " + i));
+        }
+        json = objectMapper.writeValueAsBytes(coffees);
+    }
+
+    @Benchmark
+    public byte[] serializeList() throws JsonProcessingException
+    {
+        return objectMapper.writeValueAsBytes(coffees);
+    }
+
+    @Benchmark
+    public Coffee[] deserializeList() throws java.io.IOException
+    {
+        return objectMapper.readValue(json, Coffee[].class);
+    }
+}
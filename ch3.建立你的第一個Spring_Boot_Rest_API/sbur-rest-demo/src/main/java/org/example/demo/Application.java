@@ -5,10 +5,12 @@ package org.example.demo;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableAsync;
 // import org.springframework.web.bind.annotation.RequestParam;
 // import org.springframework.web.bind.annotation.GetMapping;
 
 @SpringBootApplication
+@EnableAsync(proxyTargetClass = true)  // 啟用 @Async，DataLoader 在啟動完成後以背景執行緒載入初始資料；它實作了 HealthIndicator，必須用類別代理
 public class Application
 {
     public static void main(String[] args)
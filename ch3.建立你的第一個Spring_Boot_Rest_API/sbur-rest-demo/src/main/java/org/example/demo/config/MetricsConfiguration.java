@@ -0,0 +1,45 @@
+package org.example.demo.config;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 註冊請求指標攔截器。延遲直方圖和 Prometheus 端點的設定在 application.properties。
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+import org.example.demo.metrics.RequestMetricsInterceptor;
+
+/**
+ * 指標設定
+ * 只攔截咖啡 API，/actuator 和 Swagger UI 的請求不計入。
+ */
+@Configuration(proxyBeanMethods = false)
+public class MetricsConfiguration implements WebMvcConfigurer
+{
+    private final RequestMetricsInterceptor requestMetricsInterceptor;
+
+
+    /**
+     * 構造函數
+     * @param registry 指標註冊表
+     * @param slowCallThreshold 處理時間超過這個門檻的請求會記到日誌，例如 500ms、2s
+     */
+    public MetricsConfiguration(MeterRegistry registry,
+                                @Value("${coffee.metrics.slow-call-threshold:500ms}") Duration slowCallThreshold)
+    {
+        this.requestMetricsInterceptor = new RequestMetricsInterceptor(registry, slowCallThreshold);
+    }
+
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry)
+    {
+        // 變更串流是長連線，處理時間就是連線時間，不列入延遲和慢請求
+        registry.addInterceptor(requestMetricsInterceptor).addPathPatterns("/coffees", "/coffees/**")
+                .excludePathPatterns("/coffees/changes");
+    }
+}
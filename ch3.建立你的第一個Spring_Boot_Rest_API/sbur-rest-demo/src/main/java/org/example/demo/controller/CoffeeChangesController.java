@@ -0,0 +1,75 @@
+package org.example.demo.controller;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 以 Server-Sent Events 推送咖啡的新增、更新和刪除，下游快取可以增量更新而不必定時重新取得整個列表。
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import org.example.demo.model.CoffeeChange;
+import org.example.demo.service.CoffeeChangeFeed;
+
+/**
+ * 咖啡變更串流控制器
+ * 事件名稱是 change、ready 或 reset，資料是 CoffeeChange 的 JSON；
+ * 收到 reset 時客戶端必須重新取得 GET /coffees，之後從 reset 事件的 id 接續。
+ */
+@Tag(name = "Coffee API", description = "提供咖啡相關的 API") // Swagger 註解，用於生成 API 文檔
+@RestController
+@RequestMapping("/coffees/changes")
+public class CoffeeChangesController
+{
+    private final CoffeeChangeFeed feed;
+
+
+    /**
+     * 構造函數
+     * @param feed 咖啡變更串流
+     */
+    public CoffeeChangesController(CoffeeChangeFeed feed)
+    {
+        this.feed = feed;
+    }
+
+
+    /**
+     * 訂閱咖啡變更的端點
+     * 瀏覽器的 EventSource 重新連線時會自動帶上 Last-Event-ID 標頭；無法設定標頭的客戶端可以改用 lastEventId 參數
+     * @param lastEventIdHeader 最後收到的事件 id（標頭）
+     * @param lastEventIdParam 最後收到的事件 id（查詢參數），標頭存在時忽略
+     * @return 返回 text/event-stream 的變更串流
+     */
+    @Operation(summary = "訂閱咖啡變更", description = "以 Server-Sent Events 推送新增、更新和刪除，可以用 Last-Event-ID 從斷線的位置接續") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "開始推送變更",
+                    content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE, schema = @Schema(implementation = CoffeeChange.class))),
+            @ApiResponse( responseCode = "503", description = "訂閱數已經到達上限")
+    })
+    @GetMapping()
+    SseEmitter subscribe(@RequestHeader(name = "Last-Event-ID", required = false) String lastEventIdHeader,
+                         @Parameter(description = "最後收到的事件 id") @RequestParam(name = "lastEventId", required = false) String lastEventIdParam)
+    {
+        try
+        {
+            return feed.subscribe((lastEventIdHeader != null) ? lastEventIdHeader : lastEventIdParam);
+        }
+        catch (IllegalStateException e)
+        {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), e);
+        }
+    }
+}
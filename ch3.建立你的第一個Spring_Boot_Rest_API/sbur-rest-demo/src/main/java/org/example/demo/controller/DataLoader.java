@@ -0,0 +1,104 @@
+package org.example.demo.controller;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 初始咖啡數據原本在控制器的構造函數裡建立，會拖慢啟動；改成啟動完成後再以背景執行緒從 JSON / NDJSON 檔案匯入。
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import org.example.demo.model.SeedImportResult;
+import org.example.demo.repository.CoffeeStore;
+import org.example.demo.service.CoffeeSeedImporter;
+
+/**
+ * 初始咖啡數據的載入器
+ * 等應用程式啟動完成 (ApplicationReadyEvent) 後以背景執行緒載入，初始資料再多也不會拖慢啟動時間。
+ * 要匯入哪些檔案由 coffee.seed.locations 決定，見 CoffeeSeedImporter。
+ * 存儲在啟動時已經有咖啡（從 coffee.journal 的快照和日誌復原）就不再匯入，避免蓋掉重新啟動前的修改。
+ * 載入完成之前，健康檢查 dataLoader 回報 OUT_OF_SERVICE；它屬於 readiness 群組，
+ * 所以 /actuator/health/readiness 會回應 503，負載平衡器在載入完成之前不會把流量導過來。
+ */
+@Component
+public class DataLoader implements HealthIndicator
+{
+    private static final Logger log = LoggerFactory.getLogger(DataLoader.class);
+
+    private final CoffeeSeedImporter importer;
+    private final CoffeeStore coffees;
+    private final boolean enabled;
+
+    // 載入結果：還沒完成時都是 null
+    private volatile Long loaded;
+    private volatile Throwable failure;
+
+
+    /**
+     * 構造函數
+     * @param importer 初始資料匯入器
+     * @param coffees 咖啡存儲
+     * @param enabled 是否在啟動時載入初始資料
+     */
+    public DataLoader(CoffeeSeedImporter importer, CoffeeStore coffees, @Value("${coffee.seed.enabled:true}") boolean enabled)
+    {
+        this.importer = importer;
+        this.coffees = coffees;
+        this.enabled = enabled;
+        if (!enabled)
+        {
+            loaded = 0L;
+        }
+    }
+
+
+    /**
+     * 載入初始咖啡數據，每個檔案串流解析、分段寫入存儲
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadData()
+    {
+        if (!enabled)
+        {
+            return;
+        }
+        if (coffees.size() > 0)
+        {
+            log.info("存儲已經有 {} 個咖啡，不匯入初始資料", coffees.size());
+            loaded = 0L;
+            return;
+        }
+
+        try
+        {
+            SeedImportResult result = importer.importAll();
+            loaded = result.accepted();
+        }
+        catch (Exception e)
+        {
+            failure = e;
+            log.error("載入初始咖啡失敗", e);
+        }
+    }
+
+
+    @Override
+    public Health health()
+    {
+        if (failure != null)
+        {
+            return Health.down(failure).build();
+        }
+        if (loaded == null)
+        {
+            return Health.outOfService().build();
+        }
+        return Health.up().withDetail("loaded", loaded).build();
+    }
+}
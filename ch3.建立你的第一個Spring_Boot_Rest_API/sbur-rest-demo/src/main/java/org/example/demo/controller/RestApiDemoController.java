@@ -9,9 +9,16 @@ package org.example.demo.controller;
 // https://chikuwacode.github.io/articles/spring-boot-swagger-ui-openapi-documentation/
 // 【Spring Boot】第13課－使用 Swagger UI 製作 API 文件與呼叫介面
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import io.swagger.v3.oas.annotations.tags.Tag; // Swagger 註解，用於生成 API 文檔o
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -23,11 +30,23 @@ import io.swagger.v3.oas.annotations.Parameter; // 用於描述方法參數的 S
 import io.swagger.v3.oas.annotations.media.ExampleObject; // 用於提供參數範例的 Swagger 註解
 
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 
+import org.example.demo.metrics.CoffeeMetrics;
+import org.example.demo.model.BatchSummary;
+import org.example.demo.model.BulkResult;
 import org.example.demo.model.Coffee;
+import org.example.demo.model.CoffeeId;
+import org.example.demo.model.CoffeeLookup;
+import org.example.demo.protobuf.CoffeeProtobufHttpMessageConverter;
+import org.example.demo.repository.CoffeeStore;
+import org.example.demo.service.CoffeeCatalogCache;
+import org.example.demo.service.CoffeeStreamReader;
 
 /**
  * REST API 控制器
@@ -37,23 +56,49 @@ import org.example.demo.model.Coffee;
 @RestController // 標記這個類別為 REST 控制器，自動將返回值轉換為 JSON 格式
 public class RestApiDemoController
 {
-    // 存儲咖啡數據的內存集合
-    private List<Coffee> coffees = new ArrayList<>();
+    // 存儲咖啡數據的內存集合，以 id 和 name 建立索引
+    private final CoffeeStore coffees;
+
+    // 預先序列化好的咖啡列表，GET /coffees 直接寫出
+    private final CoffeeCatalogCache catalogCache;
+
+    // 串流批次匯入用的讀取器和每段筆數
+    private final CoffeeStreamReader coffeeStreamReader;
+    private final int batchChunkSize;
+
+    // 一次多筆查詢最多可以帶的 id 數量
+    private final int lookupMaxIds;
+
+    // 批次端點的筆數分佈
+    private final CoffeeMetrics metrics;
+
+    // ETag 的前綴：版本號在重新啟動後會從 0 開始，加上啟動時間才不會和重新啟動前的 ETag 重複
+    private final String eTagPrefix = Long.toString(System.currentTimeMillis(), 36) + "-";
 
 
     /**
      * 構造函數
-     * 初始化咖啡列表，新增幾個預設的咖啡數據
+     * 初始咖啡數據改由 DataLoader 在啟動完成後載入
+     * @param coffees 咖啡存儲，用於查詢和更新咖啡數據
+     * @param catalogCache 預先序列化好的咖啡列表
+     * @param coffeeStreamReader 串流批次匯入用的讀取器
+     * @param batchChunkSize 串流批次匯入時，每次寫入存儲的筆數
+     * @param lookupMaxIds 一次多筆查詢最多可以帶的 id 數量
+     * @param metrics 記錄批次端點筆數分佈的指標
      */
-    public RestApiDemoController()
+    public RestApiDemoController(CoffeeStore coffees,
+                                 CoffeeCatalogCache catalogCache,
+                                 CoffeeStreamReader coffeeStreamReader,
+                                 @Value("${coffee.batch.chunk-size:1000}") int batchChunkSize,
+                                 @Value("${coffee.lookup.max-ids:10000}") int lookupMaxIds,
+                                 CoffeeMetrics metrics)
     {
-        // 初始化一些咖啡數據
-        coffees.addAll(List.of(
-                new Coffee("Cafe Cereza"),
-                new Coffee("Cafe Ganador"),
-                new Coffee("Cafe Lareno"),
-                new Coffee("Cafe Tres Pontas")
-        ));
+        this.coffees = coffees;
+        this.catalogCache = catalogCache;
+        this.coffeeStreamReader = coffeeStreamReader;
+        this.batchChunkSize = batchChunkSize;
+        this.lookupMaxIds = lookupMaxIds;
+        this.metrics = metrics;
     }
 
 
@@ -61,46 +106,137 @@ public class RestApiDemoController
     // 使用 @GetMapping 簡化 GET 請求的映射
     /**
      * 獲取所有咖啡的端點
-     * @return 返回所有咖啡的列表
+     * 每個版本只序列化、壓縮一次，之後的請求直接寫出快取的位元組；
+     * 列表太大不快取，或這個版本正在建立快取時，把存儲交給訊息轉換器串流寫出，和沒有快取時相同；
+     * 帶 If-None-Match 且存儲沒有變更時返回 304
+     * @param request 用來比對 If-None-Match、讀取 Accept-Encoding 並設定 ETag 和 Vary 標頭
+     * @return 返回所有咖啡的 JSON（快取的位元組，客戶端接受時以 gzip 壓縮；或串流寫出的列表）；沒有變更時返回 null（304 Not Modified）
      */
     @Operation(summary = "獲取所有咖啡", description = "返回所有咖啡的列表") // Swagger 註解，用於生成 API 文檔
     @ApiResponses( value = {        // 定義可能的 HTTP 響應狀態碼和描述
-           @ApiResponse( responseCode = "200", description = "成功獲取所有咖啡", content = @Content(schema = @Schema(implementation = Coffee.class))),
+           @ApiResponse( responseCode = "200", description = "成功獲取所有咖啡", content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = Coffee.class)))),
+           @ApiResponse( responseCode = "304", description = "咖啡列表沒有變更"),
            @ApiResponse( responseCode = "404", description = "找不到端點")
     })
     @GetMapping("/coffees")     // 映射 HTTP GET 請求到 /coffees 路徑
-    Iterable<Coffee> getCoffees()
+    ResponseEntity<?> getCoffees(NativeWebRequest request)
     {
-        // 選用 Iterable<Coffee> 因為任何可迭代的型別(iterable type) 都能適切地提供所需的功能性。
-        return coffees;     // 返回所有咖啡對象
+        // 同一個 URL 也可能協商出二進位格式 (getCoffeesBinary)，所以也依 Accept 而不同
+        CoffeeRepresentations.vary(request, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+
+        // 依加入順序排列的所有咖啡，已經序列化成 JSON
+        Optional<CoffeeCatalogCache.Snapshot> cached = catalogCache.get();
+        if (cached.isEmpty())
+        {
+            // 先取版本號再讀資料，見 CoffeeStore.version()；ETag 和快取的 JSON 相同
+            if (request.checkNotModified(CoffeeRepresentations.eTag(catalogCache.eTag(coffees.version()), MediaType.APPLICATION_JSON)))
+            {
+                return null;
+            }
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(coffees.findAll());
+        }
+
+        CoffeeCatalogCache.Snapshot catalog = cached.get();
+        boolean gzip = CoffeeCatalogCache.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (request.checkNotModified(CoffeeRepresentations.eTag(gzip ? catalog.gzipETag() : catalog.eTag(), MediaType.APPLICATION_JSON)))
+        {
+            return null;
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON);
+        return gzip
+                ? response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(catalog.gzip())
+                : response.body(catalog.json());
+    }
+
+
+    /**
+     * 以二進位格式獲取所有咖啡的端點
+     * 預先序列化的快取只有 JSON；Accept 指定 CBOR、Smile 或 Protobuf 時改由這個方法處理，
+     * 交給對應的訊息轉換器序列化
+     * @param request 用來協商格式、比對 If-None-Match 並設定 ETag 和 Vary 標頭
+     * @return 返回所有咖啡的列表；沒有變更時返回 null（304 Not Modified）
+     * @throws HttpMediaTypeNotAcceptableException Accept 不接受任何二進位格式
+     */
+    @Operation(summary = "以二進位格式獲取所有咖啡", description = "依 Accept 標頭返回 CBOR、Smile 或 Protobuf 格式的咖啡列表") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+           @ApiResponse( responseCode = "200", description = "成功獲取所有咖啡"),
+           @ApiResponse( responseCode = "304", description = "咖啡列表沒有變更")
+    })
+    @GetMapping(value = "/coffees", produces = {"application/cbor", "application/x-jackson-smile", CoffeeProtobufHttpMessageConverter.PROTOBUF_VALUE})
+    ResponseEntity<Iterable<Coffee>> getCoffeesBinary(NativeWebRequest request) throws HttpMediaTypeNotAcceptableException
+    {
+        // 不同格式的內容不同，ETag 加上協商出來的格式區分，才不會和 JSON 的 ETag 相同
+        MediaType type = CoffeeRepresentations.negotiate(request, CoffeeRepresentations.BINARY);
+        CoffeeRepresentations.vary(request, HttpHeaders.ACCEPT);
+        if (request.checkNotModified(CoffeeRepresentations.eTag(eTagPrefix + coffees.version(), type)))
+        {
+            return null;
+        }
+        return ResponseEntity.ok().contentType(type).body(coffees.findAll());
     }
 
 
     /**
      * 根據 ID 獲取特定咖啡的端點
+     * ETag 是這個咖啡最後一次寫入時的版本號加上協商出來的格式；If-None-Match 相符時返回 304，不序列化
      * @param id 咖啡的唯一識別碼
-     * @return 如果找到匹配的咖啡，返回包含該咖啡的 Optional；否則返回空的 Optional
+     * @param request 用來協商格式、比對 If-None-Match 並設定 ETag 和 Vary 標頭
+     * @return 如果找到匹配的咖啡，返回包含該咖啡的 Optional；否則返回空的 Optional；沒有變更時返回 null（304 Not Modified）
+     * @throws HttpMediaTypeNotAcceptableException Accept 不接受任何支援的格式
      */
     @Operation(summary = "根據 ID 獲取特定咖啡", description = "根據咖啡的唯一識別碼返回對應的咖啡對象") // Swagger 註解，用於生成 API 文檔
     @ApiResponses( value = {
             @ApiResponse( responseCode = "200", description = "成功獲取特定咖啡", content = @Content(schema = @Schema(implementation = Coffee.class))),
+            @ApiResponse( responseCode = "304", description = "咖啡沒有變更"),
     })
     @GetMapping("/coffees/{id}")        // 映射 HTTP GET 請求到 /coffees/{id} 路徑，{id} 是路徑變量
-    Optional<Coffee> getCoffeeById(
+    ResponseEntity<Optional<Coffee>> getCoffeeById(
             @Parameter(description = "咖啡的唯一識別碼", example = "1f0cc0fc-f672-4fc1-a062-3dfaa514dcc3", required = true) // Swagger 註解，描述此參數
-            @PathVariable String id)     // @PathVariable 從 URL 路徑中提取 id 參數
+            @PathVariable String id,     // @PathVariable 從 URL 路徑中提取 id 參數
+            NativeWebRequest request) throws HttpMediaTypeNotAcceptableException
     {
-        // 遍歷咖啡列表，查找匹配的 ID
-        // 如果找到，返回該咖啡的 Optional；否則返回空的
-        for (Coffee coffee : coffees)
+        MediaType type = CoffeeRepresentations.negotiate(request, CoffeeRepresentations.ALL);
+        CoffeeRepresentations.vary(request, HttpHeaders.ACCEPT);
+
+        // 直接查主索引，不再遍歷整個列表
+        Optional<CoffeeStore.VersionedCoffee> found = coffees.findVersionedById(id);
+        if (found.isPresent() && request.checkNotModified(CoffeeRepresentations.eTag(eTagPrefix + found.get().version(), type)))
         {
-            if (coffee.getId().equals(id))
-            {
-                return Optional.of(coffee);
-            }
+            return null;
         }
+        // 以協商出來的格式寫出，和 ETag 一致
+        return ResponseEntity.ok().contentType(type).body(found.map(CoffeeStore.VersionedCoffee::coffee));
+    }
+
 
-        return Optional.empty();
+    /**
+     * 一次根據多個 ID 獲取咖啡的端點
+     * 取代呼叫 N 次 GET /coffees/{id}，整批只查一遍索引
+     * @param ids 咖啡的唯一識別碼集合，重複的 id 只會查一次
+     * @return 返回找到的咖啡和找不到的 id
+     */
+    @Operation(summary = "根據多個 ID 獲取咖啡", description = "一次查詢多個 id，返回找到的咖啡和找不到的 id") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "查詢完成", content = @Content(schema = @Schema(implementation = CoffeeLookup.class))),
+            @ApiResponse( responseCode = "400", description = "id 數量超過上限，或有 id 是 null")
+    })
+    @PostMapping("/coffees/lookup")
+    CoffeeLookup lookupCoffees(
+            @Parameter(description = "咖啡的唯一識別碼集合", example = "[\"99999\", \"88888\"]", required = true)
+            @RequestBody List<String> ids)
+    {
+        if (ids.size() > lookupMaxIds)
+        {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "一次最多查詢 " + lookupMaxIds + " 個 id");
+        }
+        requireNonNullIds(ids);
+
+        List<Coffee> found = new ArrayList<>(ids.size());
+        List<String> missing = new ArrayList<>();
+        coffees.findAllById(new LinkedHashSet<>(ids), found, missing);
+        return new CoffeeLookup(found, missing);
     }
 
 
@@ -112,15 +248,16 @@ public class RestApiDemoController
     @Operation(summary = "新增一組咖啡", description = "將新的咖啡對象添加到列表中") // Swagger 註解，用於生成 API 文檔
     @ApiResponses( value = {
             @ApiResponse( responseCode = "201", description = "成功新增咖啡", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Coffee.class))),
-            @ApiResponse( responseCode = "400", description = "請求錯誤，可能是缺少必要的字段")
+            @ApiResponse( responseCode = "400", description = "請求錯誤，可能是缺少必要的字段或 id 為 null")
     })
     @PostMapping("/coffees")
     Coffee postCoffee(
             @Parameter(description = "要新增的咖啡對象", examples = { @ExampleObject( name = "拿鐵咖啡", value = "{\"name\" : \"拿鐵咖啡\", \"id\" : \"99999\"}") }, required = true)
             @RequestBody Coffee coffee)
     {
-        // 將新咖啡添加到列表中
-        coffees.add(coffee);
+        requireIds(List.of(coffee));
+        // 將新咖啡添加到列表中，ID 已存在時會更新原本的咖啡
+        coffees.save(coffee);
         return coffee; // 返回新增的咖啡對象
     }
 
@@ -165,20 +302,15 @@ public class RestApiDemoController
             @Parameter(description = "咖啡的名稱", example = "Cafe Ganador", required = true)
             @RequestBody Coffee coffee)
     {
-        int coffeeIndex = -1;
-
-        for(Coffee c: coffees)
-        {
-            if(c.getId().equals(id))
-            {
-                coffeeIndex = coffees.indexOf(c);
-                coffees.set(coffeeIndex, coffee);
-            }
-        }
-
-        return (coffeeIndex == -1) ?
-                new ResponseEntity<>(postCoffee(coffee), HttpStatus.CREATED) :
-                new ResponseEntity<>(coffee, HttpStatus.OK);
+        // 原本的寫法在迴圈裡呼叫 indexOf()，整體是 O(n²)；現在交給存儲做一次 O(1) 的新增或更新
+        // 以路徑上的 id 為準，Coffee 的 id 是 final，所以用請求內容的名稱重新建立
+        CoffeeId targetId = CoffeeId.of(id);
+        Coffee target = targetId.equals(coffee.id()) ? coffee : new Coffee(targetId, coffee.getName());
+        boolean created = coffees.save(target);
+
+        return created ?
+                new ResponseEntity<>(target, HttpStatus.CREATED) :
+                new ResponseEntity<>(target, HttpStatus.OK);
     }
 
 
@@ -197,7 +329,7 @@ public class RestApiDemoController
             @Parameter(description = "咖啡的唯一識別碼", example = "1f0cc0fc-f672-4fc1-a062-3dfaa514dcc3", required = true)
             @PathVariable String id)
     {
-        coffees.removeIf( c -> c.getId().equals(id));
+        coffees.deleteById(id);
     }
 
 
@@ -214,20 +346,12 @@ public class RestApiDemoController
     @GetMapping("/coffees/name/{name}")     // 不能使用 @GetMapping("/coffees/{name}")，因為 {name} 和先前的 {id} 會分不出來。
     Optional<Coffee> getCoffeeByName(
             @Parameter(description = "咖啡的名稱", example = "Cafe Lareno", required = true)
-            @PathVariable String name)     // @PathVariable 從 URL 路徑中提取 id 參數
+            @PathVariable String name,     // @PathVariable 從 URL 路徑中提取 id 參數
+            NativeWebRequest request)
     {
-        // 遍歷咖啡列表，查找匹配的 Name
-        // 如果找到，返回該咖啡的 Optional；否則返回空的
-
-        for (Coffee coffee : coffees)
-        {
-            if (coffee.getName().equals(name))
-            {
-                return Optional.of(coffee);
-            }
-        }
-
-        return Optional.empty();
+        CoffeeRepresentations.vary(request, HttpHeaders.ACCEPT);      // 沒有 ETag，但格式仍然依 Accept 協商
+        // 查名稱的次索引，名稱重複時返回最早加入的那一個
+        return coffees.findByName(name);
     }
 
     // 傳來的 json 是很多 Coffee 物件的集合
@@ -240,18 +364,123 @@ public class RestApiDemoController
     @Operation(summary = "新增咖啡組合", description = "將新的咖啡 Json 集合添加到列表中") // Swagger 註解，用於生成 API 文檔
     @ApiResponses( value = {
             @ApiResponse( responseCode = "201", description = "成功新增咖啡組合", content = @Content(array = @ArraySchema(schema = @Schema(implementation = Coffee.class)))),
-            @ApiResponse( responseCode = "400", description = "請求錯誤，可能是缺少必要的字段")
+            @ApiResponse( responseCode = "400", description = "請求錯誤，可能是缺少必要的字段或 id 為 null")
     })
     @PostMapping("/coffees/batch")
     List<Coffee> postCoffees(
             @Parameter(description = "咖啡的名稱", example = "Cafe Lareno", required = true)
             @RequestBody List<Coffee> coffees)
     {
+        requireIds(coffees);
         // 將新咖啡添加到列表中
-        this.coffees.addAll(coffees);
+        metrics.recordBatchSize("upsert", coffees.size());
+        this.coffees.saveAll(coffees);
         return coffees; // 返回新增的咖啡對象集合
     }
 
+
+    /**
+     * 批次刪除咖啡的端點
+     * @param ids 要刪除的咖啡 id 集合
+     * @return 返回請求筆數和實際刪除的筆數
+     */
+    @Operation(summary = "批次刪除咖啡", description = "根據 id 集合一次刪除多個咖啡") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "刪除完成", content = @Content(schema = @Schema(implementation = BulkResult.class))),
+            @ApiResponse( responseCode = "400", description = "有 id 是 null")
+    })
+    @DeleteMapping("/coffees/batch")
+    BulkResult deleteCoffees(
+            @Parameter(description = "要刪除的咖啡 id 集合", example = "[\"99999\", \"88888\"]", required = true)
+            @RequestBody List<String> ids)
+    {
+        requireNonNullIds(ids);
+        metrics.recordBatchSize("delete", ids.size());
+        return new BulkResult(ids.size(), coffees.deleteAllById(ids));
+    }
+
+
+    /**
+     * 批次改名的端點
+     * 只更新已經存在的咖啡，找不到的 id 會略過，不會新增
+     * @param coffees 帶有 id 和新名稱的咖啡集合
+     * @return 返回請求筆數和實際更新的筆數
+     */
+    @Operation(summary = "批次改名", description = "根據 id 一次更新多個咖啡的名稱") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "更新完成", content = @Content(schema = @Schema(implementation = BulkResult.class))),
+            @ApiResponse( responseCode = "400", description = "有咖啡或 id 是 null")
+    })
+    @PatchMapping("/coffees/batch")
+    BulkResult renameCoffees(
+            @Parameter(description = "帶有 id 和新名稱的咖啡集合", required = true)
+            @RequestBody List<Coffee> coffees)
+    {
+        requireIds(coffees);
+        metrics.recordBatchSize("rename", coffees.size());
+        return new BulkResult(coffees.size(), this.coffees.renameAll(coffees));
+    }
+
+
+    /**
+     * 串流批次新增咖啡的端點
+     * 不把整個請求內容綁定成 List，而是邊讀邊寫，每讀滿一段就寫入存儲，記憶體用量和請求大小無關
+     * @param body 請求內容，可以是 JSON 陣列或 NDJSON
+     * @return 返回匯入結果摘要，而不是每一筆咖啡
+     */
+    @Operation(summary = "串流新增咖啡組合", description = "逐筆解析 JSON 陣列或 NDJSON，分段寫入，只返回成功與略過的筆數") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "匯入完成", content = @Content(schema = @Schema(implementation = BatchSummary.class))),
+            @ApiResponse( responseCode = "400", description = "請求內容不是合法的 JSON；錯誤之前的段落已經寫入")
+    })
+    @PostMapping(value = "/coffees/batch/stream", consumes = {"application/json", "application/x-ndjson"})
+    BatchSummary postCoffeesStream(
+            @Parameter(description = "JSON 陣列或 NDJSON 格式的咖啡集合", required = true)
+            InputStream body) throws IOException
+    {
+        try
+        {
+            BatchSummary summary = coffeeStreamReader.read(body, batchChunkSize, this.coffees::saveAll);
+            metrics.recordBatchSize("stream", summary.accepted());
+            return summary;
+        }
+        catch (CoffeeStreamReader.PartialReadException e)
+        {
+            if (!(e.getCause() instanceof JsonProcessingException json))
+            {
+                throw (IOException) e.getCause();
+            }
+            // 格式錯誤之前已經寫入的段落不會回滾，在錯誤訊息裡告訴客戶端寫入了多少
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "JSON 格式錯誤（之前已經寫入 " + e.written().accepted() + " 筆）：" + json.getOriginalMessage(), e);
+        }
+    }
+
+
+    // JSON 陣列裡的 null 元素會在去除重複或查詢時拋出 NullPointerException，以 400 拒絕
+    private static void requireNonNullIds(List<String> ids)
+    {
+        for (String id : ids)
+        {
+            if (id == null)
+            {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "id 不可以是 null");
+            }
+        }
+    }
+
+    // JSON 的 "id": null 會讓咖啡沒有 id，存儲的索引不接受 null 鍵，在寫入之前以 400 拒絕
+    private static void requireIds(List<Coffee> coffees)
+    {
+        for (Coffee coffee : coffees)
+        {
+            if (coffee == null || coffee.id() == null)
+            {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "咖啡的 id 不可以是 null");
+            }
+        }
+    }
+
 }
 
 
@@ -0,0 +1,67 @@
+package org.example.demo.controller;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 手動重新匯入初始資料，例如更新了 coffee.seed.locations 指向的檔案之後，不必重新啟動服務。
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+
+import org.example.demo.model.SeedImportResult;
+import org.example.demo.service.CoffeeSeedImporter;
+
+/**
+ * 初始資料匯入控制器
+ * 只會匯入 coffee.seed.locations 設定的檔案，不接受請求指定檔案位置，避免讀取伺服器上任意的檔案。
+ */
+@Tag(name = "Seed API", description = "提供初始資料匯入的 API") // Swagger 註解，用於生成 API 文檔
+@RestController
+@RequestMapping("/admin/seed")
+public class SeedImportController
+{
+    private final CoffeeSeedImporter importer;
+
+
+    /**
+     * 構造函數
+     * @param importer 初始資料匯入器
+     */
+    public SeedImportController(CoffeeSeedImporter importer)
+    {
+        this.importer = importer;
+    }
+
+
+    /**
+     * 重新匯入初始資料的端點
+     * 已經存在的 id 會被檔案裡的內容覆蓋；匯入完成後才返回
+     * @return 返回每個檔案的匯入結果
+     */
+    @Operation(summary = "重新匯入初始資料", description = "以串流方式平行解析 coffee.seed.locations 設定的 JSON / NDJSON 檔案並寫入存儲") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "匯入完成", content = @Content(schema = @Schema(implementation = SeedImportResult.class))),
+            @ApiResponse( responseCode = "409", description = "已經有一個匯入正在進行")
+    })
+    @PostMapping()
+    SeedImportResult importSeed() throws IOException
+    {
+        try
+        {
+            return importer.importAll();
+        }
+        catch (CoffeeSeedImporter.ImportInProgressException e)      // 其他錯誤（例如預寫日誌寫入失敗）仍然是 500
+        {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.example.demo.metrics;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 自訂的 Micrometer 指標。每個端點的延遲由 Spring Boot 的 http.server.requests 計時器記錄，這裡只補上它沒有的部分。
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 咖啡 API 的業務指標
+ * 目前只有批次端點每次請求的筆數分佈（coffee.batch.size），用來判斷延遲變慢是因為請求變大還是服務變慢。
+ */
+@Component
+public class CoffeeMetrics
+{
+    // 批次筆數直方圖的範圍，超出範圍的值仍然會記錄，只是落在最外側的桶子
+    private static final double MIN_BATCH_SIZE = 1;
+    private static final double MAX_BATCH_SIZE = 1_000_000;
+
+    private final MeterRegistry registry;
+
+    // 每種批次操作一個分佈摘要，第一次用到時才註冊
+    private final Map<String, DistributionSummary> batchSizes = new ConcurrentHashMap<>();
+
+
+    /**
+     * 構造函數
+     * @param registry 指標註冊表
+     */
+    public CoffeeMetrics(MeterRegistry registry)
+    {
+        this.registry = registry;
+    }
+
+
+    /**
+     * 記錄一次批次請求的筆數
+     * @param operation 批次操作的名稱，例如 upsert、delete、rename、stream
+     * @param size 請求的筆數
+     */
+    public void recordBatchSize(String operation, long size)
+    {
+        batchSizes.computeIfAbsent(operation, op -> DistributionSummary.builder("coffee.batch.size")
+                        .description("每次批次請求的咖啡筆數")
+                        .baseUnit("coffees")
+                        .tag("operation", op)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(MIN_BATCH_SIZE)
+                        .maximumExpectedValue(MAX_BATCH_SIZE)
+                        .register(registry))
+                .record(size);
+    }
+}
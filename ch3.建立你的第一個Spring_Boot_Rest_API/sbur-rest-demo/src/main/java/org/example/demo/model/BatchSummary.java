@@ -0,0 +1,14 @@
+package org.example.demo.model;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 串流批次匯入的結果摘要，取代把每一筆咖啡原封不動地回傳。
+
+/**
+ * 批次匯入結果摘要
+ * @param accepted 成功匯入的咖啡數量
+ * @param rejected 無法解析或缺少必要欄位而被略過的數量
+ * @param chunks 分段寫入的次數
+ */
+public record BatchSummary(long accepted, long rejected, long chunks)
+{
+}
@@ -0,0 +1,13 @@
+package org.example.demo.model;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 批次刪除或批次改名的結果。
+
+/**
+ * 批次操作結果
+ * @param requested 請求中的筆數
+ * @param affected 實際刪除或更新的筆數，找不到的 id 不算在內
+ */
+public record BulkResult(int requested, int affected)
+{
+}
@@ -9,15 +9,13 @@ package org.example.demo.model;
 // id : 用來唯一識別特定的一種咖啡。
 // name : 以名稱描述咖啡。
 
-import java.util.UUID;
-
 /**
  * Coffee 模型類
  * 代表一種咖啡產品，包含唯一識別碼和名稱
  */
 public class Coffee
 {
-    private final String id;         // 咖啡的唯一識別碼，一旦設定後不可更改
+    private final CoffeeId id;       // 咖啡的唯一識別碼，一旦設定後不可更改；UUID 以兩個 long 存放，見 CoffeeId
     private String name;        // 咖啡的名稱
 
     /**
@@ -26,6 +24,16 @@ public class Coffee
      * @param name 咖啡的名稱
      */
     public Coffee(String id, String name)
+    {
+        this(CoffeeId.of(id), name);
+    }
+
+    /**
+     * 建構函數 - 使用已經解析好的 ID 和名稱建立咖啡實例
+     * @param id 咖啡的唯一識別碼
+     * @param name 咖啡的名稱
+     */
+    public Coffee(CoffeeId id, String name)
     {
         this.id = id;
         this.name = name;
@@ -38,7 +46,7 @@ public class Coffee
     public Coffee(String name)
     {
         // 調用另一個建構函數，並使用 UUID 生成唯一識別碼
-        this(UUID.randomUUID().toString(), name);
+        this(CoffeeId.random(), name);
     }
 
     /**
@@ -48,14 +56,25 @@ public class Coffee
     public Coffee()
     {
         // 因為 id 是 final 的，所以在這裡也需要初始化它。
-        this.id = UUID.randomUUID().toString(); // 自動生成一個唯一識別碼
+        this.id = CoffeeId.random(); // 自動生成一個唯一識別碼
     }
 
     /**
      * 取得咖啡的唯一識別碼
+     * 每次呼叫都會把 UUID 轉換成新的字串，存儲和索引請改用 id()
      * @return 咖啡的 ID
      */
     public String getId()
+    {
+        return (id == null) ? null : id.toString();
+    }
+
+    /**
+     * 取得咖啡的唯一識別碼，不轉換成字串
+     * 不是 getXxx() 的形式，Jackson 不會把它當成另一個屬性
+     * @return 咖啡的 ID
+     */
+    public CoffeeId id()
     {
         return id;
     }
@@ -0,0 +1,32 @@
+package org.example.demo.model;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 變更串流 (GET /coffees/changes) 的事件內容，只帶 id 和名稱，不重送整個咖啡列表。
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 咖啡變更事件
+ * @param seq 變更序號，只增不減；事件的 id 由啟動時間和序號組成，斷線後以 Last-Event-ID 續傳
+ * @param type 變更類型
+ * @param id 咖啡的唯一識別碼，控制事件 (ready / reset) 沒有
+ * @param name 變更後的名稱，刪除和控制事件沒有
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record CoffeeChange(long seq, Type type, String id, String name)
+{
+    /**
+     * 變更類型
+     */
+    public enum Type
+    {
+        @JsonProperty("created") CREATED,
+        @JsonProperty("updated") UPDATED,
+        @JsonProperty("deleted") DELETED,
+        // 控制事件：訂閱開始，之後的事件接續在 seq 之後
+        @JsonProperty("ready") READY,
+        // 控制事件：錯過的變更已經無法補送（太舊、重新啟動過或緩衝區溢出），請重新取得 GET /coffees
+        @JsonProperty("reset") RESET
+    }
+}
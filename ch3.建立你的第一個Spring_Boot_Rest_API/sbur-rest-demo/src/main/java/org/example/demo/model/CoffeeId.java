@@ -0,0 +1,179 @@
+package org.example.demo.model;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 36 個字元的 UUID 字串在堆積上大約佔 80 個位元組；存成兩個 long 只要 32 個位元組，比較也只要比兩個 long。
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.UUID;
+
+/**
+ * 咖啡的唯一識別碼
+ * 標準格式（小寫、有連字號）的 UUID 存成兩個 long，只有在 JSON 等對外格式才轉換成字串；
+ * 其他的 id（例如範例資料的 "99999"，或大寫的 UUID）原樣保留字串，轉換回字串時和原本完全相同。
+ */
+public final class CoffeeId
+{
+    private static final int UUID_LENGTH = 36;
+
+    private final long mostSignificantBits;
+    private final long leastSignificantBits;
+    private final String text;      // 不是標準 UUID 格式的 id；UUID 時為 null
+
+
+    private CoffeeId(long mostSignificantBits, long leastSignificantBits, String text)
+    {
+        this.mostSignificantBits = mostSignificantBits;
+        this.leastSignificantBits = leastSignificantBits;
+        this.text = text;
+    }
+
+
+    /**
+     * 從字串建立識別碼
+     * @param id 咖啡的唯一識別碼
+     * @return 標準格式的 UUID 存成兩個 long，其他的保留字串；id 為 null 時返回 null
+     */
+    @JsonCreator
+    public static CoffeeId of(String id)
+    {
+        if (id == null)
+        {
+            return null;
+        }
+        if (id.length() != UUID_LENGTH)
+        {
+            return new CoffeeId(0, 0, id);
+        }
+
+        // UUID.fromString() 也接受大寫和省略前導 0 的寫法，轉換回字串就和原本不同了，所以自己解析
+        long msb = 0;
+        long lsb = 0;
+        for (int i = 0; i < UUID_LENGTH; i++)
+        {
+            char c = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23)
+            {
+                if (c != '-')
+                {
+                    return new CoffeeId(0, 0, id);
+                }
+                continue;
+            }
+
+            int digit = (c >= '0' && c <= '9') ? c - '0' : (c >= 'a' && c <= 'f') ? c - 'a' + 10 : -1;
+            if (digit < 0)
+            {
+                return new CoffeeId(0, 0, id);
+            }
+            if (i < 18)
+            {
+                msb = (msb << 4) | digit;
+            }
+            else
+            {
+                lsb = (lsb << 4) | digit;
+            }
+        }
+        return new CoffeeId(msb, lsb, null);
+    }
+
+
+    /**
+     * 從兩個 long 建立 UUID 的識別碼，堆積外存儲讀回 id 時使用
+     * @param mostSignificantBits UUID 的高 64 位元
+     * @param leastSignificantBits UUID 的低 64 位元
+     * @return UUID 的識別碼
+     */
+    public static CoffeeId of(long mostSignificantBits, long leastSignificantBits)
+    {
+        return new CoffeeId(mostSignificantBits, leastSignificantBits, null);
+    }
+
+
+    /**
+     * 建立一個隨機的識別碼
+     * @return 隨機 UUID 的識別碼
+     */
+    public static CoffeeId random()
+    {
+        UUID uuid = UUID.randomUUID();
+        return new CoffeeId(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), null);
+    }
+
+
+    /**
+     * 是否以兩個 long 存放
+     * @return 標準格式的 UUID 返回 true
+     */
+    public boolean isUuid()
+    {
+        return text == null;
+    }
+
+
+    /**
+     * UUID 的高 64 位元
+     * @return isUuid() 為 false 時返回 0
+     */
+    public long mostSignificantBits()
+    {
+        return mostSignificantBits;
+    }
+
+
+    /**
+     * UUID 的低 64 位元
+     * @return isUuid() 為 false 時返回 0
+     */
+    public long leastSignificantBits()
+    {
+        return leastSignificantBits;
+    }
+
+
+    /**
+     * 轉換成字串，每次呼叫都會建立新的字串，只在對外格式（JSON、日誌、變更串流）使用
+     * @return 和建立時相同的字串
+     */
+    @JsonValue
+    @Override
+    public String toString()
+    {
+        return (text != null) ? text : new UUID(mostSignificantBits, leastSignificantBits).toString();
+    }
+
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (!(o instanceof CoffeeId other))
+        {
+            return false;
+        }
+        if (text != null)
+        {
+            return text.equals(other.text);
+        }
+        return other.text == null
+                && mostSignificantBits == other.mostSignificantBits
+                && leastSignificantBits == other.leastSignificantBits;
+    }
+
+
+    @Override
+    public int hashCode()
+    {
+        if (text != null)
+        {
+            return text.hashCode();
+        }
+        long bits = mostSignificantBits ^ leastSignificantBits;
+        return (int) (bits ^ (bits >>> 32));
+    }
+}
@@ -0,0 +1,28 @@
+package org.example.demo.model;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 初始資料匯入的結果，每個檔案一筆摘要。
+
+import java.util.List;
+
+/**
+ * 初始資料匯入結果
+ * @param files 每個檔案的匯入結果，依檔案位置排序
+ * @param accepted 所有檔案成功匯入的咖啡數量
+ * @param rejected 所有檔案無法解析或缺少必要欄位而被略過的數量
+ * @param elapsedMillis 整個匯入花費的時間（毫秒）
+ */
+public record SeedImportResult(List<SeedFile> files, long accepted, long rejected, long elapsedMillis)
+{
+    /**
+     * 單一檔案的匯入結果
+     * @param location 檔案位置
+     * @param accepted 成功匯入的咖啡數量
+     * @param rejected 無法解析或缺少必要欄位而被略過的數量
+     * @param chunks 分段寫入的次數
+     * @param error 檔案讀取失敗或不是合法 JSON 時的錯誤訊息；成功時為 null。失敗之前已經寫入的段落不會回滾
+     */
+    public record SeedFile(String location, long accepted, long rejected, long chunks, String error)
+    {
+    }
+}
@@ -0,0 +1,24 @@
+package org.example.demo.repository;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// CoffeeStore 寫入後的通知，讓變更串流不必知道存儲的內部結構。
+
+import org.example.demo.model.Coffee;
+import org.example.demo.model.CoffeeChange;
+
+/**
+ * 咖啡變更的監聽器
+ * 在 CoffeeStore 的寫入鎖內呼叫，通知的順序就是寫入的順序；實作不可以阻塞。
+ */
+public interface CoffeeChangeListener
+{
+    // 不需要變更通知時使用，例如 JMH 基準測試直接建立的存儲
+    CoffeeChangeListener NONE = (type, coffee) -> { };
+
+    /**
+     * 一個咖啡被新增、更新或刪除
+     * @param type CREATED、UPDATED 或 DELETED
+     * @param coffee 寫入後的咖啡；刪除時是被刪除的咖啡
+     */
+    void onChange(CoffeeChange.Type type, Coffee coffee);
+}
@@ -0,0 +1,148 @@
+package org.example.demo.repository;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 控制器、服務和預寫日誌只依賴這個介面，coffee.store.engine 決定咖啡放在堆積內還是堆積外。
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Optional;
+
+import org.example.demo.model.Coffee;
+
+/**
+ * 咖啡的記憶體存儲
+ * 以 id 為主索引、name 為次索引，依插入順序列出；已存在的 id 更新時保留原本的位置。
+ * 寫入彼此序列化（寫入鎖）：每次寫入遞增整個存儲的版本號，修改記憶體之前記到預寫日誌，
+ * 在寫入鎖內通知 CoffeeChangeListener，釋放寫入鎖之後才等待日誌寫到磁碟。
+ * 實作：
+ * HeapCoffeeStore（coffee.store.engine=heap，預設）以 ConcurrentHashMap 和跳躍串列為索引，讀取不加鎖；
+ * OffHeapCoffeeStore（coffee.store.engine=off-heap）把 id 和名稱放在堆積外，適合數百萬個咖啡。
+ */
+public interface CoffeeStore
+{
+    /**
+     * 咖啡和它的版本號
+     * @param coffee 咖啡
+     * @param version 最後一次寫入這個咖啡時，整個存儲的版本號
+     */
+    record VersionedCoffee(Coffee coffee, long version)
+    {
+    }
+
+    /**
+     * 接收快照內容的寫入器，由 copyAll() 呼叫
+     */
+    interface SnapshotWriter
+    {
+        /**
+         * 快照的切點：在寫入鎖或讀取鎖內呼叫，期間沒有寫入，例如記下日誌目前的序號
+         * @param count 快照裡的咖啡數量，之後會呼叫 write() 恰好這麼多次
+         * @throws IOException 寫入失敗
+         */
+        void begin(int count) throws IOException;
+
+        /**
+         * 依插入順序寫入一個咖啡
+         * @param coffee 咖啡
+         * @throws IOException 寫入失敗
+         */
+        void write(Coffee coffee) throws IOException;
+    }
+
+
+    /**
+     * 整個存儲的版本號，每次新增、更新或刪除都會遞增
+     * 必須在讀取資料之前取得：讀取期間如果有寫入，版本號偏舊只會讓下一次請求多傳一次，不會讓客戶端錯過變更
+     * @return 目前的版本號
+     */
+    long version();
+
+    /**
+     * 依插入順序取得所有咖啡
+     * @return 弱一致性的唯讀視圖，迭代期間不會拋出 ConcurrentModificationException
+     */
+    Collection<Coffee> findAll();
+
+    /**
+     * 根據 ID 查找咖啡
+     * @param id 咖啡的唯一識別碼
+     * @return 找到時返回包含該咖啡的 Optional；否則返回空的 Optional
+     */
+    Optional<Coffee> findById(String id);
+
+    /**
+     * 根據 ID 查找咖啡和它的版本號，兩者來自同一次寫入，不會一新一舊
+     * @param id 咖啡的唯一識別碼
+     * @return 找到時返回包含該咖啡和版本號的 Optional；否則返回空的 Optional
+     */
+    Optional<VersionedCoffee> findVersionedById(String id);
+
+    /**
+     * 根據多個 ID 查找咖啡
+     * @param ids 咖啡的唯一識別碼集合
+     * @param found 找到的咖啡會依序加到這裡
+     * @param missing 找不到的 id 會依序加到這裡
+     */
+    void findAllById(Iterable<String> ids, Collection<Coffee> found, Collection<String> missing);
+
+    /**
+     * 根據名稱查找咖啡，名稱重複時返回最早加入的那一個
+     * @param name 咖啡的名稱
+     * @return 找到時返回包含該咖啡的 Optional；否則返回空的 Optional
+     */
+    Optional<Coffee> findByName(String name);
+
+    /**
+     * 新增或更新一個咖啡
+     * @param coffee 要存儲的咖啡
+     * @return 如果是新增返回 true；如果是更新返回 false
+     */
+    boolean save(Coffee coffee);
+
+    /**
+     * 批次新增或更新咖啡，整批在同一個寫入鎖內完成
+     * @param coffees 要存儲的咖啡集合
+     */
+    void saveAll(Iterable<Coffee> coffees);
+
+    /**
+     * 根據 ID 刪除咖啡
+     * @param id 咖啡的唯一識別碼
+     * @return 有刪除返回 true；找不到返回 false
+     */
+    boolean deleteById(String id);
+
+    /**
+     * 批次刪除咖啡
+     * @param ids 咖啡的唯一識別碼集合
+     * @return 實際刪除的筆數
+     */
+    int deleteAllById(Iterable<String> ids);
+
+    /**
+     * 批次改名，只更新已經存在的咖啡，找不到的 id 會略過
+     * @param coffees 帶有 id 和新名稱的咖啡集合
+     * @return 實際更新的筆數
+     */
+    int renameAll(Iterable<Coffee> coffees);
+
+    /**
+     * 從快照和日誌復原咖啡，不寫日誌也不發出變更通知
+     * @param coffees 依插入順序排列的咖啡
+     */
+    void restore(Iterable<Coffee> coffees);
+
+    /**
+     * 依插入順序把所有咖啡交給快照寫入器，快照的內容和 begin() 記下的日誌序號一致
+     * 怎麼取得一致的切點由實作決定，見各實作的說明
+     * @param writer 快照寫入器
+     * @throws IOException 寫入器拋出的例外
+     */
+    void copyAll(SnapshotWriter writer) throws IOException;
+
+    /**
+     * 目前存儲的咖啡數量
+     * @return 咖啡數量
+     */
+    int size();
+}
@@ -0,0 +1,45 @@
+package org.example.demo.repository;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// CoffeeStore 的預寫日誌 (write-ahead log)，讓記憶體存儲在重新啟動後不會遺失資料。
+
+import org.example.demo.model.Coffee;
+import org.example.demo.model.CoffeeChange;
+
+/**
+ * 咖啡存儲的預寫日誌
+ * append() 在 CoffeeStore 的寫入鎖內、修改記憶體之前呼叫，日誌的順序就是寫入的順序；拋出例外時存儲不會被修改。
+ * sync() 在寫入鎖釋放之後呼叫，依設定等待日誌寫到磁碟，多個請求可以共用同一次 fsync（group commit）。
+ * <p>
+ * 寫入在 sync() 之前就已經修改記憶體，其他請求的讀取、ETag 和變更串流都看得到還沒寫到磁碟的值（read uncommitted）。
+ * sync() 失敗時寫入不會被撤銷：發出寫入的請求收到例外，但記憶體和變更串流裡已經有這筆寫入，重新啟動之後可能不存在。
+ * 之後日誌拒絕所有寫入，存儲只能讀取，直到問題排除後重新啟動，不會在失敗的寫入之上繼續累積新的寫入。
+ */
+public interface CoffeeWriteAheadLog
+{
+    // 不需要持久化時使用，例如沒有開啟 coffee.journal.enabled，或 JMH 基準測試直接建立的存儲
+    CoffeeWriteAheadLog NONE = new CoffeeWriteAheadLog()
+    {
+        @Override
+        public void append(CoffeeChange.Type type, Coffee coffee)
+        {
+        }
+
+        @Override
+        public void sync()
+        {
+        }
+    };
+
+    /**
+     * 記錄一個寫入，不等待磁碟
+     * @param type CREATED、UPDATED 或 DELETED
+     * @param coffee 寫入後的咖啡；刪除時是要刪除的咖啡
+     */
+    void append(CoffeeChange.Type type, Coffee coffee);
+
+    /**
+     * 等待目前執行緒記錄過的寫入都已經持久化（依 fsync 設定，可能不等待）
+     */
+    void sync();
+}
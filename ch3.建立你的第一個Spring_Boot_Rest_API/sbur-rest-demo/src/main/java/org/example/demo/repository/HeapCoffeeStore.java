@@ -0,0 +1,429 @@
+package org.example.demo.repository;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 取代控制器裡的 ArrayList，提供有索引、可多執行緒存取的記憶體存儲。
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.example.demo.model.Coffee;
+import org.example.demo.model.CoffeeChange;
+import org.example.demo.model.CoffeeId;
+
+/**
+ * 堆積內的咖啡存儲，coffee.store.engine=heap（預設）時使用
+ * 以 id 為主索引、name 為次索引，查詢、新增或更新、刪除都是 O(1)。
+ * 主索引的鍵是 CoffeeId：UUID 以兩個 long 存放，請求帶來的字串 id 在這裡解析一次。
+ * 讀取不加鎖；寫入以物件鎖序列化，確保三個索引彼此一致。
+ * 每次寫入都會遞增整個存儲的版本號，被寫入的咖啡記下寫入當時的版本號，用來產生 ETag。
+ * 每次寫入也會在寫入鎖內通知 CoffeeChangeListener，變更串流的順序和寫入順序一致。
+ * 開啟 coffee.journal.enabled 時，寫入先記到預寫日誌才修改記憶體，釋放寫入鎖之後再等待日誌寫到磁碟；
+ * 讀取不加鎖，所以其他請求和變更串流可能在日誌寫到磁碟之前就看到新的值，fsync 失敗時也不會撤銷，見 CoffeeWriteAheadLog。
+ */
+@Repository
+@ConditionalOnProperty(name = "coffee.store.engine", havingValue = "heap", matchIfMissing = true)
+public class HeapCoffeeStore implements CoffeeStore
+{
+    // 主索引：id -> 存儲項目
+    private final Map<CoffeeId, Entry> byId = new ConcurrentHashMap<>();
+
+    // 次索引：name -> 擁有這個名稱的咖啡（以插入序號排序，第一個就是最早加入的）
+    private final Map<String, NavigableSet<Long>> byName = new ConcurrentHashMap<>();
+
+    // 插入順序：序號 -> 咖啡，GET /coffees 直接回傳它的 values() 視圖，不需要複製
+    private final ConcurrentSkipListMap<Long, Coffee> inOrder = new ConcurrentSkipListMap<>();
+
+    private long nextSequence = 0;      // 只在寫入鎖內使用
+
+    // 整個存儲的版本號：只在寫入鎖內遞增，讀取不加鎖
+    private volatile long version = 0;
+
+    // 寫入後的通知對象
+    private final CoffeeChangeListener listener;
+
+    // 預寫日誌：修改記憶體之前記錄
+    private final CoffeeWriteAheadLog writeAheadLog;
+
+    /**
+     * 存儲項目，記錄咖啡、它的插入序號和最後一次寫入時的版本號
+     */
+    private record Entry(long sequence, Coffee coffee, long version)
+    {
+    }
+
+
+    /**
+     * 構造函數，不發出變更通知，也不寫日誌
+     */
+    public HeapCoffeeStore()
+    {
+        this(CoffeeChangeListener.NONE, CoffeeWriteAheadLog.NONE);
+    }
+
+
+    /**
+     * 構造函數
+     * @param listener 每次新增、更新或刪除後通知的對象
+     * @param writeAheadLog 預寫日誌
+     */
+    public HeapCoffeeStore(CoffeeChangeListener listener, CoffeeWriteAheadLog writeAheadLog)
+    {
+        this.listener = listener;
+        this.writeAheadLog = writeAheadLog;
+    }
+
+
+    /**
+     * Spring 使用的構造函數
+     * @param listener 每次新增、更新或刪除後通知的對象
+     * @param writeAheadLog 預寫日誌，沒有開啟 coffee.journal.enabled 時不存在
+     */
+    @Autowired
+    public HeapCoffeeStore(CoffeeChangeListener listener, ObjectProvider<CoffeeWriteAheadLog> writeAheadLog)
+    {
+        this(listener, writeAheadLog.getIfAvailable(() -> CoffeeWriteAheadLog.NONE));
+    }
+
+
+    /**
+     * 整個存儲的版本號，每次新增、更新或刪除都會遞增
+     * 必須在讀取資料之前取得：讀取期間如果有寫入，版本號偏舊只會讓下一次請求多傳一次，不會讓客戶端錯過變更
+     * @return 目前的版本號
+     */
+    @Override
+    public long version()
+    {
+        return version;
+    }
+
+
+    /**
+     * 依插入順序取得所有咖啡
+     * @return 弱一致性的唯讀視圖，迭代期間不會拋出 ConcurrentModificationException
+     */
+    @Override
+    public Collection<Coffee> findAll()
+    {
+        return inOrder.values();
+    }
+
+
+    /**
+     * 根據 ID 查找咖啡
+     * @param id 咖啡的唯一識別碼
+     * @return 找到時返回包含該咖啡的 Optional；否則返回空的 Optional
+     */
+    @Override
+    public Optional<Coffee> findById(String id)
+    {
+        Entry entry = byId.get(CoffeeId.of(id));
+        return (entry == null) ? Optional.empty() : Optional.of(entry.coffee());
+    }
+
+
+    /**
+     * 根據 ID 查找咖啡和它的版本號，兩者來自同一個存儲項目，不會一新一舊
+     * @param id 咖啡的唯一識別碼
+     * @return 找到時返回包含該咖啡和版本號的 Optional；否則返回空的 Optional
+     */
+    @Override
+    public Optional<VersionedCoffee> findVersionedById(String id)
+    {
+        Entry entry = byId.get(CoffeeId.of(id));
+        return (entry == null) ? Optional.empty() : Optional.of(new VersionedCoffee(entry.coffee(), entry.version()));
+    }
+
+
+    /**
+     * 根據多個 ID 查找咖啡，每個 id 查一次主索引
+     * @param ids 咖啡的唯一識別碼集合
+     * @param found 找到的咖啡會依序加到這裡
+     * @param missing 找不到的 id 會依序加到這裡
+     */
+    @Override
+    public void findAllById(Iterable<String> ids, Collection<Coffee> found, Collection<String> missing)
+    {
+        for (String id : ids)
+        {
+            Entry entry = byId.get(CoffeeId.of(id));
+            if (entry == null)
+            {
+                missing.add(id);
+            }
+            else
+            {
+                found.add(entry.coffee());
+            }
+        }
+    }
+
+
+    /**
+     * 根據名稱查找咖啡，名稱重複時返回最早加入的那一個
+     * @param name 咖啡的名稱
+     * @return 找到時返回包含該咖啡的 Optional；否則返回空的 Optional
+     */
+    @Override
+    public Optional<Coffee> findByName(String name)
+    {
+        NavigableSet<Long> sequences = (name == null) ? null : byName.get(name);
+        if (sequences == null)
+        {
+            return Optional.empty();
+        }
+
+        // 讀取和寫入沒有互斥：集合可能在這之間被清空，所以用 ceiling() 而不是 first()；
+        // 改名會沿用原本的序號，序號對應的咖啡可能已經不是這個名稱，所以比對名稱，不符時看下一個序號
+        for (Long sequence = sequences.ceiling(Long.MIN_VALUE); sequence != null; sequence = sequences.higher(sequence))
+        {
+            Coffee coffee = inOrder.get(sequence);
+            if (coffee != null && name.equals(coffee.getName()))
+            {
+                return Optional.of(coffee);
+            }
+        }
+        return Optional.empty();
+    }
+
+
+    /**
+     * 新增或更新一個咖啡
+     * 已存在的 ID 會保留原本的位置，只替換內容
+     * @param coffee 要存儲的咖啡
+     * @return 如果是新增返回 true；如果是更新返回 false
+     */
+    @Override
+    public boolean save(Coffee coffee)
+    {
+        boolean created;
+        synchronized (this)
+        {
+            created = write(coffee);
+        }
+        writeAheadLog.sync();
+        return created;
+    }
+
+
+    /**
+     * 批次新增或更新咖啡
+     * @param coffees 要存儲的咖啡集合
+     */
+    @Override
+    public void saveAll(Iterable<Coffee> coffees)
+    {
+        synchronized (this)
+        {
+            for (Coffee coffee : coffees)
+            {
+                write(coffee);
+            }
+        }
+        writeAheadLog.sync();
+    }
+
+
+    /**
+     * 根據 ID 刪除咖啡
+     * @param id 咖啡的唯一識別碼
+     * @return 有刪除返回 true；找不到返回 false
+     */
+    @Override
+    public boolean deleteById(String id)
+    {
+        boolean deleted;
+        synchronized (this)
+        {
+            deleted = delete(id);
+        }
+        writeAheadLog.sync();
+        return deleted;
+    }
+
+
+    /**
+     * 批次刪除咖啡
+     * @param ids 咖啡的唯一識別碼集合
+     * @return 實際刪除的筆數
+     */
+    @Override
+    public int deleteAllById(Iterable<String> ids)
+    {
+        int deleted = 0;
+        synchronized (this)
+        {
+            for (String id : ids)
+            {
+                if (delete(id))
+                {
+                    deleted++;
+                }
+            }
+        }
+        writeAheadLog.sync();
+        return deleted;
+    }
+
+
+    /**
+     * 批次改名，只更新已經存在的咖啡，找不到的 id 會略過
+     * @param coffees 帶有 id 和新名稱的咖啡集合
+     * @return 實際更新的筆數
+     */
+    @Override
+    public int renameAll(Iterable<Coffee> coffees)
+    {
+        int renamed = 0;
+        synchronized (this)
+        {
+            for (Coffee coffee : coffees)
+            {
+                if (byId.containsKey(coffee.id()))
+                {
+                    // 換成新的物件而不是呼叫 setName()，名稱索引才能先移除舊名稱
+                    write(new Coffee(coffee.id(), coffee.getName()));
+                    renamed++;
+                }
+            }
+        }
+        writeAheadLog.sync();
+        return renamed;
+    }
+
+
+    /**
+     * 從快照和日誌復原咖啡，不寫日誌也不發出變更通知
+     * @param coffees 依插入順序排列的咖啡
+     */
+    @Override
+    public synchronized void restore(Iterable<Coffee> coffees)
+    {
+        for (Coffee coffee : coffees)
+        {
+            put(coffee);
+        }
+    }
+
+
+    /**
+     * 依插入順序把所有咖啡交給快照寫入器
+     * 讀取不加鎖，沒有讀取鎖可以擋住寫入，所以在寫入鎖內複製咖啡的參考並呼叫 begin()；
+     * 咖啡本身已經在堆積上，複本只是參考的陣列。寫入時換成新的 Coffee 物件，不修改舊的，
+     * 所以釋放寫入鎖之後再慢慢寫出，寫到磁碟的期間不會擋住寫入
+     * @param writer 快照寫入器
+     * @throws IOException 寫入器拋出的例外
+     */
+    @Override
+    public void copyAll(SnapshotWriter writer) throws IOException
+    {
+        List<Coffee> coffees;
+        synchronized (this)
+        {
+            coffees = new ArrayList<>(inOrder.values());
+            writer.begin(coffees.size());
+        }
+        for (Coffee coffee : coffees)
+        {
+            writer.write(coffee);
+        }
+    }
+
+
+    /**
+     * 目前存儲的咖啡數量
+     * @return 咖啡數量
+     */
+    @Override
+    public int size()
+    {
+        return byId.size();
+    }
+
+
+    // 寫入鎖內呼叫：先寫日誌，日誌拋出例外時不修改記憶體
+    private boolean write(Coffee coffee)
+    {
+        boolean created = !byId.containsKey(coffee.id());
+        CoffeeChange.Type type = created ? CoffeeChange.Type.CREATED : CoffeeChange.Type.UPDATED;
+        writeAheadLog.append(type, coffee);
+        put(coffee);
+        listener.onChange(type, coffee);
+        return created;
+    }
+
+    // 寫入鎖內呼叫
+    private boolean delete(String id)
+    {
+        CoffeeId key = CoffeeId.of(id);
+        Entry existing = byId.get(key);
+        if (existing == null)
+        {
+            return false;
+        }
+
+        writeAheadLog.append(CoffeeChange.Type.DELETED, existing.coffee());
+        byId.remove(key);
+        inOrder.remove(existing.sequence());
+        unindexName(existing);
+        version++;
+
+        listener.onChange(CoffeeChange.Type.DELETED, existing.coffee());
+        return true;
+    }
+
+    // 寫入鎖內呼叫：修改三個索引並遞增版本號
+    // 版本號在三個索引都更新之後才遞增，和 delete() 相同：讀取端先取版本號再讀資料，
+    // 看到新的版本號時一定也看得到新的資料，舊資料不會以新的 ETag 送出、被快取
+    private void put(Coffee coffee)
+    {
+        Entry previous = byId.get(coffee.id());
+        long sequence = (previous == null) ? nextSequence++ : previous.sequence();
+
+        if (previous != null)
+        {
+            unindexName(previous);
+        }
+
+        long next = version + 1;
+        Entry entry = new Entry(sequence, coffee, next);
+        byId.put(coffee.id(), entry);
+        inOrder.put(sequence, coffee);
+        indexName(entry);
+        version = next;
+    }
+
+    private void indexName(Entry entry)
+    {
+        String name = entry.coffee().getName();
+        if (name != null)       // ConcurrentHashMap 不接受 null 鍵值，沒有名稱的咖啡不建立次索引
+        {
+            byName.computeIfAbsent(name, n -> new ConcurrentSkipListSet<>()).add(entry.sequence());
+        }
+    }
+
+    private void unindexName(Entry entry)
+    {
+        String name = entry.coffee().getName();
+        if (name != null)
+        {
+            byName.computeIfPresent(name, (n, sequences) ->
+            {
+                sequences.remove(entry.sequence());
+                return sequences.isEmpty() ? null : sequences;
+            });
+        }
+    }
+}
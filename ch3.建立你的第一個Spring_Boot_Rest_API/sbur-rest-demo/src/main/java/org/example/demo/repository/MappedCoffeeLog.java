@@ -0,0 +1,812 @@
+package org.example.demo.repository;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 記憶體存儲重新啟動就會遺失資料，第四章的 JPA + H2 又太重；這裡提供中間的選項：記憶體映射的預寫日誌加上定期快照。
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.example.demo.model.Coffee;
+import org.example.demo.model.CoffeeChange;
+
+/**
+ * 記憶體映射的預寫日誌和快照
+ * 日誌分成固定大小的檔案 journal-&lt;第一筆序號&gt;.log，整個檔案映射到記憶體，寫入只是記憶體複製，
+ * 每筆記錄是「長度、CRC32、序號、類型、id、名稱」，檔案建立時全部是 0，長度 0 就是日誌的結尾。
+ * fsync 由另一條執行緒進行：coffee.journal.fsync=always 時，請求在寫入鎖外等待自己的記錄寫到磁碟，
+ * 等待期間到達的寫入由下一次 fsync 一起寫入（group commit）；interval 每隔一段時間 fsync 一次，不等待；
+ * never 交給作業系統，程序當掉不會遺失資料（頁面快取還在），但斷電可能遺失。
+ * 日誌累積 coffee.journal.snapshot-records 筆或每隔 coffee.journal.snapshot-interval 就把整個存儲寫成快照
+ * snapshot-&lt;序號&gt;.snap，之後只保留最近兩個快照和較舊的那個快照之後的日誌檔。
+ * 重新啟動時映射最新的有效快照，再從日誌重播快照之後的記錄，需要重播的記錄最多約 snapshot-records 筆，以此控制復原時間。
+ * 只有最後一個日誌檔的結尾可以是寫到一半的記錄（CRC 不符），那是當掉之前還沒寫完的寫入，清成 0 之後從那裡接著寫；
+ * 其他地方接不上（較早的日誌檔中途損壞、日誌檔之間或快照和日誌之間缺了序號、所有快照都損壞而日誌不是從頭開始）
+ * 表示已經回應成功的寫入讀不回來，這時啟動失敗，檔案原封不動留給人工處理，不會刪除任何日誌或快照。
+ * 記錄寫到磁碟之前其他請求就看得到，fsync 失敗之後拒絕所有寫入，見 CoffeeWriteAheadLog。
+ */
+@Component
+@ConditionalOnProperty(name = "coffee.journal.enabled", havingValue = "true")
+public class MappedCoffeeLog implements CoffeeWriteAheadLog, SmartInitializingSingleton, DisposableBean
+{
+    private static final Logger log = LoggerFactory.getLogger(MappedCoffeeLog.class);
+
+    /**
+     * fsync 的時機
+     */
+    public enum FsyncPolicy
+    {
+        ALWAYS,     // 回應之前等待寫到磁碟，同時等待的寫入共用一次 fsync
+        INTERVAL,   // 每隔 coffee.journal.fsync-interval 寫到磁碟一次，不等待
+        NEVER       // 交給作業系統
+    }
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    private static final int RECORD_HEADER = 8;                 // 長度 (int) + CRC32 (int)
+    private static final int SNAPSHOT_MAGIC = 0x43534e50;       // "CSNP"
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FsyncPolicy fsync;
+    private final Duration fsyncInterval;
+    private final long snapshotRecords;
+    private final Duration snapshotInterval;
+    private final ObjectProvider<CoffeeStore> store;
+
+    private final Timer fsyncTimer;
+    private final DistributionSummary groupSize;
+
+    // 以下欄位只在 CoffeeStore 的寫入鎖內使用
+    private Segment active;
+    private final CRC32 crc = new CRC32();
+
+    // 最後一筆記錄的序號：只在寫入鎖內修改，快照排程讀取
+    // 最近一次快照之後的記錄數就是 lastLsn - lastSnapshotLsn；快照成功之後才更新 lastSnapshotLsn，失敗的快照會再試
+    private volatile long lastLsn;
+    private final AtomicBoolean snapshotPending = new AtomicBoolean();
+    private volatile long lastSnapshotLsn = -1;
+
+    // 所有日誌檔，依第一筆序號排序；寫入鎖內新增，快照執行緒刪除
+    private final List<Segment> segments = new ArrayList<>();
+
+    // 寫入端和 fsync 執行緒之間的狀態，以 flushLock 保護
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition appended = flushLock.newCondition();
+    private final Condition durable = flushLock.newCondition();
+    private Segment appendedSegment;
+    private int appendedPosition;
+    private long appendedLsn;
+    private long durableLsn;
+    private Segment forcedSegment;
+    private int forcedPosition;
+    private volatile IOException failure;
+
+    // 每條執行緒最後一次記錄的序號，sync() 等待它寫到磁碟
+    private final ThreadLocal<long[]> threadLsn = ThreadLocal.withInitial(() -> new long[1]);
+
+    private volatile boolean closed;
+    private Thread flusher;
+    private ScheduledExecutorService snapshots;
+
+    /**
+     * 一個映射到記憶體的日誌檔
+     * @param path 檔案路徑
+     * @param firstLsn 檔名上的第一筆序號
+     * @param buffer 整個檔案的映射，position 是下一筆記錄的位置
+     */
+    private record Segment(Path path, long firstLsn, MappedByteBuffer buffer)
+    {
+    }
+
+
+    /**
+     * 構造函數
+     * @param directory 日誌和快照的目錄
+     * @param segmentSize 每個日誌檔的大小
+     * @param fsync fsync 的時機
+     * @param fsyncInterval fsync=interval 時的間隔
+     * @param snapshotRecords 日誌累積這麼多筆就建立快照，也就是重新啟動時最多重播的筆數
+     * @param snapshotInterval 有新的記錄時，每隔這麼久建立一次快照
+     * @param store 咖啡存儲，復原和建立快照時使用（它也依賴這個日誌，所以延遲取得）
+     * @param registry 指標註冊表
+     */
+    public MappedCoffeeLog(@Value("${coffee.journal.directory:data/journal}") String directory,
+                           @Value("${coffee.journal.segment-size:64MB}") DataSize segmentSize,
+                           @Value("${coffee.journal.fsync:always}") FsyncPolicy fsync,
+                           @Value("${coffee.journal.fsync-interval:100ms}") Duration fsyncInterval,
+                           @Value("${coffee.journal.snapshot-records:1000000}") long snapshotRecords,
+                           @Value("${coffee.journal.snapshot-interval:5m}") Duration snapshotInterval,
+                           ObjectProvider<CoffeeStore> store,
+                           MeterRegistry registry)
+    {
+        this.directory = Paths.get(directory);
+        this.segmentSize = Math.toIntExact(segmentSize.toBytes());
+        this.fsync = fsync;
+        this.fsyncInterval = fsyncInterval;
+        this.snapshotRecords = snapshotRecords;
+        this.snapshotInterval = snapshotInterval;
+        this.store = store;
+
+        this.fsyncTimer = Timer.builder("coffee.journal.fsync")
+                .description("日誌每次 fsync 的時間")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.groupSize = DistributionSummary.builder("coffee.journal.group.size")
+                .description("每次 fsync 一起寫到磁碟的記錄數 (group commit)")
+                .baseUnit("records")
+                .register(registry);
+    }
+
+
+    /**
+     * 所有單例建立完成、Web 伺服器啟動之前復原存儲，然後開始接受寫入
+     */
+    @Override
+    public void afterSingletonsInstantiated()
+    {
+        try
+        {
+            recover();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("無法從 " + directory + " 復原咖啡存儲", e);
+        }
+
+        if (fsync != FsyncPolicy.NEVER)
+        {
+            flusher = new Thread(this::flushLoop, "coffee-journal-fsync");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+
+        snapshots = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread thread = new Thread(r, "coffee-journal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshots.scheduleWithFixedDelay(() ->
+        {
+            if (lastLsn > lastSnapshotLsn)
+            {
+                snapshot();
+            }
+        }, snapshotInterval.toMillis(), snapshotInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+
+    @Override
+    public void append(CoffeeChange.Type type, Coffee coffee)
+    {
+        if (closed || failure != null)
+        {
+            throw new IllegalStateException("咖啡日誌已經關閉或無法寫入磁碟", failure);
+        }
+
+        byte[] id = coffee.getId().getBytes(StandardCharsets.UTF_8);
+        byte[] name = (type == CoffeeChange.Type.DELETED || coffee.getName() == null)
+                ? null : coffee.getName().getBytes(StandardCharsets.UTF_8);
+        int bodyLength = Long.BYTES + 1 + Integer.BYTES + id.length + Integer.BYTES + ((name == null) ? 0 : name.length);
+        if (RECORD_HEADER + bodyLength > segmentSize)
+        {
+            throw new IllegalArgumentException("單筆日誌記錄 " + (RECORD_HEADER + bodyLength) + " 位元組，超過日誌檔大小 " + segmentSize);
+        }
+
+        if (active.buffer().remaining() < RECORD_HEADER + bodyLength)
+        {
+            roll();
+        }
+
+        long lsn = lastLsn + 1;
+        ByteBuffer buffer = active.buffer();
+        int start = buffer.position();
+        buffer.position(start + RECORD_HEADER);
+        buffer.putLong(lsn);
+        buffer.put((type == CoffeeChange.Type.DELETED) ? DELETE : PUT);
+        buffer.putInt(id.length).put(id);
+        buffer.putInt((name == null) ? -1 : name.length);
+        if (name != null)
+        {
+            buffer.put(name);
+        }
+
+        crc.reset();
+        crc.update(buffer.slice(start + RECORD_HEADER, bodyLength));
+        buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+        buffer.putInt(start, bodyLength);
+
+        lastLsn = lsn;
+        threadLsn.get()[0] = lsn;
+        publishAppended();
+
+        if (lsn - lastSnapshotLsn >= snapshotRecords && snapshotPending.compareAndSet(false, true))
+        {
+            snapshots.execute(this::snapshot);
+        }
+    }
+
+
+    @Override
+    public void sync()
+    {
+        if (fsync != FsyncPolicy.ALWAYS)
+        {
+            return;
+        }
+
+        long lsn = threadLsn.get()[0];
+        flushLock.lock();
+        try
+        {
+            while (durableLsn < lsn && failure == null && !closed)
+            {
+                durable.awaitUninterruptibly();
+            }
+            if (failure != null)
+            {
+                throw new IllegalStateException("咖啡日誌無法寫入磁碟", failure);
+            }
+        }
+        finally
+        {
+            flushLock.unlock();
+        }
+    }
+
+
+    /**
+     * 關閉時停止 fsync 執行緒、把日誌寫到磁碟並建立最後一次快照，下次啟動不必重播日誌
+     */
+    @Override
+    public void destroy()
+    {
+        closed = true;
+        flushLock.lock();
+        try
+        {
+            appended.signalAll();
+            durable.signalAll();
+        }
+        finally
+        {
+            flushLock.unlock();
+        }
+
+        if (snapshots != null)
+        {
+            snapshots.shutdown();
+            try
+            {
+                snapshots.awaitTermination(1, TimeUnit.MINUTES);
+                if (flusher != null)
+                {
+                    flusher.join();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (active != null && fsync != FsyncPolicy.NEVER && failure == null)
+        {
+            active.buffer().force();
+        }
+        if (active != null && lastLsn > lastSnapshotLsn)
+        {
+            snapshot();
+        }
+    }
+
+
+    // 寫入鎖內呼叫：目前的日誌檔寫滿了，先寫到磁碟再換一個新的
+    private void roll()
+    {
+        if (fsync != FsyncPolicy.NEVER)
+        {
+            active.buffer().force();
+        }
+        try
+        {
+            Segment next = createSegment(lastLsn + 1);
+            synchronized (segments)
+            {
+                segments.add(next);
+            }
+            active = next;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("無法建立新的日誌檔", e);
+        }
+    }
+
+    // 寫入鎖內呼叫：記下 fsync 要寫到哪裡；只有 always 需要叫醒 fsync 執行緒，interval 等到下一個時間點
+    private void publishAppended()
+    {
+        flushLock.lock();
+        try
+        {
+            appendedSegment = active;
+            appendedPosition = active.buffer().position();
+            appendedLsn = lastLsn;
+            if (fsync == FsyncPolicy.ALWAYS)
+            {
+                appended.signal();
+            }
+        }
+        finally
+        {
+            flushLock.unlock();
+        }
+    }
+
+
+    // fsync 執行緒：每次把目前為止所有的記錄一起寫到磁碟
+    private void flushLoop()
+    {
+        while (true)
+        {
+            Segment segment;
+            int from;
+            int to;
+            long lsn;
+            long group;
+            flushLock.lock();
+            try
+            {
+                if (fsync == FsyncPolicy.ALWAYS)
+                {
+                    while (appendedLsn == durableLsn && !closed)
+                    {
+                        appended.awaitUninterruptibly();
+                    }
+                }
+                else
+                {
+                    // 每次都等滿 fsync-interval，只有關閉會提早結束，寫入再多也不會讓 fsync 變頻繁
+                    long remaining = fsyncInterval.toNanos();
+                    while (remaining > 0 && !closed)
+                    {
+                        try
+                        {
+                            remaining = appended.awaitNanos(remaining);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            return;
+                        }
+                    }
+                }
+                if (closed)
+                {
+                    return;
+                }
+                if (appendedLsn == durableLsn)
+                {
+                    continue;
+                }
+
+                segment = appendedSegment;
+                from = (segment == forcedSegment) ? forcedPosition : 0;     // 換檔時舊的日誌檔已經整個寫到磁碟
+                to = appendedPosition;
+                lsn = appendedLsn;
+                group = appendedLsn - durableLsn;
+            }
+            finally
+            {
+                flushLock.unlock();
+            }
+
+            IOException error = null;
+            long start = System.nanoTime();
+            try
+            {
+                segment.buffer().force(from, to - from);
+            }
+            catch (UncheckedIOException e)
+            {
+                error = e.getCause();
+            }
+            fsyncTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            groupSize.record(group);
+
+            flushLock.lock();
+            try
+            {
+                if (error != null)
+                {
+                    // 之後的寫入都會被拒絕，等待中的請求收到例外，不會以為已經寫到磁碟
+                    failure = error;
+                    log.error("咖啡日誌無法寫入磁碟，停止接受寫入", error);
+                }
+                else
+                {
+                    durableLsn = lsn;
+                    forcedSegment = segment;
+                    forcedPosition = to;
+                }
+                durable.signalAll();
+            }
+            finally
+            {
+                flushLock.unlock();
+            }
+            if (error != null)
+            {
+                return;
+            }
+        }
+    }
+
+
+    // 啟動時呼叫：最新的有效快照加上之後的日誌
+    private void recover() throws IOException
+    {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+
+        Map<String, Coffee> coffees = new LinkedHashMap<>();
+        long snapshotLsn = loadSnapshot(coffees);
+        lastLsn = snapshotLsn;
+        lastSnapshotLsn = snapshotLsn;
+
+        long replayed = 0;
+        List<Path> segmentFiles = list(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        if (snapshotLsn == 0 && segmentFiles.isEmpty() && !list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).isEmpty())
+        {
+            throw new IllegalStateException("所有快照都已經損壞，也沒有日誌可以重播；請檢查 " + directory + " 裡的快照");
+        }
+        for (int i = 0; i < segmentFiles.size(); i++)
+        {
+            Path path = segmentFiles.get(i);
+            long firstLsn = lsnOf(path, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+            if (firstLsn > lastLsn + 1)
+            {
+                // 快照損壞或被刪除後日誌已經接不上，或日誌檔之間少了一個
+                throw new IllegalStateException("日誌 " + path + " 從序號 " + firstLsn + " 開始，但只能復原到序號 " + lastLsn
+                        + "，中間的記錄已經遺失；請檢查 " + directory + " 裡的快照和日誌檔");
+            }
+
+            Segment segment = openSegment(path);
+            ByteBuffer buffer = segment.buffer();
+            int position = 0;
+            while (position + RECORD_HEADER <= buffer.limit())
+            {
+                int bodyLength = buffer.getInt(position);
+                if (bodyLength <= 0 || position + RECORD_HEADER + bodyLength > buffer.limit())
+                {
+                    break;
+                }
+                ByteBuffer body = buffer.slice(position + RECORD_HEADER, bodyLength);
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES))
+                {
+                    break;
+                }
+
+                long lsn = body.getLong();
+                if (lsn > lastLsn + 1)
+                {
+                    break;
+                }
+                if (lsn == lastLsn + 1)         // 快照已經包含的記錄略過
+                {
+                    byte type = body.get();
+                    String id = readString(body);
+                    String name = readString(body);
+                    if (type == DELETE)
+                    {
+                        coffees.remove(id);
+                    }
+                    else
+                    {
+                        // 已經存在的 id 保留原本的位置，和 CoffeeStore 的插入順序一致
+                        coffees.put(id, new Coffee(id, name));
+                    }
+                    lastLsn = lsn;
+                    replayed++;
+                }
+                position += RECORD_HEADER + bodyLength;
+            }
+
+            boolean torn = position + RECORD_HEADER <= buffer.limit() && buffer.getInt(position) != 0;
+            if (torn && i < segmentFiles.size() - 1)
+            {
+                // 換檔之前舊的日誌檔已經寫到磁碟，中途損壞表示之後的日誌檔都接不上
+                throw new IllegalStateException("日誌 " + path + " 在位置 " + position + "（序號 " + lastLsn
+                        + " 之後）損壞，之後的日誌檔無法重播；請檢查 " + directory + " 裡的日誌檔");
+            }
+            if (torn)
+            {
+                // 寫到一半的記錄：清成 0，之後的寫入才不會和殘留的位元組接成看似有效的記錄
+                log.warn("日誌 {} 的結尾（位置 {}，序號 {} 之後）有寫到一半的記錄，捨棄", path, position, lastLsn);
+                clear(segment.buffer(), position);
+            }
+
+            buffer.position(position);
+            segments.add(segment);
+        }
+
+        if (segments.isEmpty())
+        {
+            segments.add(createSegment(lastLsn + 1));
+        }
+        active = segments.get(segments.size() - 1);
+
+        appendedSegment = active;
+        appendedPosition = active.buffer().position();
+        appendedLsn = lastLsn;
+        durableLsn = lastLsn;
+        forcedSegment = active;
+        forcedPosition = appendedPosition;
+
+        store.getObject().restore(coffees.values());
+        log.info("從快照（序號 {}）和 {} 筆日誌復原 {} 個咖啡，耗時 {} ms", snapshotLsn, replayed, coffees.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    // 從 from 到結尾全部寫成 0 並寫到磁碟
+    private static void clear(MappedByteBuffer buffer, int from)
+    {
+        byte[] zeros = new byte[1 << 16];
+        for (int position = from; position < buffer.limit(); position += zeros.length)
+        {
+            buffer.put(position, zeros, 0, Math.min(zeros.length, buffer.limit() - position));
+        }
+        buffer.force();
+    }
+
+    // 由新到舊找第一個有效的快照；沒有有效的快照返回 0，日誌接不接得上由 recover() 檢查
+    private long loadSnapshot(Map<String, Coffee> coffees) throws IOException
+    {
+        List<Path> snapshotFiles = list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        for (int i = snapshotFiles.size() - 1; i >= 0; i--)
+        {
+            Path path = snapshotFiles.get(i);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+            {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int bodyLength = buffer.limit() - Integer.BYTES;
+                boolean valid = bodyLength >= Integer.BYTES + Long.BYTES + Integer.BYTES;
+                if (valid)
+                {
+                    crc.reset();
+                    crc.update(buffer.slice(0, bodyLength));
+                    valid = (int) crc.getValue() == buffer.getInt(bodyLength) && buffer.getInt() == SNAPSHOT_MAGIC;
+                }
+                if (!valid)
+                {
+                    log.warn("快照 {} 已經損壞，改用較舊的快照", path);
+                    continue;
+                }
+
+                long lsn = buffer.getLong();
+                int count = buffer.getInt();
+                for (int n = 0; n < count; n++)
+                {
+                    String id = readString(buffer);
+                    coffees.put(id, new Coffee(id, readString(buffer)));
+                }
+                return lsn;
+            }
+        }
+        return 0;
+    }
+
+
+    // 在快照執行緒上執行，也會在關閉時執行
+    // 存儲邊讀邊交給這裡寫出，不先在記憶體中建立所有咖啡的複本；切點的序號決定快照的檔名，所以先寫到暫存檔
+    private synchronized void snapshot()
+    {
+        snapshotPending.set(false);
+        long start = System.nanoTime();
+        long[] cut = new long[1];
+        int[] count = new int[1];
+        Path temporary = directory.resolve(SNAPSHOT_PREFIX + "next" + SNAPSHOT_SUFFIX + ".tmp");
+        Path target = null;
+        try
+        {
+            CRC32 checksum = new CRC32();
+            try (OutputStream file = Files.newOutputStream(temporary);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, checksum), 1 << 16)))
+            {
+                store.getObject().copyAll(new CoffeeStore.SnapshotWriter()
+                {
+                    @Override
+                    public void begin(int coffees) throws IOException
+                    {
+                        cut[0] = lastLsn;
+                        count[0] = coffees;
+                        out.writeInt(SNAPSHOT_MAGIC);
+                        out.writeLong(cut[0]);
+                        out.writeInt(coffees);
+                    }
+
+                    @Override
+                    public void write(Coffee coffee) throws IOException
+                    {
+                        writeString(out, coffee.getId());
+                        writeString(out, coffee.getName());
+                    }
+                });
+                out.flush();
+                file.write(ByteBuffer.allocate(Integer.BYTES).putInt((int) checksum.getValue()).array());
+            }
+            if (cut[0] == lastSnapshotLsn)
+            {
+                Files.delete(temporary);        // 上一個快照之後沒有新的記錄
+                return;
+            }
+
+            target = directory.resolve(name(SNAPSHOT_PREFIX, cut[0], SNAPSHOT_SUFFIX));
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE))
+            {
+                channel.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+
+            lastSnapshotLsn = cut[0];
+            prune();
+            log.info("建立快照 {}：{} 個咖啡，耗時 {} ms", target.getFileName(), count[0],
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        catch (IOException e)
+        {
+            // 日誌還在，lastSnapshotLsn 沒有更新，下次排程或關閉時再試；失敗只會讓復原時間變長
+            log.warn("無法建立快照 {}", (target != null) ? target : temporary, e);
+            try
+            {
+                Files.deleteIfExists(temporary);
+            }
+            catch (IOException ignored)
+            {
+            }
+        }
+    }
+
+    // 保留最近兩個快照（最新的損壞時還能用前一個），刪除較舊快照已經包含的日誌檔
+    private void prune() throws IOException
+    {
+        List<Path> snapshotFiles = list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        if (snapshotFiles.size() < 2)
+        {
+            return;
+        }
+        for (Path path : snapshotFiles.subList(0, snapshotFiles.size() - 2))
+        {
+            Files.deleteIfExists(path);
+        }
+        long keepAfter = lsnOf(snapshotFiles.get(snapshotFiles.size() - 2), SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+
+        List<Segment> obsolete = new ArrayList<>();
+        synchronized (segments)
+        {
+            // 下一個日誌檔的第一筆序號不超過 keepAfter + 1 時，這個日誌檔的記錄都在快照裡
+            while (segments.size() > 1 && segments.get(1).firstLsn() <= keepAfter + 1)
+            {
+                obsolete.add(segments.remove(0));
+            }
+        }
+        for (Segment segment : obsolete)
+        {
+            Files.deleteIfExists(segment.path());
+        }
+    }
+
+
+    private Segment createSegment(long firstLsn) throws IOException
+    {
+        Path path = directory.resolve(name(SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            // 映射超過檔案大小的範圍會把檔案延長並補 0
+            return new Segment(path, firstLsn, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        }
+    }
+
+    private Segment openSegment(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            // 關閉 channel 之後映射仍然有效
+            return new Segment(path, lsnOf(path, SEGMENT_PREFIX, SEGMENT_SUFFIX),
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+        }
+    }
+
+    // 目錄裡符合前後綴的檔案，依檔名上的序號排序
+    private List<Path> list(String prefix, String suffix) throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory))
+        {
+            return files.filter(p -> p.getFileName().toString().startsWith(prefix) && p.getFileName().toString().endsWith(suffix))
+                    .sorted(Comparator.comparingLong(p -> lsnOf(p, prefix, suffix)))
+                    .toList();
+        }
+    }
+
+    private static String name(String prefix, long lsn, String suffix)
+    {
+        return prefix + String.format("%020d", lsn) + suffix;
+    }
+
+    private static long lsnOf(Path path, String prefix, String suffix)
+    {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    // 長度 -1 表示 null
+    private static String readString(ByteBuffer buffer)
+    {
+        int length = buffer.getInt();
+        if (length < 0)
+        {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        if (value == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
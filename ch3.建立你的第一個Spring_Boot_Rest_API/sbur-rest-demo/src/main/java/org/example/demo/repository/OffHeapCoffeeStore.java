@@ -0,0 +1,968 @@
+package org.example.demo.repository;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 數百萬個咖啡放在堆積上時，每個咖啡都是 Coffee、CoffeeId、String、byte[] 和好幾個索引節點，老年代越大，GC 要追蹤和搬移的物件越多。
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.example.demo.model.Coffee;
+import org.example.demo.model.CoffeeChange;
+import org.example.demo.model.CoffeeId;
+
+/**
+ * 堆積外 (off-heap) 的欄式咖啡存儲，coffee.store.engine=off-heap 時使用
+ * 每個咖啡是槽位表 (slot table) 裡固定 48 個位元組的一列：id 的兩個 long、名稱的位置和長度、版本號、插入序號；
+ * UTF-8 名稱和不是 UUID 的 id 字串放在位元組區 (arena)。兩者都是 allocateDirect() 配置的 ByteBuffer，
+ * id 和名稱的索引是開放定址 (open addressing) 的雜湊表，每格只存槽位編號和雜湊值，同樣放在堆積外。
+ * 堆積上只剩幾個大型的緩衝區物件，GC 不需要逐一追蹤咖啡；Coffee 物件只在讀取和序列化時建立，用完就是年輕代的垃圾。
+ * 槽位依插入順序配置，更新時原地覆寫，刪除只做標記；刪除的槽位或舊名稱佔了一半以上的空間時整理 (compaction) 一次。
+ * 緩衝區在成長和整理時會換成新的，所以讀取也要加鎖（ReentrantReadWriteLock 的讀取鎖），不像 HeapCoffeeStore 那樣不加鎖。
+ * 單一 ByteBuffer 最大 2 GB，槽位表最多約 4400 萬個咖啡。
+ * 和 HeapCoffeeStore 一樣在釋放寫入鎖之後才等待預寫日誌，等待期間的讀取已經看得到新的值，見 CoffeeWriteAheadLog。
+ */
+@Repository
+@ConditionalOnProperty(name = "coffee.store.engine", havingValue = "off-heap")
+public class OffHeapCoffeeStore implements CoffeeStore
+{
+    // 槽位的欄位位移
+    private static final int MOST_SIGNIFICANT_BITS = 0;     // UUID 的高 64 位元；id 不是 UUID 時是 id 字串在位元組區的位置
+    private static final int LEAST_SIGNIFICANT_BITS = 8;
+    private static final int NAME_ADDRESS = 16;
+    private static final int VERSION = 24;
+    private static final int SEQUENCE = 32;
+    private static final int NAME_LENGTH = 40;              // NO_NAME 表示名稱是 null
+    private static final int ID_LENGTH = 44;                // id 字串的位元組數；UUID_ID 或 DELETED
+    private static final int SLOT_SIZE = 48;
+
+    private static final int NO_NAME = -1;
+    private static final int UUID_ID = -1;
+    private static final int DELETED = -2;
+
+    private static final int MAX_SLOTS = Integer.MAX_VALUE / SLOT_SIZE;
+    private static final int INITIAL_SLOTS = 1024;
+
+    // 刪除的槽位和舊名稱少於這個數量時不整理，避免小存儲反覆整理
+    private static final int COMPACT_MIN_SLOTS = 4096;
+    private static final long COMPACT_MIN_BYTES = 1 << 20;
+
+    // findAll() 的迭代器每次取得讀取鎖時建立的咖啡數量
+    private static final int ITERATOR_BATCH = 256;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+
+    // 以下欄位在寫入鎖內修改、讀取鎖內讀取
+    private ByteBuffer slots = allocate((long) INITIAL_SLOTS * SLOT_SIZE);
+    private int slotCount = 0;          // 已經配置的槽位，包含刪除的
+    private int live = 0;               // 沒有刪除的槽位
+    private long nextSequence = 0;
+    private Arena arena = new Arena();
+    private SlotIndex byId = new SlotIndex(INITIAL_SLOTS * 2);
+    private SlotIndex byName = new SlotIndex(INITIAL_SLOTS * 2);
+    private int generation = 0;         // 每次整理遞增，迭代器以它判斷槽位編號是否已經改變
+
+    // 整個存儲的版本號：只在寫入鎖內遞增，讀取不加鎖
+    private volatile long version = 0;
+
+    // 寫入後的通知對象
+    private final CoffeeChangeListener listener;
+
+    // 預寫日誌：修改記憶體之前記錄
+    private final CoffeeWriteAheadLog writeAheadLog;
+
+    private final Collection<Coffee> all = new AbstractCollection<>()
+    {
+        @Override
+        public Iterator<Coffee> iterator()
+        {
+            return new SlotIterator();
+        }
+
+        @Override
+        public int size()
+        {
+            return OffHeapCoffeeStore.this.size();
+        }
+    };
+
+
+    /**
+     * 構造函數，不發出變更通知，也不寫日誌
+     */
+    public OffHeapCoffeeStore()
+    {
+        this(CoffeeChangeListener.NONE, CoffeeWriteAheadLog.NONE);
+    }
+
+
+    /**
+     * 構造函數
+     * @param listener 每次新增、更新或刪除後通知的對象
+     * @param writeAheadLog 預寫日誌
+     */
+    public OffHeapCoffeeStore(CoffeeChangeListener listener, CoffeeWriteAheadLog writeAheadLog)
+    {
+        this.listener = listener;
+        this.writeAheadLog = writeAheadLog;
+    }
+
+
+    /**
+     * Spring 使用的構造函數
+     * @param listener 每次新增、更新或刪除後通知的對象
+     * @param writeAheadLog 預寫日誌，沒有開啟 coffee.journal.enabled 時不存在
+     */
+    @Autowired
+    public OffHeapCoffeeStore(CoffeeChangeListener listener, ObjectProvider<CoffeeWriteAheadLog> writeAheadLog)
+    {
+        this(listener, writeAheadLog.getIfAvailable(() -> CoffeeWriteAheadLog.NONE));
+    }
+
+
+    @Override
+    public long version()
+    {
+        return version;
+    }
+
+
+    /**
+     * 依插入順序取得所有咖啡
+     * 迭代時每次取得讀取鎖建立一批咖啡，序列化整個列表時堆積上同時只有這一批
+     * @return 弱一致性的唯讀視圖，迭代期間不會拋出 ConcurrentModificationException
+     */
+    @Override
+    public Collection<Coffee> findAll()
+    {
+        return all;
+    }
+
+
+    @Override
+    public Optional<Coffee> findById(String id)
+    {
+        CoffeeId key = CoffeeId.of(id);
+        readLock.lock();
+        try
+        {
+            int slot = findSlot(key);
+            return (slot < 0) ? Optional.empty() : Optional.of(coffeeAt(slot));
+        }
+        finally
+        {
+            readLock.unlock();
+        }
+    }
+
+
+    @Override
+    public Optional<VersionedCoffee> findVersionedById(String id)
+    {
+        CoffeeId key = CoffeeId.of(id);
+        readLock.lock();
+        try
+        {
+            int slot = findSlot(key);
+            return (slot < 0) ? Optional.empty()
+                    : Optional.of(new VersionedCoffee(coffeeAt(slot), slots.getLong(offset(slot) + VERSION)));
+        }
+        finally
+        {
+            readLock.unlock();
+        }
+    }
+
+
+    @Override
+    public void findAllById(Iterable<String> ids, Collection<Coffee> found, Collection<String> missing)
+    {
+        readLock.lock();
+        try
+        {
+            for (String id : ids)
+            {
+                int slot = findSlot(CoffeeId.of(id));
+                if (slot < 0)
+                {
+                    missing.add(id);
+                }
+                else
+                {
+                    found.add(coffeeAt(slot));
+                }
+            }
+        }
+        finally
+        {
+            readLock.unlock();
+        }
+    }
+
+
+    @Override
+    public Optional<Coffee> findByName(String name)
+    {
+        if (name == null)
+        {
+            return Optional.empty();
+        }
+
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        readLock.lock();
+        try
+        {
+            // 同名的咖啡都在同一條探測序列上；槽位依插入順序配置，編號最小的就是最早加入的
+            int first = -1;
+            for (int bucket = byName.home(hash); !byName.isEmpty(bucket); bucket = byName.next(bucket))
+            {
+                int slot = byName.slot(bucket);
+                if (byName.hash(bucket) == hash && (first < 0 || slot < first) && nameEquals(slot, bytes))
+                {
+                    first = slot;
+                }
+            }
+            return (first < 0) ? Optional.empty() : Optional.of(coffeeAt(first));
+        }
+        finally
+        {
+            readLock.unlock();
+        }
+    }
+
+
+    @Override
+    public boolean save(Coffee coffee)
+    {
+        boolean created;
+        writeLock.lock();
+        try
+        {
+            created = write(coffee);
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+        writeAheadLog.sync();
+        return created;
+    }
+
+
+    @Override
+    public void saveAll(Iterable<Coffee> coffees)
+    {
+        writeLock.lock();
+        try
+        {
+            for (Coffee coffee : coffees)
+            {
+                write(coffee);
+            }
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+        writeAheadLog.sync();
+    }
+
+
+    @Override
+    public boolean deleteById(String id)
+    {
+        boolean deleted;
+        writeLock.lock();
+        try
+        {
+            deleted = delete(CoffeeId.of(id));
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+        writeAheadLog.sync();
+        return deleted;
+    }
+
+
+    @Override
+    public int deleteAllById(Iterable<String> ids)
+    {
+        int deleted = 0;
+        writeLock.lock();
+        try
+        {
+            for (String id : ids)
+            {
+                if (delete(CoffeeId.of(id)))
+                {
+                    deleted++;
+                }
+            }
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+        writeAheadLog.sync();
+        return deleted;
+    }
+
+
+    @Override
+    public int renameAll(Iterable<Coffee> coffees)
+    {
+        int renamed = 0;
+        writeLock.lock();
+        try
+        {
+            for (Coffee coffee : coffees)
+            {
+                if (findSlot(coffee.id()) >= 0)
+                {
+                    write(new Coffee(coffee.id(), coffee.getName()));
+                    renamed++;
+                }
+            }
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+        writeAheadLog.sync();
+        return renamed;
+    }
+
+
+    @Override
+    public void restore(Iterable<Coffee> coffees)
+    {
+        writeLock.lock();
+        try
+        {
+            for (Coffee coffee : coffees)
+            {
+                put(coffee);
+            }
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+
+    /**
+     * 依插入順序把所有咖啡交給快照寫入器
+     * 整個過程拿著讀取鎖：寫入等到快照寫完，有寫入在等待時之後的讀取也會排在它後面，
+     * 所以快照的排程要避開尖峰；
+     * 每個咖啡讀出來就交給寫入器，不在堆積上建立所有咖啡的複本，存儲越大越不能整份複製
+     * @param writer 快照寫入器
+     * @throws IOException 寫入器拋出的例外
+     */
+    @Override
+    public void copyAll(SnapshotWriter writer) throws IOException
+    {
+        readLock.lock();
+        try
+        {
+            writer.begin(live);
+            for (int slot = 0; slot < slotCount; slot++)
+            {
+                if (isLive(slot))
+                {
+                    writer.write(coffeeAt(slot));
+                }
+            }
+        }
+        finally
+        {
+            readLock.unlock();
+        }
+    }
+
+
+    @Override
+    public int size()
+    {
+        readLock.lock();
+        try
+        {
+            return live;
+        }
+        finally
+        {
+            readLock.unlock();
+        }
+    }
+
+
+    // 寫入鎖內呼叫：先寫日誌，日誌拋出例外時不修改記憶體
+    private boolean write(Coffee coffee)
+    {
+        boolean created = findSlot(coffee.id()) < 0;
+        CoffeeChange.Type type = created ? CoffeeChange.Type.CREATED : CoffeeChange.Type.UPDATED;
+        writeAheadLog.append(type, coffee);
+        put(coffee);
+        listener.onChange(type, coffee);
+        return created;
+    }
+
+    // 寫入鎖內呼叫
+    private boolean delete(CoffeeId id)
+    {
+        int slot = findSlot(id);
+        if (slot < 0)
+        {
+            return false;
+        }
+
+        Coffee existing = coffeeAt(slot);
+        writeAheadLog.append(CoffeeChange.Type.DELETED, existing);
+
+        int offset = offset(slot);
+        byId.remove(hash(id), slot);
+        unindexName(slot);
+        int idLength = slots.getInt(offset + ID_LENGTH);
+        arena.release(Math.max(idLength, 0) + Math.max(slots.getInt(offset + NAME_LENGTH), 0));
+        slots.putInt(offset + ID_LENGTH, DELETED);
+        live--;
+        version++;
+
+        listener.onChange(CoffeeChange.Type.DELETED, existing);
+        compactIfNeeded();
+        return true;
+    }
+
+    // 寫入鎖內呼叫：已存在的 id 原地覆寫名稱，新的 id 配置一個槽位，然後遞增版本號
+    private void put(Coffee coffee)
+    {
+        CoffeeId id = coffee.id();
+        int slot = findSlot(id);
+        if (slot < 0)
+        {
+            slot = allocateSlot();
+            int offset = offset(slot);
+            if (id.isUuid())
+            {
+                slots.putLong(offset + MOST_SIGNIFICANT_BITS, id.mostSignificantBits());
+                slots.putLong(offset + LEAST_SIGNIFICANT_BITS, id.leastSignificantBits());
+                slots.putInt(offset + ID_LENGTH, UUID_ID);
+            }
+            else
+            {
+                byte[] text = id.toString().getBytes(StandardCharsets.UTF_8);
+                slots.putLong(offset + MOST_SIGNIFICANT_BITS, arena.append(text));
+                slots.putInt(offset + ID_LENGTH, text.length);
+            }
+            slots.putLong(offset + SEQUENCE, nextSequence++);
+            slots.putInt(offset + NAME_LENGTH, NO_NAME);
+            byId.add(hash(id), slot);
+            live++;
+        }
+        else
+        {
+            arena.release(Math.max(slots.getInt(offset(slot) + NAME_LENGTH), 0));
+            unindexName(slot);
+        }
+
+        int offset = offset(slot);
+        String name = coffee.getName();
+        if (name == null)
+        {
+            slots.putInt(offset + NAME_LENGTH, NO_NAME);
+        }
+        else
+        {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            slots.putLong(offset + NAME_ADDRESS, arena.append(bytes));
+            slots.putInt(offset + NAME_LENGTH, bytes.length);
+            byName.add(hash(bytes), slot);
+        }
+        slots.putLong(offset + VERSION, ++version);
+        compactIfNeeded();
+    }
+
+    private int allocateSlot()
+    {
+        if (slotCount == MAX_SLOTS)
+        {
+            throw new IllegalStateException("堆積外存儲的槽位已經用完（" + MAX_SLOTS + " 個）");
+        }
+        if ((long) (slotCount + 1) * SLOT_SIZE > slots.capacity())
+        {
+            long capacity = Math.min((long) slots.capacity() * 2, (long) MAX_SLOTS * SLOT_SIZE);
+            slots = copyOf(slots, slotCount * SLOT_SIZE, capacity);
+        }
+        return slotCount++;
+    }
+
+    private void unindexName(int slot)
+    {
+        int offset = offset(slot);
+        int length = slots.getInt(offset + NAME_LENGTH);
+        if (length != NO_NAME)
+        {
+            byName.remove(hash(arena.read(slots.getLong(offset + NAME_ADDRESS), length)), slot);
+        }
+    }
+
+    // 刪除的槽位或舊名稱佔了一半以上時，依原本的順序把還在的咖啡搬到新的緩衝區，重建兩個索引
+    private void compactIfNeeded()
+    {
+        int dead = slotCount - live;
+        boolean slotsWasted = dead >= COMPACT_MIN_SLOTS && dead > live;
+        boolean bytesWasted = arena.released() >= COMPACT_MIN_BYTES && arena.released() > arena.used() - arena.released();
+        if (!slotsWasted && !bytesWasted)
+        {
+            return;
+        }
+
+        int capacity = Math.max(INITIAL_SLOTS, Math.min(live * 2, MAX_SLOTS));
+        ByteBuffer newSlots = allocate((long) capacity * SLOT_SIZE);
+        Arena newArena = new Arena();
+        SlotIndex newById = new SlotIndex(capacity * 2);
+        SlotIndex newByName = new SlotIndex(capacity * 2);
+
+        int target = 0;
+        for (int slot = 0; slot < slotCount; slot++)
+        {
+            if (!isLive(slot))
+            {
+                continue;
+            }
+
+            int from = offset(slot);
+            int to = target * SLOT_SIZE;
+            newSlots.put(to, slots, from, SLOT_SIZE);
+
+            int idLength = slots.getInt(from + ID_LENGTH);
+            if (idLength == UUID_ID)
+            {
+                newById.add(hash(slots.getLong(from + MOST_SIGNIFICANT_BITS), slots.getLong(from + LEAST_SIGNIFICANT_BITS)), target);
+            }
+            else
+            {
+                byte[] text = arena.read(slots.getLong(from + MOST_SIGNIFICANT_BITS), idLength);
+                newSlots.putLong(to + MOST_SIGNIFICANT_BITS, newArena.append(text));
+                newById.add(hash(text), target);
+            }
+
+            int nameLength = slots.getInt(from + NAME_LENGTH);
+            if (nameLength != NO_NAME)
+            {
+                byte[] name = arena.read(slots.getLong(from + NAME_ADDRESS), nameLength);
+                newSlots.putLong(to + NAME_ADDRESS, newArena.append(name));
+                newByName.add(hash(name), target);
+            }
+            target++;
+        }
+
+        slots = newSlots;
+        slotCount = target;
+        arena = newArena;
+        byId = newById;
+        byName = newByName;
+        generation++;
+    }
+
+    // 讀取或寫入鎖內呼叫：找不到返回 -1
+    private int findSlot(CoffeeId id)
+    {
+        if (id == null)
+        {
+            return -1;
+        }
+
+        if (id.isUuid())
+        {
+            long msb = id.mostSignificantBits();
+            long lsb = id.leastSignificantBits();
+            int hash = hash(msb, lsb);
+            for (int bucket = byId.home(hash); !byId.isEmpty(bucket); bucket = byId.next(bucket))
+            {
+                int slot = byId.slot(bucket);
+                int offset = offset(slot);
+                if (byId.hash(bucket) == hash
+                        && slots.getInt(offset + ID_LENGTH) == UUID_ID
+                        && slots.getLong(offset + MOST_SIGNIFICANT_BITS) == msb
+                        && slots.getLong(offset + LEAST_SIGNIFICANT_BITS) == lsb)
+                {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        byte[] text = id.toString().getBytes(StandardCharsets.UTF_8);
+        int hash = hash(text);
+        for (int bucket = byId.home(hash); !byId.isEmpty(bucket); bucket = byId.next(bucket))
+        {
+            int slot = byId.slot(bucket);
+            int offset = offset(slot);
+            if (byId.hash(bucket) == hash
+                    && slots.getInt(offset + ID_LENGTH) == text.length
+                    && arena.matches(slots.getLong(offset + MOST_SIGNIFICANT_BITS), text))
+            {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(int slot, byte[] name)
+    {
+        int offset = offset(slot);
+        return slots.getInt(offset + NAME_LENGTH) == name.length
+                && arena.matches(slots.getLong(offset + NAME_ADDRESS), name);
+    }
+
+    private boolean isLive(int slot)
+    {
+        return slots.getInt(offset(slot) + ID_LENGTH) != DELETED;
+    }
+
+    // 從槽位建立 Coffee，只在這裡產生堆積上的物件
+    private Coffee coffeeAt(int slot)
+    {
+        int offset = offset(slot);
+        int idLength = slots.getInt(offset + ID_LENGTH);
+        CoffeeId id = (idLength == UUID_ID)
+                ? CoffeeId.of(slots.getLong(offset + MOST_SIGNIFICANT_BITS), slots.getLong(offset + LEAST_SIGNIFICANT_BITS))
+                : CoffeeId.of(new String(arena.read(slots.getLong(offset + MOST_SIGNIFICANT_BITS), idLength), StandardCharsets.UTF_8));
+
+        int nameLength = slots.getInt(offset + NAME_LENGTH);
+        String name = (nameLength == NO_NAME) ? null
+                : new String(arena.read(slots.getLong(offset + NAME_ADDRESS), nameLength), StandardCharsets.UTF_8);
+        return new Coffee(id, name);
+    }
+
+    private static int hash(CoffeeId id)
+    {
+        return id.isUuid()
+                ? hash(id.mostSignificantBits(), id.leastSignificantBits())
+                : hash(id.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int offset(int slot)
+    {
+        return slot * SLOT_SIZE;
+    }
+
+    private static int hash(long msb, long lsb)
+    {
+        return mix(msb * 0x9e3779b97f4a7c15L ^ lsb);
+    }
+
+    private static int hash(byte[] bytes)
+    {
+        long h = bytes.length;
+        for (byte b : bytes)
+        {
+            h = h * 31 + b;
+        }
+        return mix(h);
+    }
+
+    // MurmurHash3 的 64 位元收尾，讓線性探測用到的低位元也均勻分佈
+    private static int mix(long h)
+    {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static ByteBuffer allocate(long capacity)
+    {
+        return ByteBuffer.allocateDirect(Math.toIntExact(capacity)).order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer copyOf(ByteBuffer source, int length, long capacity)
+    {
+        ByteBuffer copy = allocate(capacity);
+        copy.put(0, source, 0, length);
+        return copy;
+    }
+
+
+    /**
+     * 位元組區：只附加不修改，舊的名稱在整理時才回收
+     * 由多個 16 MB 的直接緩衝區組成，位置的高 32 位元是第幾個緩衝區、低 32 位元是緩衝區內的位移
+     */
+    private static final class Arena
+    {
+        private static final int CHUNK_SIZE = 16 << 20;
+
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private ByteBuffer current;
+        private long used;          // 已經附加的位元組
+        private long released;      // 其中已經不再使用的位元組
+
+        long append(byte[] bytes)
+        {
+            if (current == null || current.remaining() < bytes.length)
+            {
+                current = allocate(Math.max(CHUNK_SIZE, bytes.length));
+                chunks.add(current);
+            }
+            long address = ((long) (chunks.size() - 1) << 32) | current.position();
+            current.put(bytes);
+            used += bytes.length;
+            return address;
+        }
+
+        byte[] read(long address, int length)
+        {
+            byte[] bytes = new byte[length];
+            chunks.get((int) (address >>> 32)).get((int) address, bytes);
+            return bytes;
+        }
+
+        boolean matches(long address, byte[] bytes)
+        {
+            ByteBuffer chunk = chunks.get((int) (address >>> 32));
+            return chunk.slice((int) address, bytes.length).equals(ByteBuffer.wrap(bytes));
+        }
+
+        void release(int length)
+        {
+            released += length;
+        }
+
+        long used()
+        {
+            return used;
+        }
+
+        long released()
+        {
+            return released;
+        }
+    }
+
+
+    /**
+     * 以線性探測 (linear probing) 解決碰撞的雜湊表，每格 8 個位元組：槽位編號 + 1（0 表示空格）和鍵的雜湊值
+     * 同一個鍵可以有多格（名稱索引），刪除時把後面的格子往前搬 (backward shift)，不留墓碑。
+     * 負載超過一半時容量加倍，重新放置只需要格子裡的雜湊值，不必讀取鍵。
+     */
+    private static final class SlotIndex
+    {
+        private static final int ENTRY_SIZE = 8;
+
+        private ByteBuffer table;
+        private int mask;
+        private int size;
+
+        SlotIndex(int capacity)
+        {
+            int buckets = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+            this.table = allocate((long) buckets * ENTRY_SIZE);
+            this.mask = buckets - 1;
+        }
+
+        int home(int hash)
+        {
+            return hash & mask;
+        }
+
+        int next(int bucket)
+        {
+            return (bucket + 1) & mask;
+        }
+
+        boolean isEmpty(int bucket)
+        {
+            return table.getInt(bucket * ENTRY_SIZE) == 0;
+        }
+
+        int slot(int bucket)
+        {
+            return table.getInt(bucket * ENTRY_SIZE) - 1;
+        }
+
+        int hash(int bucket)
+        {
+            return table.getInt(bucket * ENTRY_SIZE + 4);
+        }
+
+        void add(int hash, int slot)
+        {
+            if ((size + 1) * 2L > mask + 1L)
+            {
+                resize();
+            }
+            int bucket = home(hash);
+            while (!isEmpty(bucket))
+            {
+                bucket = next(bucket);
+            }
+            set(bucket, slot + 1, hash);
+            size++;
+        }
+
+        void remove(int hash, int slot)
+        {
+            int hole = home(hash);
+            while (slot(hole) != slot)
+            {
+                if (isEmpty(hole))
+                {
+                    return;
+                }
+                hole = next(hole);
+            }
+
+            // 後面同一條探測序列上的格子，如果原本的位置不在 (hole, bucket] 之間，就往前搬到 hole
+            for (int bucket = next(hole); !isEmpty(bucket); bucket = next(bucket))
+            {
+                int distanceFromHome = (bucket - home(hash(bucket))) & mask;
+                int distanceFromHole = (bucket - hole) & mask;
+                if (distanceFromHome >= distanceFromHole)
+                {
+                    set(hole, slot(bucket) + 1, hash(bucket));
+                    hole = bucket;
+                }
+            }
+            set(hole, 0, 0);
+            size--;
+        }
+
+        private void set(int bucket, int entry, int hash)
+        {
+            table.putInt(bucket * ENTRY_SIZE, entry);
+            table.putInt(bucket * ENTRY_SIZE + 4, hash);
+        }
+
+        private void resize()
+        {
+            ByteBuffer old = table;
+            int oldBuckets = mask + 1;
+            if (oldBuckets > Integer.MAX_VALUE / ENTRY_SIZE / 2)
+            {
+                throw new IllegalStateException("堆積外存儲的索引已經到達上限");
+            }
+            table = allocate((long) oldBuckets * 2 * ENTRY_SIZE);
+            mask = oldBuckets * 2 - 1;
+            for (int bucket = 0; bucket < oldBuckets; bucket++)
+            {
+                int entry = old.getInt(bucket * ENTRY_SIZE);
+                if (entry != 0)
+                {
+                    int hash = old.getInt(bucket * ENTRY_SIZE + 4);
+                    int target = home(hash);
+                    while (!isEmpty(target))
+                    {
+                        target = next(target);
+                    }
+                    set(target, entry, hash);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * findAll() 的迭代器
+     * 記住最後一個返回的插入序號，整理過後以序號二分搜尋新的槽位編號：
+     * 整理不改變順序，迭代期間一直存在的咖啡剛好返回一次，和 HeapCoffeeStore 的跳躍串列一樣是弱一致性。
+     */
+    private final class SlotIterator implements Iterator<Coffee>
+    {
+        private final ArrayDeque<Coffee> batch = new ArrayDeque<>(ITERATOR_BATCH);
+        private int position = 0;
+        private long lastSequence = -1;
+        private int seenGeneration = -1;
+        private boolean exhausted;
+
+        @Override
+        public boolean hasNext()
+        {
+            if (batch.isEmpty() && !exhausted)
+            {
+                fill();
+            }
+            return !batch.isEmpty();
+        }
+
+        @Override
+        public Coffee next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            return batch.poll();
+        }
+
+        private void fill()
+        {
+            readLock.lock();
+            try
+            {
+                if (seenGeneration != generation)
+                {
+                    position = firstAfter(lastSequence);
+                    seenGeneration = generation;
+                }
+                while (position < slotCount && batch.size() < ITERATOR_BATCH)
+                {
+                    int slot = position++;
+                    if (isLive(slot))
+                    {
+                        batch.add(coffeeAt(slot));
+                        lastSequence = slots.getLong(offset(slot) + SEQUENCE);
+                    }
+                }
+                exhausted = batch.isEmpty();
+            }
+            finally
+            {
+                readLock.unlock();
+            }
+        }
+
+        // 第一個插入序號大於 sequence 的槽位；槽位依序號遞增排列，包含刪除的槽位
+        private int firstAfter(long sequence)
+        {
+            int low = 0;
+            int high = slotCount;
+            while (low < high)
+            {
+                int middle = (low + high) >>> 1;
+                if (slots.getLong(offset(middle) + SEQUENCE) <= sequence)
+                {
+                    low = middle + 1;
+                }
+                else
+                {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
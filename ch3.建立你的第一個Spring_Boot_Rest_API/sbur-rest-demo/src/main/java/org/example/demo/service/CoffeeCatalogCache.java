@@ -0,0 +1,253 @@
+package org.example.demo.service;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 把整份咖啡列表預先序列化成 JSON 和 gzip 的位元組，同一個版本的請求直接寫出，不再逐次序列化。
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.example.demo.repository.CoffeeStore;
+
+/**
+ * 咖啡列表的序列化快取
+ * 以 CoffeeStore 的版本號為鍵，只保留最新的一份：任何寫入都會遞增版本號，
+ * 下一次請求發現版本不同就重新建立，所以新增、更新、刪除都不需要另外通知快取。
+ * 每個版本只由第一個請求建立，建立時不持有任何鎖；建立期間的其他請求不等待，直接串流，和沒有快取時相同。
+ * 序列化超過 max-bytes 就中止，不快取、也不壓縮：咖啡數量沒有少於那時之前都不再嘗試，
+ * 由控制器把存儲交給訊息轉換器串流寫出，大型目錄不會每個請求都配置一份完整的位元組陣列。
+ */
+@Component
+public class CoffeeCatalogCache
+{
+    private final CoffeeStore coffees;
+    private final ObjectMapper objectMapper;
+    private final int maxBytes;
+
+    // ETag 的前綴：版本號在重新啟動後會從 0 開始，加上啟動時間才不會和重新啟動前的 ETag 重複
+    private final String eTagPrefix = Long.toString(System.currentTimeMillis(), 36) + "-";
+
+    // 最新的一份；只會換成更新的版本
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+    // 已經有請求在建立的最新版本，同一個版本只建立一次
+    private final AtomicLong building = new AtomicLong(-1);
+
+    // 上次超過 max-bytes 時的咖啡數量；存儲至少還有這麼多咖啡時不再嘗試快取
+    private volatile int oversizedAt = Integer.MAX_VALUE;
+
+    /**
+     * 某一個版本的咖啡列表
+     * @param version 建立時存儲的版本號
+     * @param json 序列化後的 JSON
+     * @param gzip gzip 壓縮後的 JSON
+     * @param eTag JSON 的 ETag
+     * @param gzipETag gzip 的 ETag；兩種編碼的內容不同，強 ETag 也必須不同
+     */
+    public record Snapshot(long version, byte[] json, byte[] gzip, String eTag, String gzipETag)
+    {
+    }
+
+    /**
+     * 建構函數
+     * @param coffees 咖啡存儲
+     * @param objectMapper Spring Boot 設定好的 ObjectMapper，和控制器使用相同的序列化規則
+     * @param maxBytes 可以快取的 JSON 最大位元組數
+     */
+    public CoffeeCatalogCache(CoffeeStore coffees,
+                              ObjectMapper objectMapper,
+                              @Value("${coffee.catalog.cache.max-bytes:67108864}") int maxBytes)
+    {
+        this.coffees = coffees;
+        this.objectMapper = objectMapper;
+        this.maxBytes = maxBytes;
+    }
+
+
+    /**
+     * 取得目前版本的咖啡列表
+     * 版本沒有變更時直接返回快取，不配置任何物件；
+     * 這個請求負責建立新的版本時在呼叫端的執行緒上序列化、壓縮，不持有鎖
+     * @return 目前版本的咖啡列表；太大不快取，或這個版本正由其他請求建立時為空，呼叫端改為串流
+     */
+    public Optional<Snapshot> get()
+    {
+        long version = coffees.version();       // 先取版本號再讀資料，見 CoffeeStore.version()
+        Snapshot current = snapshot.get();
+        if (current != null && current.version() == version)
+        {
+            return Optional.of(current);
+        }
+        if (coffees.size() >= oversizedAt)
+        {
+            return Optional.empty();
+        }
+
+        long inProgress = building.get();
+        if (inProgress >= version || !building.compareAndSet(inProgress, version))
+        {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(build(version));
+    }
+
+
+    /**
+     * 某一個版本的 JSON ETag，和快取的 Snapshot.eTag() 相同，串流寫出時使用
+     * @param version 存儲的版本號
+     * @return JSON 的 ETag
+     */
+    public String eTag(long version)
+    {
+        return eTagPrefix + version;
+    }
+
+
+    /**
+     * 判斷客戶端是否接受 gzip
+     * @param acceptEncoding Accept-Encoding 標頭
+     * @return 有列出 gzip（或 *）且 q 值不是 0 時返回 true
+     */
+    public static boolean acceptsGzip(String acceptEncoding)
+    {
+        if (acceptEncoding == null || !(acceptEncoding.contains("gzip") || acceptEncoding.contains("*")))
+        {
+            return false;
+        }
+
+        for (String coding : acceptEncoding.split(","))
+        {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip") || name.equals("*"))
+            {
+                for (int i = 1; i < parts.length; i++)
+                {
+                    String parameter = parts[i].trim();
+                    if (parameter.startsWith("q=") && parameter.substring(2).matches("0(\\.0*)?"))     // q=0 表示不接受
+                    {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    // 序列化、壓縮之後換掉較舊的版本；超過 max-bytes 返回 null
+    private Snapshot build(long version)
+    {
+        int size = coffees.size();
+        byte[] json;
+        try
+        {
+            BoundedOutputStream out = new BoundedOutputStream(maxBytes);
+            objectMapper.writeValue(out, coffees.findAll());
+            json = out.toByteArray();
+        }
+        catch (CatalogTooLargeException e)
+        {
+            oversizedAt = size;
+            snapshot.updateAndGet(old -> (old != null && old.version() < version) ? null : old);    // 舊版本的位元組不再需要，讓 GC 回收
+            return null;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        oversizedAt = Integer.MAX_VALUE;
+        String eTag = eTag(version);
+        Snapshot built = new Snapshot(version, json, gzip(json), eTag, eTag + "-gzip");
+        snapshot.accumulateAndGet(built, (old, next) -> (old == null || old.version() < next.version()) ? next : old);
+        return built;
+    }
+
+    // 每個版本只壓縮一次、而且只有建立的請求等待，所以使用最高壓縮等級
+    private static byte[] gzip(byte[] json)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(json.length / 4, 64));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)
+        {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        })
+        {
+            gzip.write(json);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);      // 寫入記憶體不會失敗
+        }
+        return out.toByteArray();
+    }
+
+
+    // 寫到 max-bytes 就中止序列化，不必把整份大型列表寫完才發現不能快取
+    private static final class BoundedOutputStream extends OutputStream
+    {
+        private final ByteArrayOutputStream bytes;
+        private final int limit;
+
+        BoundedOutputStream(int limit)
+        {
+            this.bytes = new ByteArrayOutputStream(Math.min(limit, 1 << 16));
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            ensureRoom(1);
+            bytes.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            ensureRoom(len);
+            bytes.write(b, off, len);
+        }
+
+        byte[] toByteArray()
+        {
+            return bytes.toByteArray();
+        }
+
+        private void ensureRoom(int len) throws CatalogTooLargeException
+        {
+            if ((long) bytes.size() + len > limit)
+            {
+                throw new CatalogTooLargeException();
+            }
+        }
+    }
+
+    // Jackson 會把序列化時的非檢查例外包成 JsonMappingException，IOException 則原樣拋出；不填堆疊，中止的代價只有已經序列化的部分
+    private static final class CatalogTooLargeException extends IOException
+    {
+        CatalogTooLargeException()
+        {
+            super("咖啡列表超過快取上限", null);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace()
+        {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package org.example.demo.service;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 從 JSON / NDJSON 檔案匯入初始咖啡：以 Jackson 串流解析，多個檔案平行解析，直接寫入存儲。
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.example.demo.model.BatchSummary;
+import org.example.demo.model.SeedImportResult;
+import org.example.demo.model.SeedImportResult.SeedFile;
+import org.example.demo.repository.CoffeeStore;
+
+/**
+ * 初始資料匯入器
+ * coffee.seed.locations 可以列出多個位置，每個位置都可以是 Spring 的資源樣式，例如
+ * classpath:seed/*.ndjson 或 file:/data/catalog/*.ndjson；檔案可以是單一物件、JSON 陣列或 NDJSON。
+ * 每個檔案由一個執行緒以 CoffeeStreamReader 逐筆解析，每讀滿一段就寫入存儲，
+ * 記憶體中每個執行緒最多只保留一段，所以再大的檔案也不會整份載入記憶體。
+ * 平行的單位是檔案：同一個 id 出現在多個檔案時，最後留下哪一筆取決於寫入的先後順序，不保證固定，
+ * 所以預設位置只有 seed 目錄，不包含 resources 根目錄裡 id 重複的範例請求 (coffee*.json)。
+ * 檔案中途失敗時，之前已經寫入的段落不會回滾，結果裡的筆數就是已經寫入存儲的筆數。
+ */
+@Component
+public class CoffeeSeedImporter
+{
+    private static final Logger log = LoggerFactory.getLogger(CoffeeSeedImporter.class);
+
+    private final CoffeeStore coffees;
+    private final CoffeeStreamReader coffeeStreamReader;
+    private final ResourcePatternResolver resourceResolver;
+    private final List<String> locations;
+    private final int parallelism;
+    private final int chunkSize;
+
+    // 同一時間只允許一個匯入，避免啟動時的匯入和管理端點觸發的匯入重複寫入
+    private final AtomicBoolean running = new AtomicBoolean();
+
+
+    /**
+     * 構造函數
+     * @param coffees 咖啡存儲
+     * @param coffeeStreamReader 串流讀取器
+     * @param resourceResolver 解析資源樣式，Spring 的 ApplicationContext 本身就是一個
+     * @param locations 要匯入的檔案位置（資源樣式），以逗號分隔
+     * @param parallelism 同時解析的檔案數量上限
+     * @param chunkSize 每次寫入存儲的筆數
+     */
+    public CoffeeSeedImporter(CoffeeStore coffees,
+                              CoffeeStreamReader coffeeStreamReader,
+                              ResourcePatternResolver resourceResolver,
+                              @Value("${coffee.seed.locations:classpath:seed/*.ndjson}") List<String> locations,
+                              @Value("${coffee.seed.parallelism:4}") int parallelism,
+                              @Value("${coffee.batch.chunk-size:1000}") int chunkSize)
+    {
+        this.coffees = coffees;
+        this.coffeeStreamReader = coffeeStreamReader;
+        this.resourceResolver = resourceResolver;
+        this.locations = List.copyOf(locations);
+        this.parallelism = Math.max(1, parallelism);
+        this.chunkSize = chunkSize;
+    }
+
+
+    /**
+     * 匯入 coffee.seed.locations 列出的所有檔案
+     * 單一檔案失敗不會中斷其他檔案，錯誤記在該檔案的結果裡
+     * @return 匯入結果
+     * @throws IOException 資源樣式本身無法解析
+     * @throws ImportInProgressException 已經有一個匯入正在進行
+     */
+    public SeedImportResult importAll() throws IOException
+    {
+        if (!running.compareAndSet(false, true))
+        {
+            throw new ImportInProgressException();
+        }
+
+        long start = System.nanoTime();
+        try
+        {
+            List<Resource> resources = resolve();
+            List<SeedFile> files = importInParallel(resources);
+
+            long accepted = files.stream().mapToLong(SeedFile::accepted).sum();
+            long rejected = files.stream().mapToLong(SeedFile::rejected).sum();
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            log.info("從 {} 個檔案匯入 {} 筆咖啡（略過 {} 筆），耗時 {} ms", files.size(), accepted, rejected, elapsedMillis);
+            return new SeedImportResult(files, accepted, rejected, elapsedMillis);
+        }
+        finally
+        {
+            running.set(false);
+        }
+    }
+
+
+    // 展開每個資源樣式，依位置排序，找不到檔案的樣式直接略過
+    private List<Resource> resolve() throws IOException
+    {
+        List<Resource> resources = new ArrayList<>();
+        for (String location : locations)
+        {
+            for (Resource resource : resourceResolver.getResources(location.trim()))
+            {
+                if (resource.isReadable())
+                {
+                    resources.add(resource);
+                }
+            }
+        }
+        resources.sort(Comparator.comparing(Resource::getDescription));
+        return resources;
+    }
+
+    private List<SeedFile> importInParallel(List<Resource> resources)
+    {
+        if (resources.isEmpty())
+        {
+            return List.of();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, resources.size()));
+        try
+        {
+            List<Future<SeedFile>> futures = new ArrayList<>(resources.size());
+            for (Resource resource : resources)
+            {
+                futures.add(executor.submit(() -> importFile(resource)));
+            }
+
+            List<SeedFile> files = new ArrayList<>(futures.size());
+            for (int i = 0; i < futures.size(); i++)
+            {
+                files.add(await(futures.get(i), resources.get(i)));
+            }
+            return files;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private SeedFile importFile(Resource resource)
+    {
+        String location = resource.getDescription();
+        try (InputStream in = resource.getInputStream())
+        {
+            BatchSummary summary = coffeeStreamReader.read(in, chunkSize, coffees::saveAll);
+            return new SeedFile(location, summary.accepted(), summary.rejected(), summary.chunks(), null);
+        }
+        catch (CoffeeStreamReader.PartialReadException e)
+        {
+            // 失敗之前寫入的段落已經在存儲裡，筆數照實回報
+            BatchSummary written = e.written();
+            String error = (e.getCause() instanceof JsonProcessingException json)
+                    ? "JSON 格式錯誤：" + json.getOriginalMessage()
+                    : "讀取失敗：" + e.getCause().getMessage();
+            log.warn("{} 匯入到一半失敗，已經寫入 {} 筆：{}", location, written.accepted(), error);
+            return new SeedFile(location, written.accepted(), written.rejected(), written.chunks(), error);
+        }
+        catch (IOException e)
+        {
+            log.warn("無法讀取 {}", location, e);
+            return new SeedFile(location, 0, 0, 0, "讀取失敗：" + e.getMessage());
+        }
+    }
+
+    private static SeedFile await(Future<SeedFile> future, Resource resource)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return new SeedFile(resource.getDescription(), 0, 0, 0, "匯入被中斷");
+        }
+        catch (ExecutionException e)
+        {
+            return new SeedFile(resource.getDescription(), 0, 0, 0, "匯入失敗：" + e.getCause());
+        }
+    }
+
+
+    /**
+     * 已經有一個匯入正在進行
+     * 和存儲、預寫日誌拋出的 IllegalStateException 分開，呼叫端才能只把這個情況當成 409
+     */
+    public static class ImportInProgressException extends RuntimeException
+    {
+        public ImportInProgressException()
+        {
+            super("已經有一個初始資料匯入正在進行");
+        }
+    }
+}
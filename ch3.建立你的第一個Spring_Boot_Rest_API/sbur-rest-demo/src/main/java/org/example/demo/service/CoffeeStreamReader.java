@@ -0,0 +1,164 @@
+package org.example.demo.service;
+
+// 第三章 建立你的第一個 Spring Boot REST API
+// 用 Jackson 的串流解析器 (JsonParser) 逐筆讀取咖啡，避免整份請求內容一次載入記憶體。
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.example.demo.model.BatchSummary;
+import org.example.demo.model.Coffee;
+
+/**
+ * 咖啡串流讀取器
+ * 支援 JSON 陣列 ([{...}, {...}]) 和 NDJSON (每行一個 {...}) 兩種格式，
+ * 每讀滿 chunkSize 筆就交給 sink 寫入，記憶體中最多只保留一段。
+ * 讀到一半失敗時，已經交給 sink 的段落不會收回，PartialReadException 帶著這些段落的筆數。
+ */
+@Component
+public class CoffeeStreamReader
+{
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 建構函數
+     * @param objectMapper Spring Boot 設定好的 ObjectMapper，和控制器使用相同的反序列化規則
+     */
+    public CoffeeStreamReader(ObjectMapper objectMapper)
+    {
+        this.objectMapper = objectMapper;
+    }
+
+
+    /**
+     * 讀取整個串流
+     * @param in 請求內容
+     * @param chunkSize 每一段的筆數
+     * @param sink 接收每一段咖啡的寫入動作
+     * @return 匯入結果摘要
+     * @throws PartialReadException 串流讀取失敗，或內容不是合法的 JSON；原本的例外是它的 cause
+     */
+    public BatchSummary read(InputStream in, int chunkSize, Consumer<List<Coffee>> sink) throws PartialReadException
+    {
+        long accepted = 0;
+        long rejected = 0;
+        long chunks = 0;
+        long written = 0;       // 已經交給 sink 的筆數
+        List<Coffee> chunk = new ArrayList<>(chunkSize);
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(in))
+        {
+            JsonToken token = parser.nextToken();
+            boolean array = (token == JsonToken.START_ARRAY);
+            if (array)
+            {
+                token = parser.nextToken();
+            }
+
+            // JSON 陣列讀到 END_ARRAY 為止；NDJSON 是一連串的根層級物件，讀到串流結束 (null) 為止
+            while (token != null && token != JsonToken.END_ARRAY)
+            {
+                Coffee coffee = readCoffee(parser, token);
+                if (coffee == null)
+                {
+                    rejected++;
+                }
+                else
+                {
+                    chunk.add(coffee);
+                    accepted++;
+                }
+
+                if (chunk.size() >= chunkSize)
+                {
+                    sink.accept(chunk);
+                    chunks++;
+                    written += chunk.size();
+                    chunk = new ArrayList<>(chunkSize);
+                }
+
+                token = parser.nextToken();
+            }
+        }
+        catch (IOException e)
+        {
+            // 還沒交給 sink 的這一段沒有寫入，不算進去
+            throw new PartialReadException(new BatchSummary(written, rejected, chunks), e);
+        }
+
+        if (!chunk.isEmpty())
+        {
+            sink.accept(chunk);
+            chunks++;
+        }
+
+        return new BatchSummary(accepted, rejected, chunks);
+    }
+
+
+    /**
+     * 讀取目前位置的一筆咖啡
+     * 先把單一物件讀成樹狀結構再轉型，轉型失敗時解析器仍停在物件結尾，可以繼續讀下一筆
+     * @return 合法的咖啡；無法使用時返回 null
+     */
+    private Coffee readCoffee(JsonParser parser, JsonToken token) throws IOException
+    {
+        if (token != JsonToken.START_OBJECT)
+        {
+            parser.skipChildren();      // 陣列裡夾雜的非物件元素，整個略過
+            return null;
+        }
+
+        JsonNode node = parser.readValueAsTree();
+        try
+        {
+            Coffee coffee = objectMapper.treeToValue(node, Coffee.class);
+            return isAcceptable(coffee) ? coffee : null;
+        }
+        catch (JsonProcessingException e)
+        {
+            return null;
+        }
+    }
+
+    private static boolean isAcceptable(Coffee coffee)
+    {
+        // UUID 格式的 id 一定不是空白，不必轉換成字串檢查
+        return coffee.id() != null && (coffee.id().isUuid() || !coffee.getId().isBlank())
+                && coffee.getName() != null && !coffee.getName().isBlank();
+    }
+
+
+    /**
+     * 讀到一半失敗
+     * 原本的例外是 cause：JsonProcessingException 表示內容不是合法的 JSON，其他是串流讀取失敗
+     */
+    public static class PartialReadException extends IOException
+    {
+        private final BatchSummary written;
+
+        public PartialReadException(BatchSummary written, IOException cause)
+        {
+            super(cause.getMessage(), cause);
+            this.written = written;
+        }
+
+        /**
+         * @return 失敗之前已經交給 sink 寫入的筆數、略過的筆數和段數
+         */
+        public BatchSummary written()
+        {
+            return written;
+        }
+    }
+}
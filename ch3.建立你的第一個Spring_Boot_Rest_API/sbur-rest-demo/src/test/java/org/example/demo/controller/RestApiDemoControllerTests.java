@@ -0,0 +1,264 @@
+package org.example.demo.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.json.JsonCompareMode;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.example.demo.metrics.CoffeeMetrics;
+import org.example.demo.model.Coffee;
+import org.example.demo.protobuf.CoffeeProtobufHttpMessageConverter;
+import org.example.demo.repository.CoffeeStore;
+import org.example.demo.repository.HeapCoffeeStore;
+import org.example.demo.service.CoffeeCatalogCache;
+import org.example.demo.service.CoffeeStreamReader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * RestApiDemoController 的請求驗證：不合法的請求必須是 400，不可以在存儲裡拋出 NullPointerException 變成 500。
+ * 初始資料在啟動後以背景執行緒載入，和測試寫入的咖啡無關，但仍然關閉，讓存儲的內容只來自測試。
+ */
+@SpringBootTest(properties = {"coffee.seed.enabled=false", "coffee.lookup.max-ids=" + RestApiDemoControllerTests.MAX_IDS})
+@AutoConfigureMockMvc
+public class RestApiDemoControllerTests
+{
+    static final int MAX_IDS = 100;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void nullIdIsRejected() throws Exception
+    {
+        String name = "Ok " + UUID.randomUUID();
+        mockMvc.perform(post("/coffees").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"id\":null,\"name\":\"Nameless\"}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/coffees/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"id\":\"" + UUID.randomUUID() + "\",\"name\":\"" + name + "\"},{\"id\":null,\"name\":\"Nameless\"}]"))
+                .andExpect(status().isBadRequest());
+        // 整批在寫入之前就被拒絕，同一批裡合法的咖啡也沒有寫入（找不到時返回 JSON 的 null）
+        mockMvc.perform(get("/coffees/name/{name}", name))
+                .andExpect(content().string("null"));
+    }
+
+    @Test
+    void missingIdIsGenerated() throws Exception
+    {
+        mockMvc.perform(post("/coffees").contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"Generated\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").isString());
+    }
+
+    @Test
+    void lookupReturnsEachIdOnceInRequestOrder() throws Exception
+    {
+        String first = UUID.randomUUID().toString();
+        String second = UUID.randomUUID().toString();
+        String missing = UUID.randomUUID().toString();
+        mockMvc.perform(post("/coffees/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"id\":\"" + first + "\",\"name\":\"First\"},{\"id\":\"" + second + "\",\"name\":\"Second\"}]"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/coffees/lookup").contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonArray(List.of(second, missing, first, second, missing))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.found.length()").value(2))
+                .andExpect(jsonPath("$.found[0].id").value(second))
+                .andExpect(jsonPath("$.found[1].id").value(first))
+                .andExpect(jsonPath("$.missing.length()").value(1))
+                .andExpect(jsonPath("$.missing[0]").value(missing));
+    }
+
+    @Test
+    void lookupRejectsNullIdsAndTooManyIds() throws Exception
+    {
+        mockMvc.perform(post("/coffees/lookup").contentType(MediaType.APPLICATION_JSON)
+                        .content("[\"" + UUID.randomUUID() + "\",null]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/coffees/lookup").contentType(MediaType.APPLICATION_JSON).content(jsonArray(ids(MAX_IDS))))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/coffees/lookup").contentType(MediaType.APPLICATION_JSON).content(jsonArray(ids(MAX_IDS + 1))))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void batchRenameUpdatesOnlyExistingIds() throws Exception
+    {
+        List<String> ids = newCoffees(2);
+        String missing = UUID.randomUUID().toString();
+
+        mockMvc.perform(patch("/coffees/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"id\":\"" + ids.get(0) + "\",\"name\":\"First\"},"
+                                + "{\"id\":\"" + missing + "\",\"name\":\"Missing\"},"
+                                + "{\"id\":\"" + ids.get(1) + "\",\"name\":\"Second\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.requested").value(3))
+                .andExpect(jsonPath("$.affected").value(2));
+
+        mockMvc.perform(get("/coffees/{id}", ids.get(0))).andExpect(jsonPath("$.name").value("First"));
+        mockMvc.perform(get("/coffees/{id}", ids.get(1))).andExpect(jsonPath("$.name").value("Second"));
+        mockMvc.perform(post("/coffees/lookup").contentType(MediaType.APPLICATION_JSON).content(jsonArray(List.of(missing))))
+                .andExpect(jsonPath("$.missing[0]").value(missing));
+    }
+
+    @Test
+    void batchDeleteCountsOnlyExistingIds() throws Exception
+    {
+        List<String> ids = newCoffees(2);
+        String missing = UUID.randomUUID().toString();
+
+        mockMvc.perform(delete("/coffees/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonArray(List.of(ids.get(0), missing, ids.get(1), ids.get(0)))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.requested").value(4))
+                .andExpect(jsonPath("$.affected").value(2));
+
+        mockMvc.perform(post("/coffees/lookup").contentType(MediaType.APPLICATION_JSON).content(jsonArray(ids)))
+                .andExpect(jsonPath("$.found.length()").value(0))
+                .andExpect(jsonPath("$.missing.length()").value(2));
+    }
+
+    @Test
+    void batchWritesRejectNullIds() throws Exception
+    {
+        List<String> ids = newCoffees(1);
+
+        mockMvc.perform(delete("/coffees/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[\"" + ids.get(0) + "\",null]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/coffees/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"id\":\"" + ids.get(0) + "\",\"name\":\"Renamed\"},{\"id\":null,\"name\":\"Nameless\"}]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/coffees/batch").contentType(MediaType.APPLICATION_JSON).content("[null]"))
+                .andExpect(status().isBadRequest());
+
+        // 整批在寫入之前就被拒絕
+        mockMvc.perform(get("/coffees/{id}", ids.get(0))).andExpect(jsonPath("$.name").value("Batch"));
+    }
+
+    @Test
+    void eTagDependsOnTheNegotiatedRepresentation() throws Exception
+    {
+        String id = newCoffees(1).get(0);
+
+        String json = mockMvc.perform(get("/coffees/{id}", id).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String protobuf = mockMvc.perform(get("/coffees/{id}", id).accept(CoffeeProtobufHttpMessageConverter.PROTOBUF))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(CoffeeProtobufHttpMessageConverter.PROTOBUF))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(protobuf).isNotEqualTo(json);
+
+        // 只有同一個格式的 ETag 才是 304，304 也要帶 Vary
+        mockMvc.perform(get("/coffees/{id}", id).accept(MediaType.APPLICATION_JSON).header(HttpHeaders.IF_NONE_MATCH, json))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)));
+        mockMvc.perform(get("/coffees/{id}", id).accept(CoffeeProtobufHttpMessageConverter.PROTOBUF).header(HttpHeaders.IF_NONE_MATCH, json))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void collectionETagDependsOnTheNegotiatedRepresentation() throws Exception
+    {
+        newCoffees(1);
+        MediaType cbor = MediaType.parseMediaType("application/cbor");
+
+        String json = mockMvc.perform(get("/coffees").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String binary = mockMvc.perform(get("/coffees").accept(cbor))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(cbor))
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(binary).isNotEqualTo(json);
+
+        // 同一個格式、不同寫法的 Accept 協商出同一個格式，ETag 相同
+        mockMvc.perform(get("/coffees").accept("application/cbor;q=0.9, text/plain;q=0.1").header(HttpHeaders.IF_NONE_MATCH, binary))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/coffees").accept(cbor).header(HttpHeaders.IF_NONE_MATCH, json))
+                .andExpect(status().isOk());
+    }
+
+
+    @Test
+    void oversizedCatalogIsStreamedWithTheSameETag() throws Exception
+    {
+        // 快取上限只有 8 個位元組，列表由訊息轉換器串流寫出，不快取、不壓縮
+        CoffeeStore store = new HeapCoffeeStore();
+        ObjectMapper objectMapper = new ObjectMapper();
+        CoffeeCatalogCache cache = new CoffeeCatalogCache(store, objectMapper, 8);
+        MockMvc standalone = MockMvcBuilders.standaloneSetup(new RestApiDemoController(store, cache,
+                new CoffeeStreamReader(objectMapper), 1000, MAX_IDS, new CoffeeMetrics(new SimpleMeterRegistry()))).build();
+        store.save(new Coffee("1", "Espresso"));
+
+        String eTag = standalone.perform(get("/coffees").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT_ENCODING)))
+                .andExpect(content().json("[{\"id\":\"1\",\"name\":\"Espresso\"}]", JsonCompareMode.STRICT))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(cache.get()).isEmpty();
+
+        standalone.perform(get("/coffees").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+        store.save(new Coffee("1", "Ristretto"));
+        standalone.perform(get("/coffees").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+    }
+
+    private List<String> newCoffees(int count) throws Exception
+    {
+        List<String> ids = ids(count);
+        StringBuilder coffees = new StringBuilder("[");
+        for (String id : ids)
+        {
+            coffees.append(coffees.length() > 1 ? "," : "").append("{\"id\":\"").append(id).append("\",\"name\":\"Batch\"}");
+        }
+        coffees.append(']');
+        mockMvc.perform(post("/coffees/batch").contentType(MediaType.APPLICATION_JSON).content(coffees.toString()))
+                .andExpect(status().isOk());
+        return ids;
+    }
+
+    private static List<String> ids(int count)
+    {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return ids;
+    }
+
+    private static String jsonArray(List<String> values)
+    {
+        return "[\"" + String.join("\",\"", values) + "\"]";
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.demo.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * CoffeeId 只把標準格式的 UUID 存成兩個 long，其他 id 轉換回字串時必須和原本完全相同。
+ */
+public class CoffeeIdTests
+{
+    @Test
+    void canonicalUuidIsCompactAndRoundTrips()
+    {
+        UUID uuid = UUID.randomUUID();
+        CoffeeId id = CoffeeId.of(uuid.toString());
+
+        assertThat(id.isUuid()).isTrue();
+        assertThat(id.mostSignificantBits()).isEqualTo(uuid.getMostSignificantBits());
+        assertThat(id.leastSignificantBits()).isEqualTo(uuid.getLeastSignificantBits());
+        assertThat(id.toString()).isEqualTo(uuid.toString());
+        assertThat(id).isEqualTo(CoffeeId.of(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()));
+    }
+
+    @Test
+    void otherIdsKeepTheirText()
+    {
+        String upper = UUID.randomUUID().toString().toUpperCase();
+        for (String text : new String[] {"99999", upper, "1-2-3-4-5", "", "0f0cc0fc-f672-4fc1-a062-3dfaa514dcZ3"})
+        {
+            CoffeeId id = CoffeeId.of(text);
+            assertThat(id.isUuid()).as(text).isFalse();
+            assertThat(id.toString()).isEqualTo(text);
+        }
+        // 大寫的 UUID 和小寫的是不同的 id，和改用 CoffeeId 之前的字串比對相同
+        assertThat(CoffeeId.of(upper)).isNotEqualTo(CoffeeId.of(upper.toLowerCase()));
+        assertThat(CoffeeId.of(null)).isNull();
+    }
+
+    @Test
+    void equalIdsHaveEqualHashCodes()
+    {
+        String text = UUID.randomUUID().toString();
+        assertThat(CoffeeId.of(text)).isEqualTo(CoffeeId.of(text)).hasSameHashCodeAs(CoffeeId.of(text));
+        assertThat(CoffeeId.of("99999")).isEqualTo(CoffeeId.of("99999")).isNotEqualTo(CoffeeId.of("88888"));
+    }
+
+    @Test
+    void jsonIsAPlainString() throws Exception
+    {
+        ObjectMapper mapper = new ObjectMapper();
+        String uuid = UUID.randomUUID().toString();
+
+        Coffee coffee = mapper.readValue("{\"id\":\"" + uuid + "\",\"name\":\"Latte\"}", Coffee.class);
+        assertThat(coffee.id().isUuid()).isTrue();
+        assertThat(mapper.writeValueAsString(coffee)).isEqualTo("{\"id\":\"" + uuid + "\",\"name\":\"Latte\"}");
+    }
+}
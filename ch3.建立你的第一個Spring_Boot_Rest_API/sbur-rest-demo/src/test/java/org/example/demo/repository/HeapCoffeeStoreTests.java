@@ -0,0 +1,134 @@
+package org.example.demo.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.example.demo.model.Coffee;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * HeapCoffeeStore 的索引：插入順序、更新保留位置、名稱次索引和版本號。
+ */
+public class HeapCoffeeStoreTests
+{
+    private final CoffeeStore store = new HeapCoffeeStore();
+
+    @Test
+    void updateKeepsInsertionPosition()
+    {
+        store.save(new Coffee("1", "Espresso"));
+        store.save(new Coffee("2", "Latte"));
+        store.save(new Coffee("3", "Mocha"));
+
+        assertThat(store.save(new Coffee("2", "Flat White"))).isFalse();
+        assertThat(store.findAll()).extracting(Coffee::getName).containsExactly("Espresso", "Flat White", "Mocha");
+        assertThat(store.size()).isEqualTo(3);
+    }
+
+    @Test
+    void findByNameReturnsEarliestAndFollowsRenames()
+    {
+        store.save(new Coffee("1", "House Blend"));
+        store.save(new Coffee("2", "House Blend"));
+        assertThat(store.findByName("House Blend")).map(Coffee::getId).contains("1");
+
+        // 改名沿用原本的序號，舊名稱不可以再找到這個咖啡
+        store.save(new Coffee("1", "Decaf"));
+        assertThat(store.findByName("House Blend")).map(Coffee::getId).contains("2");
+        assertThat(store.findByName("Decaf")).map(Coffee::getId).contains("1");
+
+        store.deleteById("2");
+        assertThat(store.findByName("House Blend")).isEmpty();
+    }
+
+    @Test
+    void versionGrowsOnEveryWriteAndIsRecordedPerCoffee()
+    {
+        long start = store.version();
+        store.save(new Coffee("1", "Espresso"));
+        store.save(new Coffee("2", "Latte"));
+        long afterLatte = store.version();
+        store.deleteById("missing");
+        store.deleteById("1");
+
+        assertThat(afterLatte).isEqualTo(start + 2);
+        assertThat(store.version()).isEqualTo(start + 3);
+        assertThat(store.findVersionedById("2")).map(CoffeeStore.VersionedCoffee::version).contains(afterLatte);
+    }
+
+    @Test
+    void lookupSplitsFoundAndMissing()
+    {
+        store.saveAll(List.of(new Coffee("1", "Espresso"), new Coffee("2", "Latte")));
+
+        List<Coffee> found = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        store.findAllById(List.of("2", "x", "1"), found, missing);
+
+        assertThat(found).extracting(Coffee::getId).containsExactly("2", "1");
+        assertThat(missing).containsExactly("x");
+    }
+
+    @Test
+    void renameAllSkipsUnknownIds()
+    {
+        store.save(new Coffee("1", "Espresso"));
+
+        assertThat(store.renameAll(List.of(new Coffee("1", "Ristretto"), new Coffee("2", "Latte")))).isEqualTo(1);
+        assertThat(store.findById("2")).isEmpty();
+        assertThat(store.findByName("Espresso")).isEmpty();
+        assertThat(store.findByName("Ristretto")).isPresent();
+    }
+
+    @Test
+    void readersNeverSeeAVersionAheadOfTheData() throws Exception
+    {
+        // 只有一個寫入者不斷更新同一個咖啡，第 i 次寫入後版本號是 start + i、名稱是 i。
+        // 讀取端先取版本號再讀資料：讀到的名稱不可以比版本號舊，否則舊資料會以新的 ETag 送出
+        int writes = 200_000;
+        store.save(new Coffee("1", "0"));
+        long start = store.version();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> violation = new AtomicReference<>();
+
+        ExecutorService readers = Executors.newFixedThreadPool(2);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int r = 0; r < 2; r++)
+        {
+            futures.add(readers.submit(() ->
+            {
+                while (running.get() && violation.get() == null)
+                {
+                    long version = store.version();
+                    long name = Long.parseLong(store.findById("1").orElseThrow().getName());
+                    if (name < version - start)
+                    {
+                        violation.set("version " + version + " but name " + name);
+                    }
+                }
+            }));
+        }
+
+        for (int i = 1; i <= writes && violation.get() == null; i++)
+        {
+            store.save(new Coffee("1", Long.toString(i)));
+        }
+        running.set(false);
+        for (Future<?> future : futures)
+        {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        readers.shutdown();
+
+        assertThat(violation.get()).isNull();
+    }
+}
@@ -0,0 +1,314 @@
+package org.example.demo.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.example.demo.model.Coffee;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * MappedCoffeeLog 的復原：寫到一半的結尾捨棄，換檔和快照之後仍然完整復原；
+ * 接不上的日誌或損壞的快照讓啟動失敗，不刪除任何檔案。
+ * 「當掉」是直接丟下日誌物件不呼叫 destroy()：映射的內容已經在頁面快取裡，和程序當掉時相同，也不會建立關閉時的快照。
+ */
+public class MappedCoffeeLogTests
+{
+    // 每筆記錄約 45 個位元組，一個日誌檔放得下 2 筆
+    private static final DataSize SMALL_SEGMENT = DataSize.ofBytes(128);
+    private static final Duration FSYNC_INTERVAL = Duration.ofMillis(100);
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    void tornTailIsDiscardedAndOverwritten() throws Exception
+    {
+        Journal first = open(DataSize.ofMegabytes(1), MappedCoffeeLog.FsyncPolicy.ALWAYS);
+        for (int i = 0; i < 3; i++)
+        {
+            first.store().save(coffee(i));
+        }
+
+        // 最後一筆記錄的內容損壞，CRC 不符
+        Path segment = files("journal-").get(0);
+        List<Integer> records = records(segment);
+        corrupt(segment, records.get(2) + 12);
+
+        Journal second = open(DataSize.ofMegabytes(1), MappedCoffeeLog.FsyncPolicy.ALWAYS);
+        assertThat(second.store().findAll()).usingRecursiveFieldByFieldElementComparator().containsExactly(coffee(0), coffee(1));
+        // 殘留的位元組已經清成 0，新的記錄不會和它們接成看似有效的記錄
+        byte[] bytes = Files.readAllBytes(segment);
+        assertThat(Arrays.copyOfRange(bytes, records.get(2), bytes.length)).containsOnly(0);
+
+        second.store().save(coffee(9));
+        Journal third = open(DataSize.ofMegabytes(1), MappedCoffeeLog.FsyncPolicy.ALWAYS);
+        assertThat(third.store().findAll()).usingRecursiveFieldByFieldElementComparator().containsExactly(coffee(0), coffee(1), coffee(9));
+    }
+
+    @Test
+    void recoversAcrossSegmentRolls() throws Exception
+    {
+        Journal first = open(SMALL_SEGMENT, MappedCoffeeLog.FsyncPolicy.ALWAYS);
+        List<Coffee> written = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            written.add(coffee(i));
+            first.store().save(coffee(i));
+        }
+        first.store().deleteById(coffee(4).getId());
+        written.remove(4);
+
+        assertThat(files("journal-")).hasSizeGreaterThan(3);
+        Journal second = open(SMALL_SEGMENT, MappedCoffeeLog.FsyncPolicy.ALWAYS);
+        assertThat(second.store().findAll()).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(written);
+    }
+
+    @Test
+    void corruptionBeforeTheLastSegmentFailsStartupAndKeepsTheFiles() throws Exception
+    {
+        Journal first = open(SMALL_SEGMENT, MappedCoffeeLog.FsyncPolicy.ALWAYS);
+        for (int i = 0; i < 10; i++)
+        {
+            first.store().save(coffee(i));
+        }
+        List<Path> segments = files("journal-");
+        corrupt(segments.get(0), records(segments.get(0)).get(1) + 12);
+
+        assertThatThrownBy(() -> open(SMALL_SEGMENT, MappedCoffeeLog.FsyncPolicy.ALWAYS))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(segments.get(0).getFileName().toString());
+        assertThat(files("journal-")).isEqualTo(segments);
+    }
+
+    @Test
+    void corruptNewestSnapshotFallsBackToTheOlderOneAfterPrune() throws Exception
+    {
+        // 每次關閉都建立快照；第三個快照之後只保留最近兩個，較舊快照已經包含的日誌檔被刪除
+        List<Coffee> written = new ArrayList<>();
+        for (int round = 0; round < 3; round++)
+        {
+            Journal journal = open(SMALL_SEGMENT, MappedCoffeeLog.FsyncPolicy.ALWAYS);
+            for (int i = 0; i < 7; i++)
+            {
+                Coffee coffee = coffee(round * 7 + i);
+                written.add(coffee);
+                journal.store().save(coffee);
+            }
+            journal.log().destroy();
+        }
+        List<Path> snapshots = files("snapshot-");
+        assertThat(snapshots).hasSize(2);
+        assertThat(files("journal-").get(0).getFileName().toString()).isNotEqualTo("journal-00000000000000000001.log");
+
+        corrupt(snapshots.get(1), 20);
+        Journal recovered = open(SMALL_SEGMENT, MappedCoffeeLog.FsyncPolicy.ALWAYS);
+        assertThat(recovered.store().findAll()).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(written);
+    }
+
+    @Test
+    void allSnapshotsCorruptAndJournalPrunedFailsStartup() throws Exception
+    {
+        for (int round = 0; round < 3; round++)
+        {
+            Journal journal = open(SMALL_SEGMENT, MappedCoffeeLog.FsyncPolicy.ALWAYS);
+            for (int i = 0; i < 7; i++)
+            {
+                journal.store().save(coffee(round * 7 + i));
+            }
+            journal.log().destroy();
+        }
+        List<Path> snapshots = files("snapshot-");
+        List<Path> segments = files("journal-");
+        snapshots.forEach(path -> corrupt(path, 20));
+
+        // 不可以從序號 0 開始、把接不上的日誌當成垃圾刪掉
+        assertThatThrownBy(() -> open(SMALL_SEGMENT, MappedCoffeeLog.FsyncPolicy.ALWAYS))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(files("journal-")).isEqualTo(segments);
+        assertThat(files("snapshot-")).isEqualTo(snapshots);
+    }
+
+    @Test
+    void fsyncAlwaysSharesFsyncsBetweenConcurrentWriters() throws Exception
+    {
+        int threads = 16;
+        int writesPerThread = 50;
+        Journal journal = open(DataSize.ofMegabytes(1), MappedCoffeeLog.FsyncPolicy.ALWAYS);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++)
+            {
+                int thread = t;
+                futures.add(executor.submit(() ->
+                {
+                    for (int i = 0; i < writesPerThread; i++)
+                    {
+                        journal.store().save(coffee(thread * writesPerThread + i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        // 每筆記錄都恰好算進一次 fsync；同時等待的寫入共用 fsync，所以 fsync 次數比寫入少
+        int writes = threads * writesPerThread;
+        assertThat(journal.registry().summary("coffee.journal.group.size").totalAmount()).isEqualTo(writes);
+        assertThat(journal.registry().timer("coffee.journal.fsync").count()).isLessThan(writes);
+
+        // save() 返回之前就已經寫到磁碟，當掉之後全部都在
+        Journal recovered = open(DataSize.ofMegabytes(1), MappedCoffeeLog.FsyncPolicy.ALWAYS);
+        assertThat(recovered.store().size()).isEqualTo(writes);
+    }
+
+
+    @Test
+    void intervalFsyncsOncePerIntervalNotOncePerWrite() throws Exception
+    {
+        Journal journal = open(DataSize.ofMegabytes(1), MappedCoffeeLog.FsyncPolicy.INTERVAL);
+        long start = System.nanoTime();
+        int writes = 100;
+        for (int i = 0; i < writes; i++)
+        {
+            journal.store().save(coffee(i));        // 不等待 fsync
+            Thread.sleep(5);
+        }
+
+        // 寫入分散在 500 ms 以上；每筆都叫醒 fsync 執行緒的話約 100 次，每隔 100 ms 一次的話不超過經過的間隔數
+        while (journal.registry().summary("coffee.journal.group.size").totalAmount() < writes
+                && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5))
+        {
+            Thread.sleep(10);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertThat(journal.registry().summary("coffee.journal.group.size").totalAmount()).isEqualTo(writes);
+        assertThat(journal.registry().timer("coffee.journal.fsync").count()).isLessThanOrEqualTo(elapsed / FSYNC_INTERVAL.toMillis() + 1);
+
+        Journal recovered = open(DataSize.ofMegabytes(1), MappedCoffeeLog.FsyncPolicy.INTERVAL);
+        assertThat(recovered.store().size()).isEqualTo(writes);
+    }
+
+    @Test
+    void neverLeavesFsyncToTheOperatingSystem() throws Exception
+    {
+        Journal journal = open(SMALL_SEGMENT, MappedCoffeeLog.FsyncPolicy.NEVER);
+        for (int i = 0; i < 10; i++)
+        {
+            journal.store().save(coffee(i));
+        }
+
+        assertThat(journal.registry().timer("coffee.journal.fsync").count()).isZero();
+        // 頁面快取還在，程序當掉不會遺失資料
+        Journal recovered = open(SMALL_SEGMENT, MappedCoffeeLog.FsyncPolicy.NEVER);
+        assertThat(recovered.store().size()).isEqualTo(10);
+    }
+
+    @Test
+    void failedSnapshotIsRetriedWithoutNewWrites() throws Exception
+    {
+        Journal journal = open(SMALL_SEGMENT, MappedCoffeeLog.FsyncPolicy.ALWAYS);
+        for (int i = 0; i < 5; i++)
+        {
+            journal.store().save(coffee(i));
+        }
+
+        // 暫存檔的位置是一個非空的目錄，關閉時建立快照失敗，清除暫存檔也刪不掉它
+        Path temporary = Files.createDirectory(dir.resolve("snapshot-next.snap.tmp"));
+        Path blocker = Files.createFile(temporary.resolve("blocker"));
+        Path snapshot = dir.resolve(String.format("snapshot-%020d.snap", 5));
+        journal.log().destroy();
+        assertThat(snapshot).doesNotExist();
+
+        // 沒有新的寫入，下一次嘗試仍然建立快照
+        Files.delete(blocker);
+        Files.delete(temporary);
+        journal.log().destroy();
+        assertThat(snapshot).exists();
+    }
+
+    private record Journal(MappedCoffeeLog log, CoffeeStore store, SimpleMeterRegistry registry)
+    {
+    }
+
+    // 和 Spring 的啟動順序相同：建立日誌和存儲，再由日誌復原存儲
+    private Journal open(DataSize segmentSize, MappedCoffeeLog.FsyncPolicy fsync)
+    {
+        DefaultListableBeanFactory beans = new DefaultListableBeanFactory();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MappedCoffeeLog log = new MappedCoffeeLog(dir.toString(), segmentSize, fsync, FSYNC_INTERVAL,
+                1_000_000, Duration.ofHours(1), beans.getBeanProvider(CoffeeStore.class), registry);
+        CoffeeStore store = new HeapCoffeeStore(CoffeeChangeListener.NONE, log);
+        beans.registerSingleton("store", store);
+        log.afterSingletonsInstantiated();
+        return new Journal(log, store, registry);
+    }
+
+    private static Coffee coffee(int i)
+    {
+        return new Coffee(String.format("coffee-%04d", i), "Coffee " + i);
+    }
+
+    private List<Path> files(String prefix) throws IOException
+    {
+        try (Stream<Path> files = Files.list(dir))
+        {
+            return files.filter(p -> p.getFileName().toString().startsWith(prefix)).sorted().toList();
+        }
+    }
+
+    // 日誌檔裡每筆記錄的起始位置
+    private static List<Integer> records(Path segment) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        List<Integer> positions = new ArrayList<>();
+        int position = 0;
+        while (position + 8 <= buffer.limit() && buffer.getInt(position) > 0)
+        {
+            positions.add(position);
+            position += 8 + buffer.getInt(position);
+        }
+        return positions;
+    }
+
+    private static void corrupt(Path path, int position)
+    {
+        try
+        {
+            byte[] bytes = Files.readAllBytes(path);
+            bytes[position] ^= 0x5a;
+            Files.write(path, bytes);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+}
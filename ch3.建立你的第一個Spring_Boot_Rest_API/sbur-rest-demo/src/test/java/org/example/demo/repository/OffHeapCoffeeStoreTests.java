@@ -0,0 +1,287 @@
+package org.example.demo.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.example.demo.model.Coffee;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * OffHeapCoffeeStore 的槽位表、位元組區和兩個開放定址的索引：刪除時的往前搬移、迭代中的整理和跨緩衝區的名稱；
+ * 最後以同一串隨機操作比對 HeapCoffeeStore，兩個引擎對外的行為必須相同。
+ */
+public class OffHeapCoffeeStoreTests
+{
+    // OffHeapCoffeeStore.COMPACT_MIN_SLOTS：刪除的槽位達到這個數量而且多於存活的槽位時整理
+    private static final int COMPACT_MIN_SLOTS = 4096;
+    // OffHeapCoffeeStore.ITERATOR_BATCH：迭代器每次在讀取鎖內複製這麼多個咖啡，已經複製的不受之後的刪除影響
+    private static final int ITERATOR_BATCH = 256;
+
+    private final CoffeeStore store = new OffHeapCoffeeStore();
+
+    @Test
+    void uuidAndTextIdsAreBothIndexed()
+    {
+        String uuid = UUID.randomUUID().toString();
+        store.save(new Coffee(uuid, "Espresso"));
+        store.save(new Coffee("house-1", "Latte"));
+        store.save(new Coffee("咖啡-2", "Mocha"));
+
+        assertThat(store.findById(uuid)).map(Coffee::getName).contains("Espresso");
+        assertThat(store.findById("house-1")).map(Coffee::getName).contains("Latte");
+        assertThat(store.findById("咖啡-2")).map(Coffee::getName).contains("Mocha");
+        assertThat(store.findById("house-2")).isEmpty();
+
+        List<Coffee> found = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        store.findAllById(List.of("咖啡-2", UUID.randomUUID().toString(), uuid), found, missing);
+        assertThat(found).extracting(Coffee::getId).containsExactly("咖啡-2", uuid);
+        assertThat(missing).hasSize(1);
+
+        assertThat(store.save(new Coffee("house-1", "Flat White"))).isFalse();
+        assertThat(store.deleteById(uuid)).isTrue();
+        assertThat(store.findAll()).extracting(Coffee::getId, Coffee::getName)
+                .containsExactly(tuple("house-1", "Flat White"), tuple("咖啡-2", "Mocha"));
+    }
+
+    @Test
+    void duplicateNamesReturnTheEarliestAndFollowRenamesAndDeletes()
+    {
+        // 同名的咖啡雜湊值相同，全部排在同一條探測序列上
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+        {
+            String id = (i % 2 == 0) ? UUID.randomUUID().toString() : "same-" + i;
+            ids.add(id);
+            store.save(new Coffee(id, "House Blend"));
+        }
+
+        List<String> order = new ArrayList<>(ids);
+        Collections.shuffle(order, new Random(42));
+        List<String> remaining = new ArrayList<>(ids);
+        for (String id : order.subList(0, 99))
+        {
+            if (id.hashCode() % 3 == 0)
+            {
+                store.save(new Coffee(id, "Decaf"));     // 改名也要從名稱索引移除
+            }
+            else
+            {
+                store.deleteById(id);
+            }
+            remaining.remove(id);
+            assertThat(store.findByName("House Blend")).map(Coffee::getId).contains(remaining.get(0));
+        }
+        store.deleteById(remaining.get(0));
+        assertThat(store.findByName("House Blend")).isEmpty();
+        assertThat(store.findByName("Decaf")).isPresent();
+    }
+
+    @Test
+    void deleteShiftsProbeChainsBack()
+    {
+        // 索引從 2048 格開始，多次加倍、碰撞也多；刪除一半之後其餘的都要找得到，刪除的都找不到
+        int count = 20_000;
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            String id = (i % 3 == 0) ? "id-" + i : UUID.randomUUID().toString();
+            ids.add(id);
+            store.save(new Coffee(id, "Name " + (i % 50)));
+        }
+
+        Random random = new Random(7);
+        List<String> deleted = new ArrayList<>();
+        List<String> kept = new ArrayList<>();
+        for (String id : ids)
+        {
+            (random.nextBoolean() ? deleted : kept).add(id);
+        }
+        // 刪除的不多於存活的，不會整理，只靠往前搬的格子維持探測序列
+        if (deleted.size() > kept.size())
+        {
+            kept.addAll(deleted.subList(kept.size(), deleted.size()));
+            deleted = deleted.subList(0, count - kept.size());
+        }
+        assertThat(store.deleteAllById(deleted)).isEqualTo(deleted.size());
+
+        for (String id : kept)
+        {
+            assertThat(store.findById(id)).as(id).isPresent();
+        }
+        for (String id : deleted)
+        {
+            assertThat(store.findById(id)).as(id).isEmpty();
+        }
+        assertThat(store.size()).isEqualTo(count - deleted.size());
+    }
+
+    @Test
+    void compactionDuringIterationReturnsEachSurvivorOnceInOrder()
+    {
+        int count = COMPACT_MIN_SLOTS * 3;
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            ids.add("c-" + i);
+            store.save(new Coffee("c-" + i, "Coffee " + i));
+        }
+
+        Iterator<Coffee> iterator = store.findAll().iterator();
+        List<String> seen = new ArrayList<>();
+        int cursor = ITERATOR_BATCH * 4;
+        for (int i = 0; i < cursor; i++)
+        {
+            seen.add(iterator.next().getId());
+        }
+
+        // 刪除前半段裡還沒讀到的和後半段的一部分，刪除的槽位多於存活的槽位，觸發整理
+        List<String> deleted = new ArrayList<>();
+        for (int i = cursor; i < count; i++)
+        {
+            if (i < count * 2 / 3 || i % 2 == 0)
+            {
+                deleted.add(ids.get(i));
+            }
+        }
+        store.deleteAllById(deleted);
+        store.save(new Coffee("c-new", "After compaction"));
+
+        iterator.forEachRemaining(coffee -> seen.add(coffee.getId()));
+
+        List<String> expected = new ArrayList<>(ids);
+        expected.removeAll(deleted);
+        expected.add("c-new");
+        assertThat(seen).containsExactlyElementsOf(expected);
+        assertThat(store.findAll()).extracting(Coffee::getId).containsExactlyElementsOf(expected);
+        for (String id : expected)
+        {
+            assertThat(store.findById(id)).as(id).isPresent();
+        }
+    }
+
+    @Test
+    void namesSpanArenaChunksAndSurviveCompaction()
+    {
+        // 位元組區每 16 MB 一個緩衝區：100 KB 的名稱放 400 個是三個緩衝區，另外一個比緩衝區還大
+        String filler = "x".repeat(100 * 1024);
+        for (int i = 0; i < 400; i++)
+        {
+            store.save(new Coffee("big-" + i, i + filler));
+        }
+        String huge = "h".repeat(17 << 20);
+        store.save(new Coffee("huge", huge));
+        store.save(new Coffee("small", "Espresso"));
+
+        for (int i = 0; i < 400; i += 37)
+        {
+            assertThat(store.findById("big-" + i)).map(Coffee::getName).contains(i + filler);
+            assertThat(store.findByName(i + filler)).map(Coffee::getId).contains("big-" + i);
+        }
+        assertThat(store.findByName(huge)).map(Coffee::getId).contains("huge");
+
+        // 反覆改名讓舊名稱佔一半以上，整理位元組區之後名稱和 id 仍然正確
+        for (int i = 0; i < 400; i++)
+        {
+            store.save(new Coffee("big-" + i, "renamed " + i));
+        }
+        for (int i = 0; i < 400; i += 37)
+        {
+            assertThat(store.findById("big-" + i)).map(Coffee::getName).contains("renamed " + i);
+            assertThat(store.findByName(i + filler)).isEmpty();
+        }
+        assertThat(store.findById("huge")).map(Coffee::getName).contains(huge);
+        assertThat(store.findByName("Espresso")).map(Coffee::getId).contains("small");
+    }
+
+    @Test
+    void behavesLikeHeapCoffeeStore() throws IOException
+    {
+        CoffeeStore heap = new HeapCoffeeStore();
+        Random random = new Random(2024);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 300; i++)
+        {
+            ids.add((i % 2 == 0) ? UUID.randomUUID().toString() : "id-" + i);
+        }
+
+        for (int step = 0; step < 30_000; step++)
+        {
+            String id = ids.get(random.nextInt(ids.size()));
+            String name = "Name " + random.nextInt(40);
+            switch (random.nextInt(10))
+            {
+                case 0, 1, 2, 3 -> assertThat(store.save(new Coffee(id, name))).isEqualTo(heap.save(new Coffee(id, name)));
+                case 4, 5, 6 -> assertThat(store.deleteById(id)).isEqualTo(heap.deleteById(id));
+                case 7 ->
+                {
+                    List<Coffee> renames = List.of(new Coffee(id, name), new Coffee(ids.get(random.nextInt(ids.size())), name));
+                    assertThat(store.renameAll(renames)).isEqualTo(heap.renameAll(renames));
+                }
+                case 8 ->
+                {
+                    List<String> batch = ids.subList(random.nextInt(290), 300);
+                    assertThat(store.deleteAllById(batch)).isEqualTo(heap.deleteAllById(batch));
+                }
+                default ->
+                {
+                    assertThat(store.findByName(name).map(Coffee::getId)).isEqualTo(heap.findByName(name).map(Coffee::getId));
+                    assertThat(store.findVersionedById(id).map(CoffeeStore.VersionedCoffee::version))
+                            .isEqualTo(heap.findVersionedById(id).map(CoffeeStore.VersionedCoffee::version));
+                }
+            }
+        }
+
+        assertThat(store.version()).isEqualTo(heap.version());
+        assertThat(store.size()).isEqualTo(heap.size());
+        assertThat(store.findAll()).extracting(Coffee::getId, Coffee::getName)
+                .containsExactlyElementsOf(heap.findAll().stream().map(c -> tuple(c.getId(), c.getName())).toList());
+        assertThat(snapshot(store)).isEqualTo(snapshot(heap));
+    }
+
+    @Test
+    void copyAllStreamsEveryCoffeeAfterTheCut() throws IOException
+    {
+        store.save(new Coffee("1", "Espresso"));
+        store.save(new Coffee("2", "Latte"));
+        store.deleteById("1");
+        store.save(new Coffee("3", "Mocha"));
+
+        assertThat(snapshot(store)).containsExactly("count=2", "2=Latte", "3=Mocha");
+    }
+
+
+    // copyAll() 交給寫入器的內容：先是 begin() 的數量，再依序是每個咖啡
+    private static List<String> snapshot(CoffeeStore store) throws IOException
+    {
+        List<String> rows = new ArrayList<>();
+        store.copyAll(new CoffeeStore.SnapshotWriter()
+        {
+            @Override
+            public void begin(int count)
+            {
+                rows.add("count=" + count);
+            }
+
+            @Override
+            public void write(Coffee coffee)
+            {
+                rows.add(coffee.getId() + "=" + coffee.getName());
+            }
+        });
+        return rows;
+    }
+
+    private static org.assertj.core.groups.Tuple tuple(Object... values)
+    {
+        return org.assertj.core.groups.Tuple.tuple(values);
+    }
+}
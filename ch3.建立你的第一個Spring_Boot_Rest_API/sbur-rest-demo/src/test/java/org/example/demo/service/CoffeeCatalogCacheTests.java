@@ -0,0 +1,135 @@
+package org.example.demo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.example.demo.model.Coffee;
+import org.example.demo.repository.HeapCoffeeStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * CoffeeCatalogCache 以存儲的版本號決定是否重建，gzip 和 JSON 各有自己的 ETag；
+ * 太大的列表和建立中的版本返回空，由控制器串流，不讓請求等待或重複序列化。
+ */
+public class CoffeeCatalogCacheTests
+{
+    private final CountingStore store = new CountingStore();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void sameVersionReturnsSameSnapshot() throws Exception
+    {
+        CoffeeCatalogCache cache = new CoffeeCatalogCache(store, objectMapper, Integer.MAX_VALUE);
+        store.save(new Coffee("1", "Espresso"));
+
+        CoffeeCatalogCache.Snapshot first = cache.get().orElseThrow();
+        assertThat(cache.get()).containsSame(first);
+        assertThat(store.reads.get()).isEqualTo(1);
+        assertThat(first.gzipETag()).isNotEqualTo(first.eTag());
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(first.gzip())))
+        {
+            assertThat(gzip.readAllBytes()).isEqualTo(first.json());
+        }
+    }
+
+    @Test
+    void writeRebuildsWithNewETag()
+    {
+        CoffeeCatalogCache cache = new CoffeeCatalogCache(store, objectMapper, Integer.MAX_VALUE);
+        store.save(new Coffee("1", "Espresso"));
+        CoffeeCatalogCache.Snapshot before = cache.get().orElseThrow();
+
+        store.save(new Coffee("1", "Ristretto"));
+        CoffeeCatalogCache.Snapshot after = cache.get().orElseThrow();
+
+        assertThat(after.eTag()).isNotEqualTo(before.eTag()).isEqualTo(cache.eTag(store.version()));
+        assertThat(new String(after.json())).isEqualTo("[{\"id\":\"1\",\"name\":\"Ristretto\"}]");
+    }
+
+    @Test
+    void oversizedCatalogIsNotRetriedUntilItShrinks()
+    {
+        CoffeeCatalogCache cache = new CoffeeCatalogCache(store, objectMapper, 8);
+        store.save(new Coffee("1", "Espresso"));
+
+        assertThat(cache.get()).isEmpty();
+        // 咖啡數量沒有減少，之後的版本不再序列化
+        store.save(new Coffee("1", "Ristretto"));
+        store.save(new Coffee("2", "Mocha"));
+        assertThat(cache.get()).isEmpty();
+        assertThat(store.reads.get()).isEqualTo(1);
+
+        store.deleteById("1");
+        store.deleteById("2");
+        assertThat(cache.get()).map(snapshot -> new String(snapshot.json())).contains("[]");
+    }
+
+    @Test
+    void requestsDuringABuildDoNotWait() throws Exception
+    {
+        CoffeeCatalogCache cache = new CoffeeCatalogCache(store, objectMapper, Integer.MAX_VALUE);
+        store.save(new Coffee("1", "Espresso"));
+        store.block = new CountDownLatch(1);
+
+        CompletableFuture<Optional<CoffeeCatalogCache.Snapshot>> builder = CompletableFuture.supplyAsync(cache::get);
+        assertThat(store.reading.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // 同一個版本正在建立：不等待也不再序列化一次
+        assertThat(cache.get()).isEmpty();
+        assertThat(store.reads.get()).isEqualTo(1);
+
+        store.block.countDown();
+        CoffeeCatalogCache.Snapshot built = builder.get(5, TimeUnit.SECONDS).orElseThrow();
+        assertThat(cache.get()).containsSame(built);
+    }
+
+    @Test
+    void acceptsGzipHonoursQValues()
+    {
+        assertThat(CoffeeCatalogCache.acceptsGzip("gzip, deflate, br")).isTrue();
+        assertThat(CoffeeCatalogCache.acceptsGzip("*")).isTrue();
+        assertThat(CoffeeCatalogCache.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(CoffeeCatalogCache.acceptsGzip("gzip;q=0.000")).isFalse();
+        assertThat(CoffeeCatalogCache.acceptsGzip("gzip;q=0.5")).isTrue();
+        assertThat(CoffeeCatalogCache.acceptsGzip("br")).isFalse();
+        assertThat(CoffeeCatalogCache.acceptsGzip(null)).isFalse();
+    }
+
+
+    // 記錄整份列表被讀取的次數；設定 block 時讀取會停住，直到測試放行
+    private static final class CountingStore extends HeapCoffeeStore
+    {
+        final AtomicInteger reads = new AtomicInteger();
+        final CountDownLatch reading = new CountDownLatch(1);
+        volatile CountDownLatch block;
+
+        @Override
+        public Collection<Coffee> findAll()
+        {
+            reads.incrementAndGet();
+            reading.countDown();
+            try
+            {
+                if (block != null)
+                {
+                    block.await(5, TimeUnit.SECONDS);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return super.findAll();
+        }
+    }
+}
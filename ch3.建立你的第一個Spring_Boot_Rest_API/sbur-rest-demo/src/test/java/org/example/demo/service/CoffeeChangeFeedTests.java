@@ -0,0 +1,118 @@
+package org.example.demo.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.example.demo.controller.CoffeeChangesController;
+import org.example.demo.model.Coffee;
+import org.example.demo.model.CoffeeChange;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/**
+ * CoffeeChangeFeed 的續傳、合併和溢出。
+ * 透過 CoffeeChangesController 訂閱，事件由傳送執行緒非同步寫到 MockHttpServletResponse，所以輪詢回應內容。
+ */
+public class CoffeeChangeFeedTests
+{
+    private static final Pattern EVENT = Pattern.compile("id:(\\S+)\\nevent:(\\S+)\\ndata:(.*)\\n");
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CoffeeChangeFeed feed = new CoffeeChangeFeed(4, 3, 8, Duration.ofMinutes(1), registry);
+    private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new CoffeeChangesController(feed)).build();
+
+    @AfterEach
+    void shutdown()
+    {
+        feed.shutdown();
+    }
+
+    @Test
+    void subscriberReceivesReadyThenChanges() throws Exception
+    {
+        MockHttpServletResponse response = subscribe(null);
+        feed.onChange(CoffeeChange.Type.CREATED, new Coffee("1", "Espresso"));
+        feed.onChange(CoffeeChange.Type.DELETED, new Coffee("2", "Latte"));
+
+        List<String[]> events = awaitEvents(response, 3);
+        assertThat(events.get(0)[1]).isEqualTo("ready");
+        assertThat(events.get(1)[2]).isEqualTo("{\"seq\":1,\"type\":\"created\",\"id\":\"1\",\"name\":\"Espresso\"}");
+        assertThat(events.get(2)[2]).isEqualTo("{\"seq\":2,\"type\":\"deleted\",\"id\":\"2\"}");
+    }
+
+    @Test
+    void lastEventIdResumesFromHistory() throws Exception
+    {
+        MockHttpServletResponse first = subscribe(null);
+        feed.onChange(CoffeeChange.Type.CREATED, new Coffee("1", "Espresso"));
+        String lastEventId = awaitEvents(first, 2).get(1)[0];
+
+        feed.onChange(CoffeeChange.Type.CREATED, new Coffee("2", "Latte"));
+        feed.onChange(CoffeeChange.Type.UPDATED, new Coffee("1", "Ristretto"));
+
+        List<String[]> resumed = awaitEvents(subscribe(lastEventId), 3);
+        assertThat(resumed.get(0)[1]).isEqualTo("ready");
+        assertThat(resumed.get(1)[2]).contains("\"seq\":2");
+        assertThat(resumed.get(2)[2]).contains("\"seq\":3", "Ristretto");
+    }
+
+    @Test
+    void unknownOrExpiredLastEventIdGetsReset() throws Exception
+    {
+        assertThat(awaitEvents(subscribe("another-boot-7"), 1).get(0)[1]).isEqualTo("reset");
+
+        MockHttpServletResponse first = subscribe(null);
+        feed.onChange(CoffeeChange.Type.CREATED, new Coffee("1", "Espresso"));
+        String lastEventId = awaitEvents(first, 2).get(1)[0];
+        for (int i = 0; i < 5; i++)      // 環狀緩衝區只保留 4 筆
+        {
+            feed.onChange(CoffeeChange.Type.UPDATED, new Coffee("1", "Espresso " + i));
+        }
+
+        assertThat(awaitEvents(subscribe(lastEventId), 1).get(0)[1]).isEqualTo("reset");
+        assertThat(registry.get("coffee.changes.resets").counter().count()).isEqualTo(2);
+    }
+
+
+    private MockHttpServletResponse subscribe(String lastEventId) throws Exception
+    {
+        var builder = get("/coffees/changes");
+        if (lastEventId != null)
+        {
+            builder.header("Last-Event-ID", lastEventId);
+        }
+        return mockMvc.perform(builder).andExpect(request().asyncStarted()).andReturn().getResponse();
+    }
+
+    private static List<String[]> awaitEvents(MockHttpServletResponse response, int count) throws Exception
+    {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (true)
+        {
+            List<String[]> events = new ArrayList<>();
+            Matcher matcher = EVENT.matcher(response.getContentAsString());
+            while (matcher.find())
+            {
+                events.add(new String[] {matcher.group(1), matcher.group(2), matcher.group(3)});
+            }
+            if (events.size() >= count || System.nanoTime() > deadline)
+            {
+                assertThat(events).hasSizeGreaterThanOrEqualTo(count);
+                return events;
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package org.example.demo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.example.demo.model.Coffee;
+import org.example.demo.model.CoffeeChange;
+import org.example.demo.model.SeedImportResult;
+import org.example.demo.model.SeedImportResult.SeedFile;
+import org.example.demo.repository.CoffeeChangeListener;
+import org.example.demo.repository.CoffeeStore;
+import org.example.demo.repository.CoffeeWriteAheadLog;
+import org.example.demo.repository.HeapCoffeeStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * CoffeeSeedImporter：多個檔案平行解析、每個檔案分段寫入，單一檔案的錯誤留在它自己的結果裡；
+ * 只有重複觸發匯入才是 ImportInProgressException，存儲或預寫日誌的錯誤不可以被當成它。
+ */
+public class CoffeeSeedImporterTests
+{
+    private static final int CHUNK_SIZE = 100;
+
+    private final CoffeeStreamReader reader = new CoffeeStreamReader(new ObjectMapper());
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    void importsFilesInParallelInChunks() throws Exception
+    {
+        ndjson("a.ndjson", "A", 250);
+        ndjson("b.ndjson", "B", 250);
+        Files.writeString(dir.resolve("c.json"), "[{\"id\":\"c-1\",\"name\":\"C\"},{\"name\":\" \"},42,{\"id\":\"c-2\",\"name\":\"C\"}]");
+        Files.writeString(dir.resolve("d.json"), "{\"id\":\"d-1\",\"name\":");
+
+        // 兩個檔案同時寫入時才放行；依序匯入的話第一個檔案會等到逾時
+        CountDownLatch concurrentWriters = new CountDownLatch(2);
+        AtomicBoolean parallel = new AtomicBoolean();
+        CoffeeStore store = new HeapCoffeeStore()
+        {
+            @Override
+            public void saveAll(Iterable<Coffee> coffees)
+            {
+                concurrentWriters.countDown();
+                try
+                {
+                    if (concurrentWriters.await(5, TimeUnit.SECONDS))
+                    {
+                        parallel.set(true);
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                super.saveAll(coffees);
+            }
+        };
+
+        SeedImportResult result = importer(store, new PathMatchingResourcePatternResolver(), 4).importAll();
+
+        assertThat(parallel).isTrue();
+        assertThat(result.accepted()).isEqualTo(502);
+        assertThat(result.rejected()).isEqualTo(2);
+        assertThat(store.size()).isEqualTo(502);
+        // 依位置排序；250 筆以每段 100 筆寫入是 3 段
+        assertThat(result.files()).extracting(SeedFile::chunks).containsExactly(3L, 3L, 1L, 0L);
+        assertThat(result.files()).extracting(SeedFile::accepted).containsExactly(250L, 250L, 2L, 0L);
+        assertThat(result.files().get(3).error()).startsWith("JSON 格式錯誤");
+        assertThat(result.files().subList(0, 3)).extracting(SeedFile::error).containsOnlyNulls();
+    }
+
+    @Test
+    void failureMidFileReportsTheChunksAlreadyWritten() throws Exception
+    {
+        // 250 筆之後格式錯誤：前兩段 200 筆已經寫入，第三段還沒寫入就失敗
+        ndjson("a.ndjson", "A", 250);
+        Files.writeString(dir.resolve("a.ndjson"), Files.readString(dir.resolve("a.ndjson")) + "{\"id\":\"A-x\",\"name\":\n");
+        CoffeeStore store = new HeapCoffeeStore();
+
+        SeedImportResult result = importer(store, new PathMatchingResourcePatternResolver(), 1).importAll();
+
+        assertThat(store.size()).isEqualTo(200);
+        assertThat(result.accepted()).isEqualTo(200);
+        assertThat(result.files()).singleElement().satisfies(file ->
+        {
+            assertThat(file.accepted()).isEqualTo(200);
+            assertThat(file.chunks()).isEqualTo(2);
+            assertThat(file.error()).startsWith("JSON 格式錯誤");
+        });
+    }
+
+    @Test
+    void secondImportWhileRunningIsRejected() throws Exception
+    {
+        ndjson("a.ndjson", "A", 10);
+        CountDownLatch resolving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PathMatchingResourcePatternResolver blocking = new PathMatchingResourcePatternResolver()
+        {
+            @Override
+            public Resource[] getResources(String locationPattern) throws IOException
+            {
+                resolving.countDown();
+                try
+                {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getResources(locationPattern);
+            }
+        };
+        CoffeeSeedImporter importer = importer(new HeapCoffeeStore(), blocking, 1);
+
+        CompletableFuture<SeedImportResult> first = CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                return importer.importAll();
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        });
+        assertThat(resolving.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThatThrownBy(importer::importAll).isInstanceOf(CoffeeSeedImporter.ImportInProgressException.class);
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS).accepted()).isEqualTo(10);
+        // 前一個匯入結束之後可以再匯入
+        assertThat(importer.importAll().accepted()).isEqualTo(10);
+    }
+
+    @Test
+    void journalFailureIsReportedPerFileAndNotAsImportInProgress() throws Exception
+    {
+        ndjson("a.ndjson", "A", 10);
+        CoffeeWriteAheadLog failing = new CoffeeWriteAheadLog()
+        {
+            @Override
+            public void append(CoffeeChange.Type type, Coffee coffee)
+            {
+            }
+
+            @Override
+            public void sync()
+            {
+                throw new IllegalStateException("預寫日誌已經關閉");
+            }
+        };
+        CoffeeSeedImporter importer = importer(new HeapCoffeeStore(CoffeeChangeListener.NONE, failing), new PathMatchingResourcePatternResolver(), 1);
+
+        SeedImportResult result = importer.importAll();
+
+        assertThat(result.accepted()).isZero();
+        assertThat(result.files()).singleElement()
+                .extracting(SeedFile::error).asString().contains("預寫日誌已經關閉");
+    }
+
+
+    private CoffeeSeedImporter importer(CoffeeStore store, PathMatchingResourcePatternResolver resolver, int parallelism)
+    {
+        return new CoffeeSeedImporter(store, reader, resolver,
+                List.of(dir.toUri() + "*.ndjson", dir.toUri() + "*.json"), parallelism, CHUNK_SIZE);
+    }
+
+    private void ndjson(String file, String prefix, int count) throws IOException
+    {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++)
+        {
+            lines.append("{\"id\":\"").append(prefix).append('-').append(i).append("\",\"name\":\"").append(prefix).append("\"}\n");
+        }
+        Files.writeString(dir.resolve(file), lines);
+    }
+}
@@ -2,23 +2,40 @@ plugins {
     id("java")
     id("org.springframework.boot") version "3.5.3"
     id("io.spring.dependency-management") version "1.1.7"
+    // JMH 效能基準測試：src/jmh/java，執行 ./gradlew jmh
+    id("me.champeau.jmh") version "0.7.3"
 }
 
+// Spring AOT：建置時先算好 Bean 定義，以 -Dspring.aot.enabled=true 啟動時不必再掃描、解析設定類別
+// 外掛包含在 Spring Boot 的 Gradle 外掛裡，沒有獨立的外掛標記，所以用 apply 套用
+apply(plugin = "org.springframework.boot.aot")
+
 group = "org.example.demo"
 version = "1.0-SNAPSHOT"
 
+// 預設 Java 17；虛擬執行緒模式需要 Java 21：./gradlew bootRun -PjavaVersion=21 --args='--spring.profiles.active=virtual-threads'
+val javaVersion = providers.gradleProperty("javaVersion").orElse("17").get().toInt()
+
 java {
     toolchain {
-        languageVersion = JavaLanguageVersion.of(17)
+        languageVersion = JavaLanguageVersion.of(javaVersion)
     }
 }
 
+// 負載測試：src/loadTest/java，對執行中的服務量測吞吐量和延遲，不會在 build 時執行
+sourceSets {
+    create("loadTest")
+}
+
 repositories {
     mavenCentral()
 }
 
 dependencies {
     implementation("org.springframework.boot:spring-boot-starter-web")
+    // 指標：每個端點和存儲庫方法的延遲直方圖、處理中請求數、批次筆數分佈，由 /actuator/prometheus 提供抓取
+    implementation("org.springframework.boot:spring-boot-starter-actuator")
+    runtimeOnly("io.micrometer:micrometer-registry-prometheus")
     testImplementation("org.springframework.boot:spring-boot-starter-test")
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 
@@ -28,11 +45,132 @@ dependencies {
     implementation("org.springdoc:springdoc-openapi-starter-webmvc-ui:2.8.6")
 
     implementation("org.springframework.boot:spring-boot-starter-data-jpa")
+    implementation("org.flywaydb:flyway-core")
     runtimeOnly("com.h2database:h2")
+    implementation("org.springframework.boot:spring-boot-starter-cache")
+    implementation("com.github.ben-manes.caffeine:caffeine")
+    // SQL 診斷：diagnostics 設定檔以 datasource-proxy 包裝 DataSource，計算每個請求的 SQL 敘述數量
+    implementation("net.ttddyy:datasource-proxy:1.11.0")
+
+    // 二進位格式的內容協商：Accept / Content-Type 為 application/cbor、application/x-jackson-smile、application/x-protobuf
+    implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-cbor")
+    implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-smile")
+    implementation("com.google.protobuf:protobuf-java:4.31.1")
     compileOnly("org.projectlombok:lombok")
     annotationProcessor("org.projectlombok:lombok")
+
+    "loadTestImplementation"("org.hdrhistogram:HdrHistogram:2.2.2")
 }
 
 tasks.withType<Test> {
     useJUnitPlatform()
 }
+
+// 先啟動服務，再執行 ./gradlew loadTest；參數以 -PloadTest.args 傳入，例如
+// ./gradlew loadTest -PloadTest.args="--clients=200,1000,5000,10000 --duration=30"
+// 兩種模式各跑一次比較：預設的 Tomcat 執行緒池，以及 --spring.profiles.active=virtual-threads
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Runs the closed-loop load test against a running instance"
+    classpath = sourceSets["loadTest"].runtimeClasspath
+    mainClass = "org.example.demo.loadtest.CoffeeLoadTest"
+    args(providers.gradleProperty("loadTest.args").orElse("").get().split(" ").filter { it.isNotBlank() })
+}
+
+// 啟動加速：Spring AOT + JDK Class Data Sharing (CDS)
+// ./gradlew cdsArchive 把 bootJar 解開到 build/cds/application/，再做一次訓練執行，
+// 把啟動時載入的類別存成 build/cds/application.jsa。之後以下列指令啟動：
+// java -XX:SharedArchiveFile=build/cds/application.jsa -Dspring.aot.enabled=true -jar build/cds/application/sbur-rest-demo-1.0-SNAPSHOT.jar
+// 注意：AOT 模式下 @ConditionalOnProperty 和設定檔 (profile) 在建置時就決定了，
+// virtual-threads、diagnostics 這類設定檔要在 AOT 模式以外使用。
+val cdsDirectory = layout.buildDirectory.dir("cds")
+val cdsJava = javaToolchains.launcherFor(java.toolchain).map { it.executablePath.asFile.absolutePath }
+val cdsApplicationJar = cdsDirectory.map { it.file("application/${project.name}-${project.version}.jar").asFile.absolutePath }
+val cdsArchiveFile = cdsDirectory.map { it.file("application.jsa").asFile.absolutePath }
+
+// CDS 要求 classpath 是一個個獨立的 jar，不能是 bootJar 裡的巢狀 jar
+val cdsExtract = tasks.register<Exec>("cdsExtract") {
+    group = "build"
+    description = "Extracts the boot jar into build/cds/application for class data sharing"
+    dependsOn(tasks.bootJar)
+    inputs.file(tasks.bootJar.flatMap { it.archiveFile })
+    outputs.dir(cdsDirectory.map { it.dir("application") })
+    doFirst {
+        commandLine(cdsJava.get(), "-Djarmode=tools", "-jar", tasks.bootJar.get().archiveFile.get().asFile.absolutePath,
+            "extract", "--destination", cdsDirectory.get().dir("application").asFile.absolutePath, "--force")
+    }
+}
+
+// 訓練執行：以 AOT 模式啟動到 Context 重新整理完成就結束，JVM 結束時把載入過的類別寫進 CDS 檔案
+tasks.register<Exec>("cdsArchive") {
+    group = "build"
+    description = "Creates a Spring AOT + CDS archive for Application with a training run"
+    dependsOn(cdsExtract)
+    inputs.dir(cdsDirectory.map { it.dir("application") })
+    outputs.file(cdsArchiveFile)
+    doFirst {
+        commandLine(cdsJava.get(), "-XX:ArchiveClassesAtExit=${cdsArchiveFile.get()}",
+            "-Dspring.aot.enabled=true", "-Dspring.context.exit=onRefresh",
+            "-jar", cdsApplicationJar.get(), "--spring.datasource.url=jdbc:h2:mem:cds-training")
+    }
+}
+
+// 啟動時間比較：每種方式各啟動 -PstartupRuns 次（預設 3 次），取 Spring 回報的 "Started Application in ..."
+// ./gradlew startupComparison
+tasks.register("startupComparison") {
+    group = "verification"
+    description = "Compares startup time of the boot jar, the extracted jar, CDS and CDS + AOT"
+    dependsOn("cdsArchive")
+    doLast {
+        val runs = providers.gradleProperty("startupRuns").orElse("3").get().toInt()
+        val java = cdsJava.get()
+        val app = listOf("--server.port=0", "--spring.datasource.url=jdbc:h2:mem:startup")
+        val variants = linkedMapOf(
+            "bootJar" to listOf(java, "-jar", tasks.bootJar.get().archiveFile.get().asFile.absolutePath) + app,
+            "extracted" to listOf(java, "-jar", cdsApplicationJar.get()) + app,
+            "extracted + CDS" to listOf(java, "-XX:SharedArchiveFile=${cdsArchiveFile.get()}", "-jar", cdsApplicationJar.get()) + app,
+            "extracted + CDS + AOT" to listOf(java, "-XX:SharedArchiveFile=${cdsArchiveFile.get()}",
+                "-Dspring.aot.enabled=true", "-jar", cdsApplicationJar.get()) + app,
+        )
+        val started = Regex("Started Application in ([0-9.]+) seconds \\(process running for ([0-9.]+)\\)")
+
+        // 啟動應用程式，讀到啟動完成的日誌後就結束它，返回 [Spring 啟動秒數, JVM 啟動到現在的秒數]
+        fun startup(command: List<String>): List<Double> {
+            val process = ProcessBuilder(command).redirectErrorStream(true).start()
+            try {
+                process.inputStream.bufferedReader().useLines { lines ->
+                    for (line in lines) {
+                        started.find(line)?.let { match -> return match.groupValues.drop(1).map { it.toDouble() } }
+                    }
+                }
+                throw GradleException("Application did not start: ${command.joinToString(" ")}")
+            } finally {
+                process.destroy()
+                process.waitFor()
+            }
+        }
+
+        println(String.format("%-24s %12s %12s", "variant", "started (s)", "process (s)"))
+        for ((name, command) in variants) {
+            startup(command)      // 第一次只是暖機：讓作業系統的檔案快取穩定下來，不列入平均
+            val samples = (1..runs).map { startup(command) }
+            println(String.format("%-24s %12.3f %12.3f", name,
+                samples.map { it[0] }.average(), samples.map { it[1] }.average()))
+        }
+    }
+}
+
+// JMH 設定：結果以 JSON 輸出到 build/results/jmh/results.json，方便在版本之間比較、抓出效能退步
+jmh {
+    jmhVersion = "1.37"
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("results/jmh/results.json")
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    // 只跑部分基準或部分資料量時：./gradlew jmh -Pjmh.includes=CoffeeLookupBenchmark -Pjmh.size=1000,100000
+    providers.gradleProperty("jmh.includes").orNull?.let { includes = listOf(it) }
+    providers.gradleProperty("jmh.size").orNull?.let {
+        benchmarkParameters.put("size", objects.listProperty<String>().value(it.split(",")))
+    }
+}
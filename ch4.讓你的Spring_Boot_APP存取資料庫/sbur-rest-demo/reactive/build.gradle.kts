@@ -0,0 +1,51 @@
+// 第四章的非阻塞版本：WebFlux + R2DBC，路由和 RestApiDemoController 相同
+// 執行：./gradlew :reactive:bootRun（預設埠 8081，可以和阻塞版本同時啟動比較）
+plugins {
+    id("java")
+    id("org.springframework.boot")
+    id("io.spring.dependency-management")
+}
+
+group = "org.example.demo"
+version = "1.0-SNAPSHOT"
+
+val javaVersion = providers.gradleProperty("javaVersion").orElse("17").get().toInt()
+
+java {
+    toolchain {
+        languageVersion = JavaLanguageVersion.of(javaVersion)
+    }
+}
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    implementation("org.springframework.boot:spring-boot-starter-webflux")
+    implementation("org.springframework.boot:spring-boot-starter-data-r2dbc")
+    runtimeOnly("io.r2dbc:r2dbc-h2")
+
+    // Flyway 只支援 JDBC：啟動時用 JDBC 連到同一個 H2 資料庫執行遷移腳本，之後的存取都走 R2DBC
+    implementation("org.flywaydb:flyway-core")
+    implementation("org.springframework:spring-jdbc")
+    runtimeOnly("com.h2database:h2")
+
+    // https://mvnrepository.com/artifact/org.springdoc/springdoc-openapi-starter-webflux-ui
+    implementation("org.springdoc:springdoc-openapi-starter-webflux-ui:2.8.6")
+
+    testImplementation("org.springframework.boot:spring-boot-starter-test")
+    testImplementation("io.projectreactor:reactor-test")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+// 和阻塞版本共用同一套遷移腳本，兩個版本的資料表結構（包含 name_lower 索引）保持一致
+tasks.processResources {
+    from(rootProject.file("src/main/resources/db/migration")) {
+        into("db/migration")
+    }
+}
+
+tasks.withType<Test> {
+    useJUnitPlatform()
+}
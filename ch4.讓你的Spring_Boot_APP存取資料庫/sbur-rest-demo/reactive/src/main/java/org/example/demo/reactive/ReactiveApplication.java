@@ -0,0 +1,16 @@
+package org.example.demo.reactive;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 非阻塞版本：以 WebFlux 和 R2DBC 提供和 RestApiDemoController 相同的 API。
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
+public class ReactiveApplication
+{
+    public static void main(String[] args)
+    {
+        SpringApplication.run(ReactiveApplication.class, args);
+    }
+}
@@ -0,0 +1,37 @@
+package org.example.demo.reactive.controller;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 非阻塞版本的 DataLoader：啟動完成後寫入和阻塞版本相同的四種咖啡。
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+import org.example.demo.reactive.model.Coffee;
+import org.example.demo.reactive.repository.ReactiveCoffeeRepository;
+
+@Component
+public class DataLoader
+{
+    private final ReactiveCoffeeRepository coffeeRepository;
+
+    public DataLoader(ReactiveCoffeeRepository coffeeRepository)
+    {
+        this.coffeeRepository = coffeeRepository;
+    }
+
+    // R2DBC 不會等 Flyway 完成才建立連線，所以等應用程式啟動完成、資料表已經建立後再寫入。
+    // 這裡是 main 執行緒而不是 event loop，可以 block() 等待寫入完成。
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadData()
+    {
+        coffeeRepository.upsertAll(List.of(
+                new Coffee("Cafe Cereza"),
+                new Coffee("Cafe Ganador"),
+                new Coffee("Cafe Lareno"),
+                new Coffee("Cafe Tres Pontas")
+        )).block();
+    }
+}
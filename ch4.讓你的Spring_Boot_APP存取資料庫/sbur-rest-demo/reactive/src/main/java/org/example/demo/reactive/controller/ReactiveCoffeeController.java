@@ -0,0 +1,196 @@
+package org.example.demo.reactive.controller;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 非阻塞版本的 RestApiDemoController：路由相同，回傳 Mono/Flux，等待資料庫時不佔住執行緒。
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.example.demo.reactive.model.Coffee;
+import org.example.demo.reactive.repository.ReactiveCoffeeRepository;
+
+/**
+ * 非阻塞的咖啡 REST API 控制器
+ */
+@Tag(name = "Reactive Coffee API", description = "以 WebFlux 和 R2DBC 提供咖啡相關的 API") // Swagger 註解，用於生成 API 文檔
+@RestController
+@RequestMapping("/coffees")
+public class ReactiveCoffeeController
+{
+    private final ReactiveCoffeeRepository coffeeRepository;
+    private final int batchChunkSize;
+
+    /**
+     * 建構函數
+     * @param coffeeRepository 咖啡的 R2DBC 存取介面
+     * @param batchChunkSize 批次匯入時每個交易寫入的筆數
+     */
+    public ReactiveCoffeeController(ReactiveCoffeeRepository coffeeRepository,
+                                    @Value("${coffee.batch.chunk-size:1000}") int batchChunkSize)
+    {
+        this.coffeeRepository = coffeeRepository;
+        this.batchChunkSize = batchChunkSize;
+    }
+
+
+    /**
+     * 獲取所有咖啡的端點
+     * Accept: application/x-ndjson（或 *\/*）時逐筆串流，客戶端讀多快資料庫就送多快；
+     * Accept: application/json 時收集成一個 JSON 陣列
+     * @return 返回所有咖啡
+     */
+    @Operation(summary = "獲取所有咖啡", description = "以 NDJSON 串流返回所有咖啡，依客戶端讀取速度背壓") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {        // 定義可能的 HTTP 響應狀態碼和描述
+            @ApiResponse( responseCode = "200", description = "成功獲取所有咖啡", content = @Content(schema = @Schema(implementation = Coffee.class)))
+    })
+    @GetMapping(produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    Flux<Coffee> getCoffees()
+    {
+        return coffeeRepository.findAll();
+    }
+
+
+    /**
+     * 根據 ID 獲取特定咖啡的端點
+     * @param id 咖啡的唯一識別碼
+     * @return 找到時返回咖啡；否則返回 404
+     */
+    @Operation(summary = "根據 ID 獲取咖啡", description = "返回指定 ID 的咖啡") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "成功獲取咖啡", content = @Content(schema = @Schema(implementation = Coffee.class))),
+            @ApiResponse( responseCode = "404", description = "找不到指定的咖啡")
+    })
+    @GetMapping("/{id}")
+    Mono<ResponseEntity<Coffee>> getCoffeeById(
+            @Parameter(description = "咖啡的唯一識別碼", required = true)
+            @PathVariable String id)
+    {
+        return coffeeRepository.findById(id)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+
+    /**
+     * 根據名稱獲取特定咖啡的端點，不分大小寫
+     * @param name 咖啡的名稱
+     * @return 找到時返回第一個符合的咖啡；否則返回 404
+     */
+    @Operation(summary = "根據名稱獲取咖啡", description = "返回指定名稱的咖啡，不分大小寫") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "成功獲取咖啡", content = @Content(schema = @Schema(implementation = Coffee.class))),
+            @ApiResponse( responseCode = "404", description = "找不到指定的咖啡")
+    })
+    @GetMapping("/name/{name}")
+    Mono<ResponseEntity<Coffee>> getCoffeeByName(
+            @Parameter(description = "咖啡的名稱", example = "Cafe Cereza", required = true)
+            @PathVariable String name)
+    {
+        return coffeeRepository.findByNameIgnoreCase(name)
+                .next()
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+
+    /**
+     * 新增咖啡的端點
+     * @param coffee 要新增的咖啡
+     * @return 返回新增的咖啡
+     */
+    @Operation(summary = "新增咖啡", description = "將新的咖啡添加到資料庫中") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "成功新增咖啡", content = @Content(schema = @Schema(implementation = Coffee.class)))
+    })
+    @PostMapping()
+    Mono<Coffee> postCoffee(@RequestBody Coffee coffee)
+    {
+        return coffeeRepository.upsert(coffee.id(), coffee.name()).thenReturn(coffee);
+    }
+
+
+    /**
+     * 更新或新增咖啡的端點
+     * @param id 咖啡的唯一識別碼，以路徑上的為準
+     * @param coffee 咖啡的內容
+     * @return 已存在時返回 200，新增時返回 201
+     */
+    @Operation(summary = "更新或新增咖啡", description = "根據 ID 更新咖啡，找不到時新增") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "成功更新咖啡", content = @Content(schema = @Schema(implementation = Coffee.class))),
+            @ApiResponse( responseCode = "201", description = "成功新增咖啡", content = @Content(schema = @Schema(implementation = Coffee.class)))
+    })
+    @PutMapping("/{id}")
+    Mono<ResponseEntity<Coffee>> putCoffee(
+            @Parameter(description = "咖啡的唯一識別碼", required = true)
+            @PathVariable String id,
+            @RequestBody Coffee coffee)
+    {
+        Coffee stored = new Coffee(id, coffee.name());
+        return coffeeRepository.upsert(id, coffee.name())
+                .map(existed -> (existed > 0)
+                        ? new ResponseEntity<>(stored, HttpStatus.OK)
+                        : new ResponseEntity<>(stored, HttpStatus.CREATED));
+    }
+
+
+    /**
+     * 刪除咖啡的端點
+     * @param id 咖啡的唯一識別碼
+     * @return 完成時結束的 Mono
+     */
+    @Operation(summary = "刪除咖啡", description = "根據 ID 刪除咖啡") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "成功刪除咖啡")
+    })
+    @DeleteMapping("/{id}")
+    Mono<Void> deleteCoffee(
+            @Parameter(description = "咖啡的唯一識別碼", required = true)
+            @PathVariable String id)
+    {
+        return coffeeRepository.deleteById(id);
+    }
+
+
+    /**
+     * 批次新增咖啡的端點
+     * 請求本文可以是 JSON 陣列或 NDJSON，以 Flux 逐筆解析，不需要先把整個本文讀進記憶體；
+     * 每累積 chunk-size 筆就在一個交易裡寫入一次，寫完的咖啡隨即回傳
+     * @param coffees 要新增的咖啡串流
+     * @return 返回已經寫入的咖啡
+     */
+    @Operation(summary = "新增咖啡組合", description = "以串流方式分段寫入咖啡 Json 集合") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "201", description = "成功新增咖啡組合", content = @Content(array = @ArraySchema(schema = @Schema(implementation = Coffee.class)))),
+            @ApiResponse( responseCode = "400", description = "請求錯誤，無法解析的 Json")
+    })
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @ResponseStatus(HttpStatus.CREATED)
+    Flux<Coffee> postCoffees(@RequestBody Flux<Coffee> coffees)
+    {
+        return coffees
+                .buffer(batchChunkSize)
+                .concatMap(chunk -> coffeeRepository.upsertAll(chunk).thenMany(Flux.fromIterable(chunk)));
+    }
+}
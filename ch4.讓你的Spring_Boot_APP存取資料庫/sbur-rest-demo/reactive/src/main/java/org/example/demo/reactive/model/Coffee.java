@@ -0,0 +1,36 @@
+package org.example.demo.reactive.model;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 非阻塞版本的 Coffee，對應同一張 coffee 資料表。
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.util.UUID;
+
+/**
+ * Coffee 模型
+ * R2DBC 沒有受管理的實體和延遲載入，直接使用不可變的 record。
+ * @param id 咖啡的唯一識別碼；沒有提供時自動生成 UUID
+ * @param name 咖啡的名稱
+ */
+@Table("coffee")
+public record Coffee(@Id String id, String name)
+{
+    public Coffee
+    {
+        if (id == null)
+        {
+            id = UUID.randomUUID().toString();
+        }
+    }
+
+    /**
+     * 建構函數 - 僅使用名稱建立咖啡實例，自動生成 UUID 作為 ID
+     * @param name 咖啡的名稱
+     */
+    public Coffee(String name)
+    {
+        this(null, name);
+    }
+}
@@ -0,0 +1,23 @@
+package org.example.demo.reactive.repository;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 對應阻塞版本的 CoffeeBulkOperations，以 R2DBC 的批次敘述寫入。
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import org.example.demo.reactive.model.Coffee;
+
+/**
+ * 批次寫入操作，由 ReactiveCoffeeRepository 繼承
+ */
+public interface ReactiveCoffeeBulkOperations
+{
+    /**
+     * 在一個交易裡新增或更新多個咖啡，整批只送出一次 MERGE 批次敘述
+     * @param coffees 要存儲的咖啡
+     * @return 寫入的筆數
+     */
+    Mono<Integer> upsertAll(List<Coffee> coffees);
+}
@@ -0,0 +1,71 @@
+package org.example.demo.reactive.repository;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// ReactiveCoffeeBulkOperations 的實作，名稱必須是「介面名稱 + Impl」，Spring Data 才找得到。
+
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import org.example.demo.reactive.model.Coffee;
+
+class ReactiveCoffeeBulkOperationsImpl implements ReactiveCoffeeBulkOperations
+{
+    // 和阻塞版本相同，每一筆都從 coffee_version_seq 取新的版本號
+    private static final String UPSERT_SQL =
+            "MERGE INTO coffee (id, name, version) KEY(id) VALUES ($1, $2, NEXT VALUE FOR coffee_version_seq)";
+
+    private final DatabaseClient databaseClient;
+
+    /**
+     * 建構函數
+     * @param databaseClient 和 repository 共用同一個 ConnectionFactory 與交易的 DatabaseClient
+     */
+    ReactiveCoffeeBulkOperationsImpl(DatabaseClient databaseClient)
+    {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    @Transactional
+    public Mono<Integer> upsertAll(List<Coffee> coffees)
+    {
+        if (coffees.isEmpty())
+        {
+            return Mono.just(0);
+        }
+
+        return databaseClient.inConnectionMany(connection ->
+        {
+            Statement statement = connection.createStatement(UPSERT_SQL);
+            for (int i = 0; i < coffees.size(); i++)
+            {
+                if (i > 0)
+                {
+                    statement.add();        // add() 結束上一組參數；最後一組不呼叫，否則會多出一組空參數
+                }
+                Coffee coffee = coffees.get(i);
+                statement.bind(0, coffee.id());
+                bindNullable(statement, 1, coffee.name());
+            }
+            return Flux.from(statement.execute()).flatMap(Result::getRowsUpdated);
+        }).then(Mono.just(coffees.size()));
+    }
+
+    private static void bindNullable(Statement statement, int index, String value)
+    {
+        if (value == null)
+        {
+            statement.bindNull(index, String.class);
+        }
+        else
+        {
+            statement.bind(index, value);
+        }
+    }
+}
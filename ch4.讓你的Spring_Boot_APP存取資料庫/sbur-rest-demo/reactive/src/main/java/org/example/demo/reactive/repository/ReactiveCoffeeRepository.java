@@ -0,0 +1,32 @@
+package org.example.demo.reactive.repository;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 對應阻塞版本的 CoffeeRepository，查詢都返回 Mono 或 Flux。
+
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.example.demo.reactive.model.Coffee;
+
+/**
+ * 咖啡的 R2DBC 存取介面
+ * id 由呼叫端指定，save() 會把它當成更新而不是新增，所以寫入一律走 upsert()。
+ */
+public interface ReactiveCoffeeRepository extends ReactiveCrudRepository<Coffee, String>, ReactiveCoffeeBulkOperations
+{
+    Flux<Coffee> findByName(String name);
+
+    // 和 CoffeeRepository 相同：比對 V2 遷移加上的 name_lower 欄位，才能使用 idx_coffee_name_lower 索引
+    @Query("SELECT id, name FROM coffee WHERE name_lower = LOWER(:name)")
+    Flux<Coffee> findByNameIgnoreCase(String name);
+
+    /**
+     * 新增或更新一個咖啡
+     * @return 更新前已經存在的筆數：1 表示更新，0 表示新增
+     */
+    @Query("SELECT COUNT(*) FROM OLD TABLE ("
+            + "MERGE INTO coffee (id, name, version) KEY(id) VALUES (:id, :name, NEXT VALUE FOR coffee_version_seq))")
+    Mono<Long> upsert(String id, String name);
+}
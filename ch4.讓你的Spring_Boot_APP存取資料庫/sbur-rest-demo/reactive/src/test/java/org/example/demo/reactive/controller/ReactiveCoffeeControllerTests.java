@@ -0,0 +1,115 @@
+package org.example.demo.reactive.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.example.demo.reactive.model.Coffee;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ReactiveCoffeeController 的端點：NDJSON 串流、以 Flux 讀取的批次匯入、upsert 的 200/201 和不分大小寫的名稱查詢。
+ * 每個測試都用新的 id 和名稱，不受啟動時 DataLoader 寫入的咖啡影響。
+ */
+@SpringBootTest(properties = {
+        "spring.r2dbc.url=r2dbc:h2:mem:///coffee-reactive-test;DB_CLOSE_DELAY=-1",
+        "spring.flyway.url=jdbc:h2:mem:coffee-reactive-test;DB_CLOSE_DELAY=-1"})
+@AutoConfigureWebTestClient
+public class ReactiveCoffeeControllerTests
+{
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Test
+    void getCoffeesStreamsNdjson()
+    {
+        List<Coffee> coffees = List.of(new Coffee("Stream " + UUID.randomUUID()), new Coffee("Stream " + UUID.randomUUID()));
+        webTestClient.post().uri("/coffees/batch").contentType(MediaType.APPLICATION_JSON).bodyValue(coffees)
+                .exchange()
+                .expectStatus().isCreated();
+
+        Flux<Coffee> stream = webTestClient.get().uri("/coffees").accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(Coffee.class)
+                .getResponseBody();
+
+        StepVerifier.create(stream.filter(coffees::contains).collectList())
+                .assertNext(found -> assertThat(found).containsExactlyInAnyOrderElementsOf(coffees))
+                .verifyComplete();
+    }
+
+    @Test
+    void batchReadsAnNdjsonBodyAsAFlux()
+    {
+        String name = "Batch " + UUID.randomUUID();
+        String ndjson = "{\"id\":\"" + UUID.randomUUID() + "\",\"name\":\"" + name + "\"}\n"
+                + "{\"name\":\"" + name + "\"}\n"
+                + "{\"id\":\"" + UUID.randomUUID() + "\",\"name\":\"" + name + "\"}\n";
+
+        webTestClient.post().uri("/coffees/batch").contentType(MediaType.APPLICATION_NDJSON).bodyValue(ndjson)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBodyList(Coffee.class)
+                .value(written ->
+                {
+                    assertThat(written).hasSize(3).allSatisfy(coffee -> assertThat(coffee.name()).isEqualTo(name));
+                    assertThat(written.get(1).id()).isNotNull();        // 沒有 id 的咖啡自動生成 UUID
+                    written.forEach(coffee -> webTestClient.get().uri("/coffees/{id}", coffee.id())
+                            .exchange()
+                            .expectStatus().isOk()
+                            .expectBody(Coffee.class).isEqualTo(coffee));
+                });
+    }
+
+    @Test
+    void putReturns201ThenUpdatesWith200()
+    {
+        String id = UUID.randomUUID().toString();
+
+        webTestClient.put().uri("/coffees/{id}", id).contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"name\":\"Before\"}")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CREATED)
+                .expectBody(Coffee.class).isEqualTo(new Coffee(id, "Before"));
+        webTestClient.put().uri("/coffees/{id}", id).contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"name\":\"After\"}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Coffee.class).isEqualTo(new Coffee(id, "After"));
+
+        webTestClient.get().uri("/coffees/{id}", id)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Coffee.class).isEqualTo(new Coffee(id, "After"));
+    }
+
+    @Test
+    void findByNameIgnoresCase()
+    {
+        String suffix = UUID.randomUUID().toString();
+        Coffee coffee = new Coffee("Reactive Mocha " + suffix);
+        webTestClient.put().uri("/coffees/{id}", coffee.id()).contentType(MediaType.APPLICATION_JSON).bodyValue(coffee)
+                .exchange()
+                .expectStatus().isCreated();
+
+        webTestClient.get().uri("/coffees/name/{name}", "rEACTIVE mOCHA " + suffix.toUpperCase())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Coffee.class).isEqualTo(coffee);
+        webTestClient.get().uri("/coffees/name/{name}", "Reactive Latte " + suffix)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+}
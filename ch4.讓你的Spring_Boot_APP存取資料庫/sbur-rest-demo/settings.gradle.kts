@@ -1 +1,9 @@
+plugins {
+    // 本機沒有 -PjavaVersion 指定的 JDK 時，Gradle 會自動下載
+    id("org.gradle.toolchains.foojay-resolver-convention") version "1.0.0"
+}
+
 rootProject.name = "sbur-rest-demo"
+
+// 非阻塞版本 (WebFlux + R2DBC)：./gradlew :reactive:bootRun
+include("reactive")
@@ -0,0 +1,58 @@
+package org.example.demo.model;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// GET /coffees 回應的 Jackson 序列化基準測試：Coffee 實體清單和 CoffeeView 投影清單。
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CoffeeSerializationBenchmark
+{
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<Coffee> coffees;
+    private List<CoffeeView> views;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        coffees = new ArrayList<>(size);
+        views = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+        {
+            Coffee coffee = new Coffee("Coffee " + i);
+            coffees.add(coffee);
+            views.add(new CoffeeView(coffee.getId(), coffee.getName(), coffee.getVersion()));
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeEntities() throws JsonProcessingException
+    {
+        return objectMapper.writeValueAsBytes(coffees);
+    }
+
+    @Benchmark
+    public byte[] serializeViews() throws JsonProcessingException
+    {
+        return objectMapper.writeValueAsBytes(views);
+    }
+}
@@ -0,0 +1,122 @@
+package org.example.demo.repository;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// CoffeeRepository 對 H2 (記憶體模式) 的 JMH 基準測試。
+// 每組參數啟動一個不含 Web 伺服器的 Spring 容器，先以 JDBC 批次寫入 size 筆資料。
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.example.demo.Application;
+import org.example.demo.model.Coffee;
+import org.example.demo.model.CoffeeView;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+public class CoffeeRepositoryBenchmark
+{
+    // 多筆查詢 (findViewsByIdIn) 每次帶的 id 數量
+    private static final int LOOKUP_IDS = 100;
+
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    private ConfigurableApplicationContext context;
+    private CoffeeRepository coffeeRepository;
+    private String[] ids;
+    private String[] names;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        // 以命令列參數傳入，才能蓋過 application.yaml 裡的檔案資料庫設定
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:coffee-benchmark-" + UUID.randomUUID(),
+                        "--logging.level.root=WARN");
+        coffeeRepository = context.getBean(CoffeeRepository.class);
+
+        ids = new String[size];
+        names = new String[size];
+        List<Coffee> chunk = new ArrayList<>(10_000);
+        for (int i = 0; i < size; i++)
+        {
+            Coffee coffee = new Coffee("Coffee " + i);
+            ids[i] = coffee.getId();
+            names[i] = coffee.getName();
+            chunk.add(coffee);
+            if (chunk.size() == 10_000)
+            {
+                coffeeRepository.upsertAll(chunk);
+                chunk.clear();
+            }
+        }
+        coffeeRepository.upsertAll(chunk);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<Coffee> findById()
+    {
+        return coffeeRepository.findById(randomId());
+    }
+
+    @Benchmark
+    public Optional<CoffeeView> findViewById()
+    {
+        return coffeeRepository.findViewById(randomId());
+    }
+
+    @Benchmark
+    public Optional<CoffeeView> findViewByNameIgnoreCase()
+    {
+        return coffeeRepository.findViewByNameIgnoreCase(names[ThreadLocalRandom.current().nextInt(size)].toUpperCase());
+    }
+
+    @Benchmark
+    public List<CoffeeView> findViewsByIdIn()
+    {
+        String[] lookup = new String[LOOKUP_IDS];
+        Arrays.setAll(lookup, i -> randomId());
+        return coffeeRepository.findViewsByIdIn(Arrays.asList(lookup));
+    }
+
+    @Benchmark
+    public long upsert()
+    {
+        int i = ThreadLocalRandom.current().nextInt(size);
+        return coffeeRepository.upsert(ids[i], names[i]);
+    }
+
+    private String randomId()
+    {
+        return ids[ThreadLocalRandom.current().nextInt(size)];
+    }
+}
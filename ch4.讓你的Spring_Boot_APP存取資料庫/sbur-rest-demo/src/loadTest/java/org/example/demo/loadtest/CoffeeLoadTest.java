@@ -0,0 +1,185 @@
+package org.example.demo.loadtest;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 對執行中的服務發出固定數量的並行客戶端請求，量測吞吐量和延遲百分位數，
+// 用來比較預設的 Tomcat 執行緒池和 virtual-threads 設定檔。
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 封閉迴圈負載測試
+ * 每個客戶端收到回應後立刻送出下一個請求，所以同時在途的請求數就是客戶端數量。
+ * 請求以 HttpClient.sendAsync() 非同步送出，上萬個客戶端也不需要上萬條執行緒。
+ *
+ * 參數（皆為選填）：
+ *   --url=http://localhost:8080    服務位址
+ *   --path=/coffees?size=20        請求路徑，預設的分頁查詢不經過快取，每次都會存取資料庫
+ *   --clients=200,1000,5000,10000  依序測試的並行客戶端數量
+ *   --warmup=10                    每一輪的暖身秒數，不列入統計
+ *   --duration=30                  每一輪的量測秒數
+ */
+public class CoffeeLoadTest
+{
+    private static final int CLIENTS_PER_HTTP_CLIENT = 500;       // 每個 HttpClient 只有一條 selector 執行緒，分散到多個實例
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        Map<String, String> options = parse(args);
+        URI uri = URI.create(options.getOrDefault("url", "http://localhost:8080")
+                + options.getOrDefault("path", "/coffees?size=20"));
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        int durationSeconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+
+        System.out.printf("%s, warmup %ds, duration %ds%n", uri, warmupSeconds, durationSeconds);
+        System.out.printf("%8s %10s %8s %12s %9s %9s %9s %9s%n",
+                "clients", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+
+        for (String level : options.getOrDefault("clients", "200,1000,5000,10000").split(","))
+        {
+            int clients = Integer.parseInt(level.trim());
+            run(uri, clients, warmupSeconds, false);
+            Result result = run(uri, clients, durationSeconds, true);
+            result.print();
+        }
+    }
+
+
+    /**
+     * 以指定的客戶端數量執行一輪
+     * @param uri 請求的位址
+     * @param clients 並行客戶端數量
+     * @param seconds 執行秒數
+     * @param measure 是否記錄統計
+     * @return 這一輪的結果
+     */
+    private static Result run(URI uri, int clients, int seconds, boolean measure) throws InterruptedException
+    {
+        List<HttpClient> httpClients = new ArrayList<>();
+        for (int i = 0; i < (clients + CLIENTS_PER_HTTP_CLIENT - 1) / CLIENTS_PER_HTTP_CLIENT; i++)
+        {
+            httpClients.add(HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(REQUEST_TIMEOUT)
+                    .build());
+        }
+
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT).GET().build();
+        Histogram latencies = new ConcurrentHistogram(TimeUnit.SECONDS.toMicros(60), 3);
+        LongAdder errors = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch finished = new CountDownLatch(clients);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++)
+        {
+            HttpClient httpClient = httpClients.get(i / CLIENTS_PER_HTTP_CLIENT);
+            new Client(httpClient, request, latencies, errors, running, finished).send();
+        }
+
+        TimeUnit.SECONDS.sleep(seconds);
+        running.set(false);
+        long elapsed = System.nanoTime() - start;
+        finished.await(REQUEST_TIMEOUT.toSeconds() + 5, TimeUnit.SECONDS);
+
+        httpClients.forEach(CoffeeLoadTest::close);
+        return measure ? new Result(clients, latencies, errors.sum(), elapsed) : null;
+    }
+
+    private static void close(HttpClient httpClient)
+    {
+        // HttpClient 在 Java 21 才實作 AutoCloseable；Java 17 上交給 GC 回收
+        if (httpClient instanceof AutoCloseable closeable)
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch (Exception ignored)
+            {
+            }
+        }
+    }
+
+    private static Map<String, String> parse(String[] args)
+    {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args)
+        {
+            if (arg.startsWith("--") && arg.contains("="))
+            {
+                int separator = arg.indexOf('=');
+                options.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+        return options;
+    }
+
+
+    /**
+     * 一個客戶端：前一個請求完成後才送出下一個
+     */
+    private record Client(HttpClient httpClient, HttpRequest request, Histogram latencies, LongAdder errors,
+                          AtomicBoolean running, CountDownLatch finished)
+    {
+        void send()
+        {
+            if (!running.get())
+            {
+                finished.countDown();
+                return;
+            }
+
+            long sent = System.nanoTime();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) ->
+                    {
+                        if (failure != null || response.statusCode() >= 400)
+                        {
+                            errors.increment();
+                        }
+                        else
+                        {
+                            latencies.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sent),
+                                    latencies.getHighestTrackableValue()));
+                        }
+                        send();
+                    });
+        }
+    }
+
+    /**
+     * 一輪量測的結果，延遲以微秒記錄、以毫秒顯示
+     */
+    private record Result(int clients, Histogram latencies, long errors, long elapsedNanos)
+    {
+        void print()
+        {
+            double seconds = elapsedNanos / 1e9;
+            System.out.printf("%8d %10d %8d %12.1f %9.2f %9.2f %9.2f %9.2f%n",
+                    clients,
+                    latencies.getTotalCount(),
+                    errors,
+                    latencies.getTotalCount() / seconds,
+                    latencies.getValueAtPercentile(50) / 1000.0,
+                    latencies.getValueAtPercentile(90) / 1000.0,
+                    latencies.getValueAtPercentile(99) / 1000.0,
+                    latencies.getMaxValue() / 1000.0);
+        }
+    }
+}
@@ -5,10 +5,14 @@ package org.example.demo;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.scheduling.annotation.EnableAsync;
 // import org.springframework.web.bind.annotation.RequestParam;
 // import org.springframework.web.bind.annotation.GetMapping;
 
 @SpringBootApplication
+@EnableCaching      // 啟用 Spring 的快取抽象層，CacheManager 由 spring.cache.* 設定為 Caffeine
+@EnableAsync(proxyTargetClass = true)  // 啟用 @Async，DataLoader 在啟動完成後以背景執行緒載入初始資料；它實作了 HealthIndicator，必須用類別代理
 public class Application
 {
     public static void main(String[] args)
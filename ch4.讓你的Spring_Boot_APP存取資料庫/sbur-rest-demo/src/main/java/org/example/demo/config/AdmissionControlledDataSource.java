@@ -0,0 +1,137 @@
+package org.example.demo.config;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 以信號量限制同時持有或等待資料庫連線的請求數量。
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 有准入控制的 DataSource
+ * 改用虛擬執行緒後，Tomcat 不再以 200 條執行緒限制同時處理的請求數，
+ * 上萬個請求可能同時排隊等 Hikari 的連線。Hikari 的 connection-timeout 只限制每個請求等多久，
+ * 不限制有多少請求在等：一萬個請求會全部排進連線池，各自等到逾時才失敗，
+ * 在這段時間裡佔著記憶體，也讓排在後面的請求延遲越來越長。
+ * 這裡的許可數量是「連線池大小 + 允許排隊的請求數」：取得連線前先拿許可，
+ * 拿不到表示排隊已滿，立即失敗，不等待；拿到許可的請求再交給 Hikari 排隊，等待時間由 connection-timeout 決定。
+ * 許可在連線 close() 時歸還。
+ */
+public class AdmissionControlledDataSource extends DelegatingDataSource
+{
+    private final Semaphore permits;
+    private final int maxInFlight;
+
+    /**
+     * 建構函數
+     * @param target 實際的 DataSource
+     * @param maxInFlight 同時持有或等待連線的請求數量上限，也就是連線池大小加上允許排隊的請求數
+     */
+    public AdmissionControlledDataSource(DataSource target, int maxInFlight)
+    {
+        super(target);
+        this.permits = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException
+    {
+        acquire();
+        return admitted(() -> obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException
+    {
+        acquire();
+        return admitted(() -> obtainTargetDataSource().getConnection(username, password));
+    }
+
+    /**
+     * 目前可以使用的許可數量
+     * @return 可以使用的許可數量
+     */
+    public int availablePermits()
+    {
+        return permits.availablePermits();
+    }
+
+
+
+    private void acquire() throws SQLException
+    {
+        if (!permits.tryAcquire())
+        {
+            // 和 Hikari 取不到連線時拋出相同的例外類型，呼叫端的處理方式不用改變
+            throw new SQLTransientConnectionException(
+                    "Database admission rejected: " + maxInFlight + " requests already hold or wait for a connection");
+        }
+    }
+
+    private Connection admitted(ConnectionSupplier supplier) throws SQLException
+    {
+        Connection connection;
+        try
+        {
+            connection = supplier.get();
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            permits.release();
+            throw e;
+        }
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new ReleasingHandler(connection));
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSupplier
+    {
+        Connection get() throws SQLException;
+    }
+
+    /**
+     * 連線第一次 close() 時歸還許可，重複 close() 不會多歸還
+     */
+    private class ReleasingHandler implements InvocationHandler
+    {
+        private final Connection target;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleasingHandler(Connection target)
+        {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            try
+            {
+                return method.invoke(target, args);
+            }
+            catch (InvocationTargetException e)
+            {
+                throw e.getTargetException();
+            }
+            finally
+            {
+                if ("close".equals(method.getName()) && released.compareAndSet(false, true))
+                {
+                    permits.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.example.demo.config;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 註冊 Protobuf 訊息轉換器。CBOR 和 Smile 的轉換器在 classpath 上有對應的 Jackson 模組時由 Spring 自動加入。
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+import org.example.demo.protobuf.CoffeeProtobufHttpMessageConverter;
+
+/**
+ * 內容協商設定
+ * 沒有 Accept 標頭（或 Accept: *\/*）時，Spring 依轉換器的順序挑選格式，
+ * 所以 Protobuf 轉換器加在最後面，JSON 仍然是預設格式。
+ */
+@Configuration(proxyBeanMethods = false)
+public class ContentNegotiationConfiguration implements WebMvcConfigurer
+{
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters)
+    {
+        converters.add(new CoffeeProtobufHttpMessageConverter());
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.demo.config;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 啟用 coffee.db.admission.enabled 時，把 DataSource 包上准入控制。
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+/**
+ * 資料庫准入控制的設定
+ * 預設關閉；virtual-threads 設定檔 (application-virtual-threads.yaml) 會開啟它。
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "coffee.db.admission.enabled", havingValue = "true")
+public class DbAdmissionConfiguration
+{
+    /**
+     * 包裝 DataSource 的 BeanPostProcessor
+     * 必須是 static，才不會讓這個設定類別提早初始化
+     * @param environment 用來讀取連線池大小和允許排隊的請求數
+     * @return BeanPostProcessor
+     */
+    @Bean
+    static BeanPostProcessor admissionControlledDataSourcePostProcessor(Environment environment)
+    {
+        // 許可數量 = 連線池大小 + 允許在連線池前排隊的請求數，見 AdmissionControlledDataSource
+        int poolSize = environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10);
+        int maxWaiting = environment.getProperty("coffee.db.admission.max-waiting", Integer.class, poolSize * 4);
+
+        return new BeanPostProcessor()
+        {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName)
+            {
+                if (bean instanceof DataSource dataSource && !(bean instanceof AdmissionControlledDataSource))
+                {
+                    return new AdmissionControlledDataSource(dataSource, poolSize + maxWaiting);
+                }
+                return bean;
+            }
+        };
+    }
+}
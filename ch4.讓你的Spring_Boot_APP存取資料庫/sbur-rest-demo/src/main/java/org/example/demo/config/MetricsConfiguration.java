@@ -0,0 +1,78 @@
+package org.example.demo.config;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 註冊請求指標攔截器和慢存儲庫呼叫的記錄器。延遲直方圖和 Prometheus 端點的設定在 application.yaml。
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+import org.example.demo.metrics.RequestMetricsInterceptor;
+import org.example.demo.metrics.SlowRepositoryCallListener;
+
+/**
+ * 指標設定
+ * 只攔截咖啡 API，/actuator、/admin 和 Swagger UI 的請求不計入。
+ * 請求和存儲庫呼叫共用同一個慢呼叫門檻 coffee.metrics.slow-call-threshold。
+ */
+@Configuration(proxyBeanMethods = false)
+public class MetricsConfiguration implements WebMvcConfigurer
+{
+    private final RequestMetricsInterceptor requestMetricsInterceptor;
+
+
+    /**
+     * 構造函數
+     * @param registry 指標註冊表
+     * @param slowCallThreshold 處理時間超過這個門檻的請求會記到日誌，例如 500ms、2s
+     */
+    public MetricsConfiguration(MeterRegistry registry,
+                                @Value("${coffee.metrics.slow-call-threshold:500ms}") Duration slowCallThreshold)
+    {
+        this.requestMetricsInterceptor = new RequestMetricsInterceptor(registry, slowCallThreshold);
+    }
+
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry)
+    {
+        // 變更串流是長連線，處理時間就是連線時間，不列入延遲和慢請求
+        registry.addInterceptor(requestMetricsInterceptor).addPathPatterns("/coffees", "/coffees/**")
+                .excludePathPatterns("/coffees/changes");
+    }
+
+
+    /**
+     * 在每個 Spring Data 存儲庫建立之前加上慢呼叫記錄器
+     * 必須是 static，才不會讓這個設定類別提早初始化
+     * @param environment 用來讀取慢呼叫門檻
+     * @return BeanPostProcessor
+     */
+    @Bean
+    static BeanPostProcessor slowRepositoryCallPostProcessor(Environment environment)
+    {
+        SlowRepositoryCallListener listener = new SlowRepositoryCallListener(
+                environment.getProperty("coffee.metrics.slow-call-threshold", Duration.class, Duration.ofMillis(500)));
+
+        return new BeanPostProcessor()
+        {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName)
+            {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean)
+                {
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addInvocationListener(listener));
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.demo.config;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 啟用 coffee.diagnostics.sql.enabled 時，以 datasource-proxy 包裝 DataSource，計算每個請求的 SQL 敘述數量。
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+import org.example.demo.metrics.SqlDiagnosticsFilter;
+import org.example.demo.metrics.SqlStatementCounter;
+
+/**
+ * SQL 診斷的設定
+ * 預設關閉；diagnostics 設定檔 (application-diagnostics.yaml) 會開啟它。
+ * 回應標頭由 SqlDiagnosticsResponseAdvice 和 SqlDiagnosticsFilter 加上。
+ * 開啟後每個回應都帶有 X-SQL-Statements 和 X-SQL-Time-Ms 標頭，
+ * 並記錄 coffee.http.sql.statements 和 coffee.http.sql.time 指標。
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "coffee.diagnostics.sql.enabled", havingValue = "true")
+public class SqlDiagnosticsConfiguration
+{
+    /**
+     * SQL 敘述計數器
+     * 必須是 static，BeanPostProcessor 才能在這個設定類別初始化之前取得它
+     * @return SQL 敘述計數器
+     */
+    @Bean
+    static SqlStatementCounter sqlStatementCounter()
+    {
+        return new SqlStatementCounter();
+    }
+
+
+    /**
+     * 以 datasource-proxy 包裝 DataSource 的 BeanPostProcessor
+     * 必須是 static，才不會讓這個設定類別提早初始化
+     * @param counter SQL 敘述計數器
+     * @return BeanPostProcessor
+     */
+    @Bean
+    static BeanPostProcessor sqlDiagnosticsDataSourcePostProcessor(SqlStatementCounter counter)
+    {
+        return new BeanPostProcessor()
+        {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName)
+            {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ProxyDataSource))
+                {
+                    return ProxyDataSourceBuilder.create(dataSource)
+                            .name(beanName)
+                            .listener(counter)
+                            .build();
+                }
+                return bean;
+            }
+        };
+    }
+
+
+    @Bean
+    SqlDiagnosticsFilter sqlDiagnosticsFilter(SqlStatementCounter counter, MeterRegistry registry)
+    {
+        return new SqlDiagnosticsFilter(counter, registry);
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.demo.controller;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 顯示 Caffeine 快取的命中、未命中和淘汰次數，用來調整快取大小。
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 快取統計控制器
+ */
+@Tag(name = "Cache API", description = "提供快取統計資料的 API") // Swagger 註解，用於生成 API 文檔
+@RestController
+@RequestMapping("/admin/caches")
+public class CacheStatsController
+{
+    private final CacheManager cacheManager;
+
+    /**
+     * 建構函數
+     * @param cacheManager 快取管理器
+     */
+    public CacheStatsController(CacheManager cacheManager)
+    {
+        this.cacheManager = cacheManager;
+    }
+
+
+    /**
+     * 快取統計的端點
+     * @return 返回每一個快取的統計資料，以快取名稱為鍵
+     */
+    @Operation(summary = "獲取快取統計", description = "返回每一個 Caffeine 快取的大小、命中率和淘汰次數") // Swagger 註解，用於生成 API 文檔
+    @GetMapping()
+    Map<String, CacheStatistics> getCacheStatistics()
+    {
+        Map<String, CacheStatistics> statistics = new LinkedHashMap<>();
+        for (String name : cacheManager.getCacheNames())
+        {
+            if (cacheManager.getCache(name) instanceof CaffeineCache cache)
+            {
+                com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = cache.getNativeCache();
+                statistics.put(name, CacheStatistics.of(nativeCache.estimatedSize(), nativeCache.stats()));
+            }
+        }
+        return statistics;
+    }
+
+
+    /**
+     * 單一快取的統計資料
+     */
+    record CacheStatistics(long size, long hitCount, long missCount, double hitRate, long evictionCount)
+    {
+        static CacheStatistics of(long size, CacheStats stats)
+        {
+            return new CacheStatistics(size, stats.hitCount(), stats.missCount(), stats.hitRate(), stats.evictionCount());
+        }
+    }
+}
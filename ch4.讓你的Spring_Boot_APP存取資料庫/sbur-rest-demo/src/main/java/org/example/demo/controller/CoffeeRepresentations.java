@@ -0,0 +1,86 @@
+package org.example.demo.controller;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 同一個 URL 依 Accept 返回 JSON、CBOR、Smile 或 Protobuf，ETag 和 Vary 都必須跟著協商出來的格式走。
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.HeaderContentNegotiationStrategy;
+import org.springframework.web.context.request.NativeWebRequest;
+
+import jakarta.servlet.http.HttpServletResponse;
+import java.util.List;
+
+import org.example.demo.protobuf.CoffeeProtobufHttpMessageConverter;
+
+/**
+ * 咖啡的表示法 (representation)
+ * 同一個版本的 JSON 和 Protobuf 位元組不同，強 ETag 必須不同；
+ * 共用快取也必須依 Accept 分開存放，否則會把 Protobuf 的回應交給要 JSON 的客戶端。
+ * 在控制器方法裡先協商出格式，再以它產生 ETag、設定 Content-Type，兩者才不會不一致。
+ */
+final class CoffeeRepresentations
+{
+    static final MediaType CBOR = MediaType.parseMediaType("application/cbor");
+    static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
+    // 和訊息轉換器的順序相同：沒有 Accept 或 Accept: */* 時是 JSON，見 ContentNegotiationConfiguration
+    static final List<MediaType> ALL = List.of(MediaType.APPLICATION_JSON, CBOR, SMILE, CoffeeProtobufHttpMessageConverter.PROTOBUF);
+    static final List<MediaType> BINARY = List.of(CBOR, SMILE, CoffeeProtobufHttpMessageConverter.PROTOBUF);
+
+    // 只依 Accept 標頭協商，和 Spring MVC 預設的 ContentNegotiationManager 相同
+    private static final HeaderContentNegotiationStrategy ACCEPT = new HeaderContentNegotiationStrategy();
+
+    private CoffeeRepresentations()
+    {
+    }
+
+    /**
+     * 依 Accept 從可以產生的格式裡選出回應格式
+     * Accept 已經依品質和明確程度排序，取第一個相容的格式，和 Spring MVC 的選擇相同
+     * @param request 目前的請求
+     * @param producible 可以產生的格式，依偏好排序
+     * @return 回應格式
+     * @throws HttpMediaTypeNotAcceptableException 沒有可以接受的格式（406）
+     */
+    static MediaType negotiate(NativeWebRequest request, List<MediaType> producible) throws HttpMediaTypeNotAcceptableException
+    {
+        for (MediaType acceptable : ACCEPT.resolveMediaTypes(request))
+        {
+            for (MediaType candidate : producible)
+            {
+                if (acceptable.isCompatibleWith(candidate) && acceptable.getQualityValue() > 0)
+                {
+                    return candidate;
+                }
+            }
+        }
+        throw new HttpMediaTypeNotAcceptableException(producible);
+    }
+
+    /**
+     * 加上格式的 ETag
+     * @param base 版本號產生的 ETag
+     * @param type 協商出來的格式
+     * @return 這個格式的 ETag
+     */
+    static String eTag(String base, MediaType type)
+    {
+        return base + "-" + type.getSubtype();
+    }
+
+    /**
+     * 回應依這些請求標頭而不同，304 也要帶，所以直接寫到回應上，不等 ResponseEntity
+     * @param request 目前的請求
+     * @param headers 影響回應內容的請求標頭
+     */
+    static void vary(NativeWebRequest request, String... headers)
+    {
+        HttpServletResponse response = request.getNativeResponse(HttpServletResponse.class);
+        if (response != null)
+        {
+            response.addHeader(HttpHeaders.VARY, String.join(", ", headers));
+        }
+    }
+}
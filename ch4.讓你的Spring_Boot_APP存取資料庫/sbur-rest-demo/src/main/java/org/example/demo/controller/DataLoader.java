@@ -3,35 +3,104 @@ package org.example.demo.controller;
 // 第四章 讓你的 Spring Boot APP 存取資料庫
 // 這個範例採用第三章的範例加入 H2 資料庫的功能。
 
-import jakarta.annotation.PostConstruct;
-import org.example.demo.model.Coffee;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import org.example.demo.repository.CoffeeRepository;
+import org.example.demo.service.CoffeeService;
 
+/**
+ * 初始咖啡數據的載入器
+ * 不在 @PostConstruct 裡載入，而是等應用程式啟動完成 (ApplicationReadyEvent) 後以背景執行緒載入，
+ * 初始資料再多也不會拖慢啟動時間。
+ * 載入完成之前，健康檢查 dataLoader 回報 OUT_OF_SERVICE；它屬於 readiness 群組，
+ * 所以 /actuator/health/readiness 會回應 503，負載平衡器在載入完成之前不會把流量導過來。
+ */
 @Component()
-public class DataLoader
+public class DataLoader implements HealthIndicator
 {
-    private final CoffeeRepository coffeeRepository;
+    private static final Logger log = LoggerFactory.getLogger(DataLoader.class);
 
-    public DataLoader(CoffeeRepository coffeeRepository)
+    private final CoffeeService coffeeService;
+    private final boolean enabled;
+    private final String location;
+
+    // 啟動時載入資料花費的時間，記在 coffee.dataloader.duration
+    private final Timer loadTimer;
+
+    // 載入結果：還沒完成時都是 null
+    private volatile Integer inserted;
+    private volatile Throwable failure;
+
+    /**
+     * 建構函數
+     * @param coffeeService 咖啡服務，匯入後會讓名稱快取和集合 ETag 失效
+     * @param enabled 是否載入初始資料
+     * @param location 初始資料 CSV 檔的位置
+     * @param meterRegistry 指標註冊表
+     */
+    public DataLoader(CoffeeService coffeeService,
+                      @Value("${coffee.seed.enabled:true}") boolean enabled,
+                      @Value("${coffee.seed.location:classpath:db/seed/coffees.csv}") String location,
+                      MeterRegistry meterRegistry)
     {
-        this.coffeeRepository = coffeeRepository; // 注入咖啡存儲庫
+        this.coffeeService = coffeeService;
+        this.enabled = enabled;
+        this.location = location;
+        this.loadTimer = Timer.builder("coffee.dataloader.duration")
+                .description("啟動時載入初始咖啡數據的時間")
+                .register(meterRegistry);
+        if (!enabled)
+        {
+            inserted = 0;
+        }
     }
 
-    @PostConstruct
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
     public void loadData()
     {
-        // 初始化咖啡數據
-        coffeeRepository.saveAll(List.of(
-            new Coffee("Cafe Cereza"),
-            new Coffee("Cafe Ganador"),
-            new Coffee("Cafe Lareno"),
-            new Coffee("Cafe Tres Pontas")
-        ));
-    }
+        if (!enabled)
+        {
+            return;
+        }
 
+        // 初始化咖啡數據：由資料庫直接讀取 CSV，一個 INSERT ... SELECT 敘述寫入
+        long start = System.nanoTime();
+        try
+        {
+            inserted = loadTimer.recordCallable(() -> coffeeService.importCsv(location));
+            log.info("從 {} 載入 {} 筆初始咖啡，耗時 {} ms", location, inserted,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        catch (Exception e)
+        {
+            failure = e;
+            log.error("從 {} 載入初始咖啡失敗", location, e);
+        }
+    }
 
+    @Override
+    public Health health()
+    {
+        if (failure != null)
+        {
+            return Health.down(failure).withDetail("location", location).build();
+        }
+        if (inserted == null)
+        {
+            return Health.outOfService().withDetail("location", location).build();
+        }
+        return Health.up().withDetail("inserted", inserted).build();
+    }
 }
@@ -7,9 +7,19 @@ package org.example.demo.controller;
 // 【Spring Boot】第13課－使用 Swagger UI 製作 API 文件與呼叫介面
 
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import io.swagger.v3.oas.annotations.tags.Tag; // Swagger 註解，用於生成 API 文檔o
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -21,12 +31,23 @@ import io.swagger.v3.oas.annotations.Parameter; // 用於描述方法參數的 S
 import io.swagger.v3.oas.annotations.media.ExampleObject; // 用於提供參數範例的 Swagger 註解
 
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import org.example.demo.metrics.CoffeeMetrics;
+import org.example.demo.model.BatchSummary;
+import org.example.demo.model.BulkResult;
 import org.example.demo.model.Coffee;
+import org.example.demo.model.CoffeeLookup;
+import org.example.demo.model.CoffeePage;
+import org.example.demo.model.CoffeeView;
 import org.example.demo.repository.CoffeeRepository;
+import org.example.demo.service.CoffeeExporter;
+import org.example.demo.service.CoffeeService;
+import org.example.demo.service.CoffeeStreamReader;
 
 /**
  * REST API 控制器
@@ -40,48 +61,229 @@ public class RestApiDemoController
     // 存儲咖啡數據的內存集合
     private final CoffeeRepository coffeeRepository;
 
+    // 查詢先經過快取、寫入會讓快取失效的咖啡服務
+    private final CoffeeService coffeeService;
+
+    // 串流批次匯入用的讀取器和每段筆數
+    private final CoffeeStreamReader coffeeStreamReader;
+    private final int batchChunkSize;
+
+    // 分頁查詢和串流匯出
+    private final CoffeeExporter coffeeExporter;
+    private final int pageMaxSize;
+
+    // 一次多筆查詢最多可以帶的 id 數量
+    private final int lookupMaxIds;
+
+    // 批次端點的筆數分佈
+    private final CoffeeMetrics metrics;
+
+    // 集合 ETag 的前綴：變更計數在重新啟動後會從 0 開始，加上啟動時間才不會和重新啟動前的 ETag 重複
+    private final String collectionETagPrefix = Long.toString(System.currentTimeMillis(), 36) + "-";
+
 
     /**
      * 建構函數 - 初始化咖啡數據
      * @param coffeeRepository 咖啡存儲庫，用於數據庫操作
+     * @param coffeeService 咖啡服務，id 和名稱查詢會先查快取
+     * @param coffeeStreamReader 串流批次匯入用的讀取器
+     * @param batchChunkSize 串流批次匯入時，每個交易寫入的筆數
+     * @param coffeeExporter 以串流方式匯出全部咖啡
+     * @param pageMaxSize 分頁查詢時，一頁最多的筆數
+     * @param lookupMaxIds 一次多筆查詢最多可以帶的 id 數量
+     * @param metrics 記錄批次端點筆數分佈的指標
      */
-    public RestApiDemoController(CoffeeRepository coffeeRepository)
+    public RestApiDemoController(CoffeeRepository coffeeRepository,
+                                 CoffeeService coffeeService,
+                                 CoffeeStreamReader coffeeStreamReader,
+                                 @Value("${coffee.batch.chunk-size:1000}") int batchChunkSize,
+                                 CoffeeExporter coffeeExporter,
+                                 @Value("${coffee.page.max-size:1000}") int pageMaxSize,
+                                 @Value("${coffee.lookup.max-ids:10000}") int lookupMaxIds,
+                                 CoffeeMetrics metrics)
     {
         this.coffeeRepository = coffeeRepository; // 注入咖啡存儲庫
+        this.coffeeService = coffeeService;
+        this.coffeeStreamReader = coffeeStreamReader;
+        this.batchChunkSize = batchChunkSize;
+        this.coffeeExporter = coffeeExporter;
+        this.pageMaxSize = pageMaxSize;
+        this.lookupMaxIds = lookupMaxIds;
+        this.metrics = metrics;
     }
 
 
     /**
      * 獲取所有咖啡的端點
-     * @return 返回所有咖啡的列表
+     * 帶 If-None-Match 且集合沒有變更時返回 304，不查詢資料庫也不序列化
+     * @param request 用來協商格式、比對 If-None-Match 並設定 ETag 和 Vary 標頭
+     * @return 返回所有咖啡的列表；沒有變更時返回 null（304 Not Modified）
+     * @throws HttpMediaTypeNotAcceptableException Accept 不接受任何支援的格式
      */
     @Operation(summary = "獲取所有咖啡", description = "返回所有咖啡的列表") // Swagger 註解，用於生成 API 文檔
     @ApiResponses( value = {        // 定義可能的 HTTP 響應狀態碼和描述
-           @ApiResponse( responseCode = "200", description = "成功獲取所有咖啡", content = @Content(schema = @Schema(implementation = Coffee.class))),
+           @ApiResponse( responseCode = "200", description = "成功獲取所有咖啡", content = @Content(schema = @Schema(implementation = CoffeeView.class))),
+           @ApiResponse( responseCode = "304", description = "咖啡集合沒有變更"),
            @ApiResponse( responseCode = "404", description = "找不到端點")
     })
     @GetMapping()     // 映射 HTTP GET 請求到 /coffees 路徑
-    Iterable<Coffee> getCoffees()
+    ResponseEntity<Iterable<CoffeeView>> getCoffees(NativeWebRequest request) throws HttpMediaTypeNotAcceptableException
+    {
+        // JSON、CBOR、Smile 和 Protobuf 的位元組不同，ETag 要加上協商出來的格式
+        MediaType type = CoffeeRepresentations.negotiate(request, CoffeeRepresentations.ALL);
+        CoffeeRepresentations.vary(request, HttpHeaders.ACCEPT);
+        // 版本號要在讀取之前取得，見 CoffeeService.collectionVersion()
+        if (request.checkNotModified(CoffeeRepresentations.eTag(collectionETagPrefix + coffeeService.collectionVersion(), type)))
+        {
+            return null;
+        }
+        // 以唯讀投影返回所有咖啡，不建立受管理的實體
+        return ResponseEntity.ok().contentType(type).body(coffeeService.findAll());
+    }
+
+
+    /**
+     * 分頁獲取咖啡的端點
+     * 使用鍵集分頁 (keyset pagination)：游標記住上一頁最後一筆的 id，下一頁從它之後開始取
+     * @param size 一頁的筆數，超過上限時以上限為準
+     * @param cursor 上一頁返回的 nextCursor；取第一頁時不帶
+     * @param request 用來設定 Vary 標頭
+     * @return 返回這一頁的咖啡和下一頁的游標
+     */
+    @Operation(summary = "分頁獲取咖啡", description = "依 id 排序，以游標取得下一頁，每頁筆數有上限") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "成功獲取一頁咖啡", content = @Content(schema = @Schema(implementation = CoffeePage.class))),
+            @ApiResponse( responseCode = "400", description = "游標或筆數不合法")
+    })
+    @GetMapping(params = "size")     // 帶了 size 參數的 GET /coffees 才會進到這裡
+    CoffeePage getCoffeesPage(
+            @Parameter(description = "一頁的筆數", example = "100", required = true)
+            @RequestParam int size,
+            @Parameter(description = "上一頁返回的游標，取第一頁時不帶")
+            @RequestParam(required = false) String cursor,
+            NativeWebRequest request)
+    {
+        CoffeeRepresentations.vary(request, HttpHeaders.ACCEPT);      // 格式依 Accept 協商
+        if (size < 1)
+        {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size 必須大於 0");
+        }
+
+        int pageSize = Math.min(size, pageMaxSize);
+        Limit limit = Limit.of(pageSize + 1);       // 多取一筆，用來判斷還有沒有下一頁
+
+        List<CoffeeView> coffees;
+        if (cursor == null || cursor.isEmpty())
+        {
+            coffees = coffeeRepository.findAllByOrderByIdAsc(limit);
+        }
+        else
+        {
+            try
+            {
+                coffees = coffeeRepository.findByIdGreaterThanOrderByIdAsc(CoffeePage.decodeCursor(cursor), limit);
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "游標不合法", e);
+            }
+        }
+
+        if (coffees.size() <= pageSize)
+        {
+            return new CoffeePage(coffees, null);       // 最後一頁
+        }
+
+        List<CoffeeView> page = coffees.subList(0, pageSize);
+        return new CoffeePage(page, CoffeePage.encodeCursor(page.get(pageSize - 1).id().toString()));
+    }
+
+
+    /**
+     * 串流匯出所有咖啡的端點
+     * 客戶端要求 application/x-ndjson 時，邊從資料庫讀邊寫出，每行一筆，記憶體用量固定
+     * @param request 用來設定 Vary 標頭
+     * @return 返回以串流方式寫出的回應
+     */
+    @Operation(summary = "串流匯出所有咖啡", description = "以 NDJSON 格式逐筆輸出所有咖啡，不在記憶體中建立完整列表") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "成功匯出所有咖啡", content = @Content(mediaType = "application/x-ndjson", schema = @Schema(implementation = Coffee.class)))
+    })
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)     // Accept: application/x-ndjson 時才會進到這裡
+    ResponseEntity<StreamingResponseBody> exportCoffees(NativeWebRequest request)
     {
-        return coffeeRepository.findAll();     // 返回所有咖啡對象
+        CoffeeRepresentations.vary(request, HttpHeaders.ACCEPT);      // 同一個 URL 依 Accept 返回 JSON 或 NDJSON
+        StreamingResponseBody body = coffeeExporter::writeNdjson;
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
 
     /**
      * 根據 ID 獲取特定咖啡的端點
+     * ETag 是咖啡的版本號加上協商出來的格式；快取命中且 If-None-Match 相符時返回 304，不查詢資料庫也不序列化
      * @param id 咖啡的唯一識別碼
-     * @return 如果找到匹配的咖啡，返回包含該咖啡的 Optional；否則返回空的 Optional
+     * @param request 用來協商格式、比對 If-None-Match 並設定 ETag 和 Vary 標頭
+     * @return 如果找到匹配的咖啡，返回包含該咖啡的 Optional；否則返回空的 Optional；沒有變更時返回 null（304 Not Modified）
+     * @throws HttpMediaTypeNotAcceptableException Accept 不接受任何支援的格式
      */
     @Operation(summary = "根據 ID 獲取特定咖啡", description = "根據咖啡的唯一識別碼返回對應的咖啡對象") // Swagger 註解，用於生成 API 文檔
     @ApiResponses( value = {
-            @ApiResponse( responseCode = "200", description = "成功獲取特定咖啡", content = @Content(schema = @Schema(implementation = Coffee.class))),
+            @ApiResponse( responseCode = "200", description = "成功獲取特定咖啡", content = @Content(schema = @Schema(implementation = CoffeeView.class))),
+            @ApiResponse( responseCode = "304", description = "咖啡沒有變更"),
+            @ApiResponse( responseCode = "503", description = "等待同一個 id 進行中的查詢逾時"),
     })
     @GetMapping("/{id}")        // 映射 HTTP GET 請求到 /coffees/{id} 路徑，{id} 是路徑變量
-    Optional<Coffee> getCoffeeById(
+    ResponseEntity<Optional<CoffeeView>> getCoffeeById(
             @Parameter(description = "咖啡的唯一識別碼", example = "1f0cc0fc-f672-4fc1-a062-3dfaa514dcc3", required = true) // Swagger 註解，描述此參數
-            @PathVariable String id)     // @PathVariable 從 URL 路徑中提取 id 參數
+            @PathVariable String id,     // @PathVariable 從 URL 路徑中提取 id 參數
+            NativeWebRequest request) throws HttpMediaTypeNotAcceptableException
     {
-        return coffeeRepository.findById(id); // 根據 ID 查找咖啡對象，返回 Optional<Coffee>
+        MediaType type = CoffeeRepresentations.negotiate(request, CoffeeRepresentations.ALL);
+        CoffeeRepresentations.vary(request, HttpHeaders.ACCEPT);
+
+        Optional<CoffeeView> coffee;
+        try
+        {
+            coffee = coffeeService.findById(id); // 根據 ID 查找咖啡對象（先查快取），返回 Optional<Coffee>
+        }
+        catch (QueryTimeoutException e)
+        {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), e);
+        }
+        if (coffee.isPresent() && request.checkNotModified(CoffeeRepresentations.eTag(Long.toString(coffee.get().version()), type)))
+        {
+            return null;
+        }
+        // 以協商出來的格式寫出，和 ETag 一致
+        return ResponseEntity.ok().contentType(type).body(coffee);
+    }
+
+
+    /**
+     * 一次根據多個 ID 獲取咖啡的端點
+     * 取代呼叫 N 次 GET /coffees/{id}：先查快取，其餘的 id 分段用 IN 查詢，每段一次資料庫往返
+     * @param ids 咖啡的唯一識別碼集合，重複的 id 只會查一次
+     * @return 返回找到的咖啡和找不到的 id
+     */
+    @Operation(summary = "根據多個 ID 獲取咖啡", description = "一次查詢多個 id，返回找到的咖啡和找不到的 id") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "查詢完成", content = @Content(schema = @Schema(implementation = CoffeeLookup.class))),
+            @ApiResponse( responseCode = "400", description = "id 數量超過上限，或有 id 是 null")
+    })
+    @PostMapping("/lookup")
+    CoffeeLookup lookupCoffees(
+            @Parameter(description = "咖啡的唯一識別碼集合", example = "[\"99999\", \"88888\"]", required = true)
+            @RequestBody List<String> ids)
+    {
+        if (ids.size() > lookupMaxIds)
+        {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "一次最多查詢 " + lookupMaxIds + " 個 id");
+        }
+        requireNonNullIds(ids);
+
+        return coffeeService.findAllById(ids);
     }
 
 
@@ -93,14 +295,15 @@ public class RestApiDemoController
     @Operation(summary = "新增一組咖啡", description = "將新的咖啡對象添加到列表中") // Swagger 註解，用於生成 API 文檔
     @ApiResponses( value = {
             @ApiResponse( responseCode = "201", description = "成功新增咖啡", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Coffee.class))),
-            @ApiResponse( responseCode = "400", description = "請求錯誤，可能是缺少必要的字段")
+            @ApiResponse( responseCode = "400", description = "請求錯誤，可能是缺少必要的字段或 id 為 null")
     })
     @PostMapping()
     Coffee postCoffee(
             @Parameter(description = "要新增的咖啡對象", examples = { @ExampleObject( name = "拿鐵咖啡", value = "{\"name\" : \"拿鐵咖啡\", \"id\" : \"99999\"}") }, required = true)
             @RequestBody Coffee coffee)
     {
-        return coffeeRepository.save(coffee); // 將新咖啡添加到列表中
+        requireIds(List.of(coffee));
+        return coffeeService.save(coffee); // 將新咖啡添加到列表中
     }
 
 
@@ -123,9 +326,14 @@ public class RestApiDemoController
             @Parameter(description = "咖啡的名稱", example = "Cafe Ganador", required = true)
             @RequestBody Coffee coffee)
     {
-        return (coffeeRepository.existsById(id))
-            ? new ResponseEntity<>(coffeeRepository.save(coffee), HttpStatus.OK)
-            : new ResponseEntity<>(coffeeRepository.save(coffee), HttpStatus.CREATED);// 如果找不到匹配的 ID，則新增一個新的咖啡:
+        // 以路徑上的 id 為準，再用一個 MERGE 敘述完成新增或更新
+        // 原本的 existsById() + save() 會發出 SELECT、merge 的 SELECT、INSERT/UPDATE 三個敘述
+        coffee.setId(id);
+        boolean updated = coffeeService.upsert(coffee);
+
+        return updated
+            ? new ResponseEntity<>(coffee, HttpStatus.OK)
+            : new ResponseEntity<>(coffee, HttpStatus.CREATED);// 如果找不到匹配的 ID，則新增一個新的咖啡
     }
 
 
@@ -144,28 +352,39 @@ public class RestApiDemoController
             @Parameter(description = "咖啡的唯一識別碼", example = "1f0cc0fc-f672-4fc1-a062-3dfaa514dcc3", required = true)
             @PathVariable String id)
     {
-        coffeeRepository.deleteById(id);        // 根據 ID 刪除匹配的咖啡對象
+        coffeeService.deleteById(id);        // 根據 ID 刪除匹配的咖啡對象
     }
 
 
     /**
      * 根據名稱獲取特定咖啡的端點
      * @param name 咖啡的名稱
+     * @param request 用來設定 Vary 標頭
      * @return 如果找到匹配的咖啡，返回包含該咖啡的 Optional；否則返回空的 Optional
      */
     @Operation(summary = "根據名稱獲取特定咖啡", description = "根據咖啡的名稱返回對應的咖啡對象") // Swagger 註解，用於生成 API 文檔
     @ApiResponses( value = {
-            @ApiResponse( responseCode = "200", description = "成功獲取特定咖啡", content = @Content(schema = @Schema(implementation = Coffee.class))),
-            @ApiResponse( responseCode = "404", description = "找不到指定的咖啡")
+            @ApiResponse( responseCode = "200", description = "成功獲取特定咖啡", content = @Content(schema = @Schema(implementation = CoffeeView.class))),
+            @ApiResponse( responseCode = "404", description = "找不到指定的咖啡"),
+            @ApiResponse( responseCode = "503", description = "等待同一個名稱進行中的查詢逾時")
     })
     @GetMapping("/name/{name}")     // 不能使用 @GetMapping("/coffees/{name}")，因為 {name} 和先前的 {id} 會分不出來。
-    Optional<Coffee> getCoffeeByName(
+    Optional<CoffeeView> getCoffeeByName(
             @Parameter(description = "咖啡的名稱", example = "Cafe Lareno", required = true)
-            @PathVariable String name)     // @PathVariable 從 URL 路徑中提取 id 參數
+            @PathVariable String name,     // @PathVariable 從 URL 路徑中提取 id 參數
+            NativeWebRequest request)
     {
-        // 直接呼叫在 Repository 定義好的方法
+        CoffeeRepresentations.vary(request, HttpHeaders.ACCEPT);      // 沒有 ETag，但格式仍然依 Accept 協商
+        // 先查快取，找不到才呼叫在 Repository 定義好的方法
         // 查詢工作完全交給資料庫處理，只會返回匹配的一筆資料
-        return coffeeRepository.findByNameIgnoreCase(name);
+        try
+        {
+            return coffeeService.findByName(name);
+        }
+        catch (QueryTimeoutException e)
+        {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), e);
+        }
     }
 
 
@@ -179,14 +398,116 @@ public class RestApiDemoController
     @Operation(summary = "新增咖啡組合", description = "將新的咖啡 Json 集合添加到列表中") // Swagger 註解，用於生成 API 文檔
     @ApiResponses( value = {
             @ApiResponse( responseCode = "201", description = "成功新增咖啡組合", content = @Content(array = @ArraySchema(schema = @Schema(implementation = Coffee.class)))),
-            @ApiResponse( responseCode = "400", description = "請求錯誤，可能是缺少必要的字段")
+            @ApiResponse( responseCode = "400", description = "請求錯誤，可能是缺少必要的字段或 id 為 null")
     })
     @PostMapping("/batch")
     List<Coffee> postCoffees(
             @Parameter(description = "咖啡的名稱", example = "Cafe Lareno", required = true)
             @RequestBody List<Coffee> coffees)
     {
-        return coffeeRepository.saveAll(coffees); // 將新咖啡集合添加到列表中
+        requireIds(coffees);        // "id": null 會違反 MERGE 的 NOT NULL 鍵，變成 500 並回滾整批
+        metrics.recordBatchSize("upsert", coffees.size());
+        coffeeService.saveAll(coffees); // 將新咖啡集合以 JDBC 批次添加到資料庫中
+        return coffees;
+    }
+
+
+    /**
+     * 批次刪除咖啡的端點
+     * 以 DELETE ... WHERE id IN (...) 整批刪除，不逐筆載入實體
+     * @param ids 要刪除的咖啡 id 集合
+     * @return 返回請求筆數和實際刪除的筆數
+     */
+    @Operation(summary = "批次刪除咖啡", description = "根據 id 集合一次刪除多個咖啡") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "刪除完成", content = @Content(schema = @Schema(implementation = BulkResult.class))),
+            @ApiResponse( responseCode = "400", description = "有 id 是 null")
+    })
+    @DeleteMapping("/batch")
+    BulkResult deleteCoffees(
+            @Parameter(description = "要刪除的咖啡 id 集合", example = "[\"99999\", \"88888\"]", required = true)
+            @RequestBody List<String> ids)
+    {
+        requireNonNullIds(ids);
+        metrics.recordBatchSize("delete", ids.size());
+        return new BulkResult(ids.size(), coffeeService.deleteAllById(ids));
+    }
+
+
+    /**
+     * 批次改名的端點
+     * 每段一個集合式的 UPDATE ... WHERE id IN (...)，只更新已經存在的咖啡，找不到的 id 會略過，不會新增
+     * @param coffees 帶有 id 和新名稱的咖啡集合
+     * @return 返回請求筆數和實際更新的筆數
+     */
+    @Operation(summary = "批次改名", description = "根據 id 一次更新多個咖啡的名稱") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "更新完成", content = @Content(schema = @Schema(implementation = BulkResult.class))),
+            @ApiResponse( responseCode = "400", description = "有咖啡或 id 是 null")
+    })
+    @PatchMapping("/batch")
+    BulkResult renameCoffees(
+            @Parameter(description = "帶有 id 和新名稱的咖啡集合", required = true)
+            @RequestBody List<Coffee> coffees)
+    {
+        requireIds(coffees);
+        metrics.recordBatchSize("rename", coffees.size());
+        return new BulkResult(coffees.size(), coffeeService.renameAll(coffees));
+    }
+
+
+    /**
+     * 串流批次新增咖啡的端點
+     * 不把整個請求內容綁定成 List，而是邊讀邊寫，每讀滿一段就以獨立的交易寫入資料庫，記憶體用量和請求大小無關
+     * @param body 請求內容，可以是 JSON 陣列或 NDJSON
+     * @return 返回匯入結果摘要，而不是每一筆咖啡
+     */
+    @Operation(summary = "串流新增咖啡組合", description = "逐筆解析 JSON 陣列或 NDJSON，分段寫入，只返回成功與略過的筆數") // Swagger 註解，用於生成 API 文檔
+    @ApiResponses( value = {
+            @ApiResponse( responseCode = "200", description = "匯入完成", content = @Content(schema = @Schema(implementation = BatchSummary.class))),
+            @ApiResponse( responseCode = "400", description = "請求內容不是合法的 JSON")
+    })
+    @PostMapping(value = "/batch/stream", consumes = {"application/json", "application/x-ndjson"})
+    BatchSummary postCoffeesStream(
+            @Parameter(description = "JSON 陣列或 NDJSON 格式的咖啡集合", required = true)
+            InputStream body) throws IOException
+    {
+        try
+        {
+            BatchSummary summary = coffeeStreamReader.read(body, batchChunkSize, coffeeService::saveAll);
+            metrics.recordBatchSize("stream", summary.accepted());
+            return summary;
+        }
+        catch (JsonProcessingException e)
+        {
+            // 格式錯誤之前已經寫入的段落不會回滾
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "JSON 格式錯誤：" + e.getOriginalMessage(), e);
+        }
+    }
+
+
+    // JSON 的 "id": null 會讓咖啡沒有 id，以 400 拒絕，不讓它變成資料庫的錯誤
+    private static void requireIds(List<Coffee> coffees)
+    {
+        for (Coffee coffee : coffees)
+        {
+            if (coffee == null || coffee.getId() == null)
+            {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "咖啡的 id 不可以是 null");
+            }
+        }
+    }
+
+    // JSON 陣列裡的 null 元素會在去除重複或查詢時拋出 NullPointerException，以 400 拒絕
+    private static void requireNonNullIds(List<String> ids)
+    {
+        for (String id : ids)
+        {
+            if (id == null)
+            {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "id 不可以是 null");
+            }
+        }
     }
 
 }
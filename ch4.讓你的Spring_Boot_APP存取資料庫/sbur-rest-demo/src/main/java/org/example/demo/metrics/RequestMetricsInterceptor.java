@@ -0,0 +1,108 @@
+package org.example.demo.metrics;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 每個端點正在處理中的請求數，以及超過門檻的慢請求記錄。
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 請求指標攔截器
+ * 以「HTTP 方法 + 路徑樣板」為單位，提供處理中請求數的量表（coffee.http.in.flight），
+ * 並把處理時間超過門檻的請求記到日誌裡，方便對照同一時間的指標找出慢請求。
+ * 非同步請求會經過兩次 preHandle，但只有最後一次會呼叫 afterCompletion，所以用請求屬性確保只計算一次。
+ */
+public class RequestMetricsInterceptor implements AsyncHandlerInterceptor
+{
+    private static final Logger log = LoggerFactory.getLogger(RequestMetricsInterceptor.class);
+
+    // 請求開始時間（System.nanoTime()）和對應的處理中計數器，存放在請求屬性裡
+    private static final String START_ATTRIBUTE = RequestMetricsInterceptor.class.getName() + ".start";
+    private static final String IN_FLIGHT_ATTRIBUTE = RequestMetricsInterceptor.class.getName() + ".inFlight";
+
+    private final MeterRegistry registry;
+    private final long slowCallThresholdNanos;
+
+    // 方法 + 路徑樣板 -> 處理中的請求數，路徑樣板是有限的，所以量表數量也是有限的
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+
+    /**
+     * 構造函數
+     * @param registry 指標註冊表
+     * @param slowCallThreshold 處理時間超過這個門檻的請求會記到日誌
+     */
+    public RequestMetricsInterceptor(MeterRegistry registry, Duration slowCallThreshold)
+    {
+        this.registry = registry;
+        this.slowCallThresholdNanos = slowCallThreshold.toNanos();
+    }
+
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+    {
+        if (request.getAttribute(START_ATTRIBUTE) == null)
+        {
+            AtomicInteger counter = inFlightCounter(request.getMethod(), uri(request));
+            counter.incrementAndGet();
+            request.setAttribute(IN_FLIGHT_ATTRIBUTE, counter);
+            request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        }
+        return true;
+    }
+
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex)
+    {
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        if (start == null)
+        {
+            return;
+        }
+        request.removeAttribute(START_ATTRIBUTE);
+        ((AtomicInteger) request.getAttribute(IN_FLIGHT_ATTRIBUTE)).decrementAndGet();
+
+        long elapsed = System.nanoTime() - (Long) start;
+        if (elapsed >= slowCallThresholdNanos)
+        {
+            log.warn("慢請求：{} {}（{}）狀態 {}，耗時 {} ms", request.getMethod(), request.getRequestURI(),
+                    uri(request), response.getStatus(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+    }
+
+
+    private AtomicInteger inFlightCounter(String method, String uri)
+    {
+        return inFlight.computeIfAbsent(method + " " + uri, key ->
+        {
+            AtomicInteger counter = new AtomicInteger();
+            Gauge.builder("coffee.http.in.flight", counter, AtomicInteger::get)
+                    .description("正在處理中的請求數")
+                    .tag("method", method)
+                    .tag("uri", uri)
+                    .register(registry);
+            return counter;
+        });
+    }
+
+    // 使用路徑樣板（例如 /coffees/{id}）而不是實際路徑，避免每個 id 產生一個量表
+    private static String uri(HttpServletRequest request)
+    {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return (pattern == null) ? "UNKNOWN" : pattern.toString();
+    }
+}
@@ -0,0 +1,46 @@
+package org.example.demo.metrics;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 每個存儲庫方法的延遲由 Spring Boot 的 spring.data.repository.invocations 計時器記錄，這裡只把慢呼叫記到日誌。
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.repository.core.support.RepositoryMethodInvocationListener;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 慢存儲庫呼叫的記錄器
+ * Spring Data 在每次存儲庫方法（包含 CoffeeBulkOperations 這類自訂片段）執行完後通知這個監聽器，
+ * 執行時間超過門檻時記錄方法名稱和結果狀態，方便和慢請求的日誌對照，判斷時間是花在資料庫還是其他地方。
+ */
+public class SlowRepositoryCallListener implements RepositoryMethodInvocationListener
+{
+    private static final Logger log = LoggerFactory.getLogger(SlowRepositoryCallListener.class);
+
+    private final long slowCallThresholdNanos;
+
+
+    /**
+     * 構造函數
+     * @param slowCallThreshold 執行時間超過這個門檻的存儲庫呼叫會記到日誌
+     */
+    public SlowRepositoryCallListener(Duration slowCallThreshold)
+    {
+        this.slowCallThresholdNanos = slowCallThreshold.toNanos();
+    }
+
+
+    @Override
+    public void afterInvocation(RepositoryMethodInvocation invocation)
+    {
+        long elapsed = invocation.getDuration(TimeUnit.NANOSECONDS);
+        if (elapsed >= slowCallThresholdNanos)
+        {
+            log.warn("慢存儲庫呼叫：{}.{}() 狀態 {}，耗時 {} ms", invocation.getRepositoryInterface().getSimpleName(),
+                    invocation.getMethod().getName(), invocation.getResult().getState(),
+                    TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+    }
+}
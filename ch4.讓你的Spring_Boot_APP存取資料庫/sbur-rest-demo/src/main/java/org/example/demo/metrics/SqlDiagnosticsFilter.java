@@ -0,0 +1,100 @@
+package org.example.demo.metrics;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 每個請求一個 SQL 計數範圍，請求結束時記錄指標，還沒送出的回應加上計數標頭。
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQL 診斷過濾器
+ * 請求期間在同一個執行緒上執行的敘述數量和 JDBC 時間，記在 coffee.http.sql.statements 和 coffee.http.sql.time，
+ * 以「HTTP 方法 + 路徑樣板」為標籤。
+ * 有回應本文的請求，標頭由 SqlDiagnosticsResponseAdvice 在寫出本文之前加上；
+ * 沒有本文的請求（例如 DELETE、304）在這裡加上。
+ * 串流匯出這類非同步請求，在其他執行緒上執行的敘述不會計入。
+ */
+public class SqlDiagnosticsFilter extends OncePerRequestFilter
+{
+    public static final String STATEMENTS_HEADER = "X-SQL-Statements";
+    public static final String TIME_HEADER = "X-SQL-Time-Ms";
+
+    private final SqlStatementCounter counter;
+    private final MeterRegistry registry;
+
+
+    /**
+     * 構造函數
+     * @param counter SQL 敘述計數器
+     * @param registry 指標註冊表
+     */
+    public SqlDiagnosticsFilter(SqlStatementCounter counter, MeterRegistry registry)
+    {
+        this.counter = counter;
+        this.registry = registry;
+    }
+
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException
+    {
+        SqlStatementCounter.Scope scope = counter.begin();
+        try
+        {
+            filterChain.doFilter(request, response);
+        }
+        finally
+        {
+            counter.end();
+            if (!response.isCommitted())
+            {
+                writeHeaders(response, scope);
+            }
+            record(request, scope);
+        }
+    }
+
+
+    /**
+     * 把計數範圍寫到回應標頭
+     * @param response HTTP 回應
+     * @param scope 計數範圍
+     */
+    static void writeHeaders(HttpServletResponse response, SqlStatementCounter.Scope scope)
+    {
+        response.setHeader(STATEMENTS_HEADER, Long.toString(scope.statements()));
+        response.setHeader(TIME_HEADER, String.format(Locale.ROOT, "%.3f", scope.elapsedNanos() / 1_000_000.0));
+    }
+
+
+    private void record(HttpServletRequest request, SqlStatementCounter.Scope scope)
+    {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = (pattern == null) ? "UNKNOWN" : pattern.toString();
+
+        DistributionSummary.builder("coffee.http.sql.statements")
+                .description("每個請求執行的 SQL 敘述數量")
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .register(registry)
+                .record(scope.statements());
+        Timer.builder("coffee.http.sql.time")
+                .description("每個請求花在 JDBC 執行的時間")
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .register(registry)
+                .record(scope.elapsedNanos(), TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.demo.metrics;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 有回應本文的請求，在寫出本文（送出標頭）之前加上 SQL 計數標頭。
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * SQL 診斷標頭
+ * 本文寫出後回應就送出了，SqlDiagnosticsFilter 來不及加標頭，所以在這裡先加上。
+ * 控制器方法已經執行完，這時的計數就是整個請求的敘述數量。
+ * 和 SqlDiagnosticsConfiguration 使用同一個開關。
+ */
+@ControllerAdvice
+@ConditionalOnProperty(name = "coffee.diagnostics.sql.enabled", havingValue = "true")
+public class SqlDiagnosticsResponseAdvice implements ResponseBodyAdvice<Object>
+{
+    private final SqlStatementCounter counter;
+
+
+    /**
+     * 構造函數
+     * @param counter SQL 敘述計數器
+     */
+    public SqlDiagnosticsResponseAdvice(SqlStatementCounter counter)
+    {
+        this.counter = counter;
+    }
+
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType)
+    {
+        return true;
+    }
+
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response)
+    {
+        SqlStatementCounter.Scope scope = counter.current();
+        if (scope != null && response instanceof ServletServerHttpResponse servletResponse)
+        {
+            SqlDiagnosticsFilter.writeHeaders(servletResponse.getServletResponse(), scope);
+        }
+        return body;
+    }
+}
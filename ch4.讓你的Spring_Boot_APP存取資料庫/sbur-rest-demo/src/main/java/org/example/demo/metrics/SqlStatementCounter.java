@@ -0,0 +1,102 @@
+package org.example.demo.metrics;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 以 datasource-proxy 攔截每一次 JDBC 執行，累計到目前執行緒上的計數範圍。
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+import java.util.List;
+
+/**
+ * SQL 敘述計數器
+ * 每次 execute / executeQuery / executeUpdate / executeBatch 算一個敘述，也就是一次和資料庫的往返；
+ * JDBC 批次不論帶幾筆參數都只算一次。
+ * 只有在 begin() 和 end() 之間、同一個執行緒上執行的敘述才會被計入，
+ * 所以啟動時的 Flyway 遷移、DataLoader 和其他執行緒上的查詢都不會算到請求頭上。
+ */
+public class SqlStatementCounter implements QueryExecutionListener
+{
+    private final ThreadLocal<Scope> current = new ThreadLocal<>();
+
+    /**
+     * 一個計數範圍內累計的敘述數量和 JDBC 執行時間
+     */
+    public static final class Scope
+    {
+        private long statements;
+        private long elapsedNanos;
+        private long startedAt;
+
+        /**
+         * @return 執行過的敘述數量
+         */
+        public long statements()
+        {
+            return statements;
+        }
+
+        /**
+         * @return 所有敘述的 JDBC 執行時間總和（奈秒）
+         */
+        public long elapsedNanos()
+        {
+            return elapsedNanos;
+        }
+    }
+
+
+    /**
+     * 在目前執行緒上開始一個新的計數範圍
+     * @return 新的計數範圍
+     */
+    public Scope begin()
+    {
+        Scope scope = new Scope();
+        current.set(scope);
+        return scope;
+    }
+
+
+    /**
+     * 結束目前執行緒上的計數範圍
+     */
+    public void end()
+    {
+        current.remove();
+    }
+
+
+    /**
+     * @return 目前執行緒上的計數範圍；不在任何範圍內時返回 null
+     */
+    public Scope current()
+    {
+        return current.get();
+    }
+
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList)
+    {
+        Scope scope = current.get();
+        if (scope != null)
+        {
+            // 同一個執行緒上的敘述不會互相重疊，記一個開始時間就夠了
+            scope.startedAt = System.nanoTime();
+        }
+    }
+
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList)
+    {
+        Scope scope = current.get();
+        if (scope != null)
+        {
+            scope.statements++;
+            scope.elapsedNanos += System.nanoTime() - scope.startedAt;
+        }
+    }
+}
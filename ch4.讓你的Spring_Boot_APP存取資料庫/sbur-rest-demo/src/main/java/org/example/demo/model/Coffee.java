@@ -11,9 +11,10 @@ package org.example.demo.model;
 // https://ithelp.ithome.com.tw/articles/10309099
 // 在 Spring boot 開發中使用 H2 Database
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
-import lombok.AllArgsConstructor;
+import jakarta.persistence.Version;
 import lombok.NoArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
@@ -26,7 +27,6 @@ import java.util.UUID;
  */
 @Getter
 @Setter
-@AllArgsConstructor     // AllArgsConstructor：生成包含所有字段的參數化構造函數。
 @NoArgsConstructor      // @NoArgsConstructor：生成無參構造函數。
 @Entity
 public class Coffee
@@ -35,6 +35,23 @@ public class Coffee
     private String id;         // 咖啡的唯一識別碼
     private String name;        // 咖啡的名稱
 
+    // 版本號：每次寫入都會換一個更大的值，GET /coffees/{id} 以它產生 ETag。
+    // 只放在 ETag 標頭裡，不出現在 JSON 中。
+    @Version
+    @JsonIgnore
+    private long version;
+
+    /**
+     * 建構函數
+     * @param id 咖啡的唯一識別碼
+     * @param name 咖啡的名稱
+     */
+    public Coffee(String id, String name)
+    {
+        this.id = id;
+        this.name = name;
+    }
+
     /**
      * 建構函數 - 僅使用名稱建立咖啡實例，自動生成 UUID 作為 ID
      * @param name 咖啡的名稱
@@ -0,0 +1,34 @@
+package org.example.demo.model;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 變更串流 (GET /coffees/changes) 的事件內容，只帶 id 和名稱，不重送整個咖啡列表。
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 咖啡變更事件
+ * @param seq 變更序號，只增不減；事件的 id 由啟動時間和序號組成，斷線後以 Last-Event-ID 續傳
+ * @param type 變更類型
+ * @param id 咖啡的唯一識別碼，控制事件 (ready / reset) 沒有
+ * @param name 變更後的名稱，刪除和控制事件沒有
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record CoffeeChange(long seq, Type type, String id, String name)
+{
+    /**
+     * 變更類型
+     */
+    public enum Type
+    {
+        @JsonProperty("created") CREATED,
+        @JsonProperty("updated") UPDATED,
+        @JsonProperty("deleted") DELETED,
+        // 批次寫入 (POST /coffees/batch) 以 MERGE 送出，不知道每一筆是新增還是更新
+        @JsonProperty("upserted") UPSERTED,
+        // 控制事件：訂閱開始，之後的事件接續在 seq 之後
+        @JsonProperty("ready") READY,
+        // 控制事件：錯過的變更已經無法補送（太舊、重新啟動過、緩衝區溢出或從 CSV 匯入），請重新取得 GET /coffees
+        @JsonProperty("reset") RESET
+    }
+}
@@ -0,0 +1,15 @@
+package org.example.demo.model;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 一次查詢多個 id 的結果。
+
+import java.util.List;
+
+/**
+ * 多筆查詢結果
+ * @param found 找到的咖啡，順序和請求中的 id 相同
+ * @param missing 找不到的 id
+ */
+public record CoffeeLookup(List<CoffeeView> found, List<String> missing)
+{
+}
@@ -0,0 +1,37 @@
+package org.example.demo.model;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 鍵集分頁 (keyset pagination) 的回應格式。
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 一頁咖啡
+ * @param items 這一頁的咖啡，依 id 排序
+ * @param nextCursor 取下一頁時帶回來的游標；已經是最後一頁時為 null
+ */
+public record CoffeePage(List<CoffeeView> items, String nextCursor)
+{
+    /**
+     * 把這一頁最後一筆的 id 編成不透明的游標，客戶端不需要（也不應該）知道裡面是什麼
+     * @param lastId 這一頁最後一筆咖啡的 id
+     * @return URL 安全的游標字串
+     */
+    public static String encodeCursor(String lastId)
+    {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解開游標，取得上一頁最後一筆的 id
+     * @param cursor 游標字串
+     * @return 上一頁最後一筆咖啡的 id
+     * @throws IllegalArgumentException 游標不是合法的 Base64 字串
+     */
+    public static String decodeCursor(String cursor)
+    {
+        return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    }
+}
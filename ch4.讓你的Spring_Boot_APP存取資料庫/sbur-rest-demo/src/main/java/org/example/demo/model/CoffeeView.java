@@ -0,0 +1,28 @@
+package org.example.demo.model;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 唯讀的咖啡投影 (projection)：查詢直接產生這個 record，不建立受管理的 Coffee 實體。
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * 咖啡的唯讀視圖
+ * 序列化後的 JSON 和 Coffee 相同，但 Hibernate 不需要為它保存快照、也不會做髒檢查 (dirty checking)
+ * 視圖會放進快取，id 以 CoffeeId 存放，UUID 只佔兩個 long
+ * @param id 咖啡的唯一識別碼
+ * @param name 咖啡的名稱
+ * @param version 版本號，用來產生 ETag，不出現在 JSON 中
+ */
+public record CoffeeView(CoffeeId id, String name, @JsonIgnore long version)
+{
+    /**
+     * 查詢的建構式表達式 (select new CoffeeView(c.id, ...)) 使用的建構函數，id 在這裡解析一次
+     * @param id 咖啡的唯一識別碼
+     * @param name 咖啡的名稱
+     * @param version 版本號
+     */
+    public CoffeeView(String id, String name, long version)
+    {
+        this(CoffeeId.of(id), name, version);
+    }
+}
@@ -0,0 +1,183 @@
+package org.example.demo.protobuf;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 依 src/main/proto/coffee.proto 讀寫 Protobuf 的線上格式，不需要 protoc 產生的類別。
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.example.demo.model.Coffee;
+import org.example.demo.model.CoffeeView;
+
+/**
+ * Coffee 的 Protobuf 編碼與解碼
+ * 直接在 Coffee 物件和位元組之間轉換，不經過中間的 Message 物件。
+ * 寫出時 Coffee 實體和 CoffeeView 投影都對應同一個 message Coffee；讀取一律產生 Coffee。
+ */
+public final class CoffeeProtobuf
+{
+    // message Coffee { string id = 1; string name = 2; }
+    private static final int ID_FIELD = 1;
+    private static final int NAME_FIELD = 2;
+
+    // message CoffeeList { repeated Coffee coffees = 1; }
+    private static final int COFFEES_FIELD = 1;
+
+    // 標籤 = (欄位編號 << 3) | 線上型別；字串和內嵌訊息都是 length-delimited
+    private static final int ID_TAG = tag(ID_FIELD);
+    private static final int NAME_TAG = tag(NAME_FIELD);
+    private static final int COFFEES_TAG = tag(COFFEES_FIELD);
+
+    // CodedOutputStream 預設只有 4 KB 緩衝，寫整個目錄時會頻繁呼叫底層串流的 write()
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CoffeeProtobuf()
+    {
+    }
+
+
+    /**
+     * 寫出一個 Coffee 訊息
+     * @param coffee Coffee 或 CoffeeView
+     * @param out 輸出串流，寫完不會關閉
+     * @throws IOException 寫入失敗
+     */
+    public static void writeCoffee(Object coffee, OutputStream out) throws IOException
+    {
+        CodedOutputStream output = CodedOutputStream.newInstance(out, BUFFER_SIZE);
+        writeFields(id(coffee), name(coffee), output);
+        output.flush();
+    }
+
+    /**
+     * 寫出一個 CoffeeList 訊息
+     * @param coffees Coffee 或 CoffeeView 的集合
+     * @param out 輸出串流，寫完不會關閉
+     * @throws IOException 寫入失敗
+     */
+    public static void writeCoffees(Iterable<?> coffees, OutputStream out) throws IOException
+    {
+        CodedOutputStream output = CodedOutputStream.newInstance(out, BUFFER_SIZE);
+        for (Object coffee : coffees)
+        {
+            String id = id(coffee);
+            String name = name(coffee);
+
+            // 內嵌訊息：標籤、長度、欄位內容
+            output.writeUInt32NoTag(COFFEES_TAG);
+            output.writeUInt32NoTag(fieldsSize(id, name));
+            writeFields(id, name, output);
+        }
+        output.flush();
+    }
+
+    /**
+     * 讀取一個 Coffee 訊息
+     * @param in 輸入串流
+     * @return 咖啡；訊息裡沒有 id 時自動生成 UUID
+     * @throws IOException 讀取失敗，或內容不是合法的 Protobuf
+     */
+    public static Coffee readCoffee(InputStream in) throws IOException
+    {
+        return readFields(CodedInputStream.newInstance(in));
+    }
+
+    /**
+     * 讀取一個 CoffeeList 訊息
+     * @param in 輸入串流
+     * @return 咖啡集合
+     * @throws IOException 讀取失敗，或內容不是合法的 Protobuf
+     */
+    public static List<Coffee> readCoffees(InputStream in) throws IOException
+    {
+        CodedInputStream input = CodedInputStream.newInstance(in);
+        List<Coffee> coffees = new ArrayList<>();
+        for (int tag = input.readTag(); tag != 0; tag = input.readTag())
+        {
+            if (tag == COFFEES_TAG)
+            {
+                int limit = input.pushLimit(input.readRawVarint32());
+                coffees.add(readFields(input));
+                input.popLimit(limit);
+            }
+            else
+            {
+                input.skipField(tag);       // 不認識的欄位略過，新版本的客戶端加欄位時舊伺服器仍能讀取
+            }
+        }
+        return coffees;
+    }
+
+
+    private static int tag(int field)
+    {
+        return (field << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    }
+
+    private static String id(Object coffee)
+    {
+        return (coffee instanceof CoffeeView view) ? view.id().toString() : ((Coffee) coffee).getId();
+    }
+
+    private static String name(Object coffee)
+    {
+        return (coffee instanceof CoffeeView view) ? view.name() : ((Coffee) coffee).getName();
+    }
+
+    private static int fieldsSize(String id, String name)
+    {
+        int size = 0;
+        if (id != null)
+        {
+            size += CodedOutputStream.computeStringSize(ID_FIELD, id);
+        }
+        if (name != null)
+        {
+            size += CodedOutputStream.computeStringSize(NAME_FIELD, name);
+        }
+        return size;
+    }
+
+    // proto3 沒有 null：null 的欄位不寫出，讀取端視為沒有提供
+    private static void writeFields(String id, String name, CodedOutputStream output) throws IOException
+    {
+        if (id != null)
+        {
+            output.writeString(ID_FIELD, id);
+        }
+        if (name != null)
+        {
+            output.writeString(NAME_FIELD, name);
+        }
+    }
+
+    // 讀到訊息結尾（或 pushLimit 設定的長度）時 readTag() 返回 0
+    private static Coffee readFields(CodedInputStream input) throws IOException
+    {
+        String id = null;
+        String name = null;
+        for (int tag = input.readTag(); tag != 0; tag = input.readTag())
+        {
+            if (tag == ID_TAG)
+            {
+                id = input.readStringRequireUtf8();
+            }
+            else if (tag == NAME_TAG)
+            {
+                name = input.readStringRequireUtf8();
+            }
+            else
+            {
+                input.skipField(tag);
+            }
+        }
+        return (id == null) ? new Coffee(name) : new Coffee(id, name);
+    }
+}
@@ -0,0 +1,129 @@
+package org.example.demo.protobuf;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 讓控制器的 Coffee、CoffeeView 和它們的集合支援 application/x-protobuf。
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Optional;
+
+import org.example.demo.model.Coffee;
+import org.example.demo.model.CoffeeView;
+
+/**
+ * Coffee 的 Protobuf 訊息轉換器
+ * 單一 Coffee 或 CoffeeView 對應 message Coffee；它們的 List、Collection、Iterable 對應 message CoffeeList。
+ * 請求本文只會讀成 Coffee 或 Coffee 集合。
+ * 返回 Optional&lt;Coffee&gt; 時 Spring 會把 Optional 本身交給轉換器，這裡自行拆開；空的 Optional 不寫出任何位元組。
+ */
+public class CoffeeProtobufHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object>
+{
+    public static final String PROTOBUF_VALUE = "application/x-protobuf";
+    public static final MediaType PROTOBUF = MediaType.parseMediaType(PROTOBUF_VALUE);
+
+    public CoffeeProtobufHttpMessageConverter()
+    {
+        super(PROTOBUF);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz)
+    {
+        return Coffee.class.isAssignableFrom(clazz) || CoffeeView.class == clazz
+                || Iterable.class.isAssignableFrom(clazz) || Optional.class == clazz;
+    }
+
+    @Override
+    public boolean canRead(Type type, @Nullable Class<?> contextClass, @Nullable MediaType mediaType)
+    {
+        if (!canRead(mediaType))
+        {
+            return false;
+        }
+        ResolvableType target = ResolvableType.forType(type);
+        Class<?> raw = target.resolve(Object.class);
+        // 集合只能讀成 ArrayList 指派得過去的型別，例如 List<Coffee>
+        return raw == Coffee.class || (raw.isAssignableFrom(ArrayList.class) && isCoffeeIterable(target, false));
+    }
+
+    @Override
+    public boolean canWrite(@Nullable Type type, Class<?> clazz, @Nullable MediaType mediaType)
+    {
+        if (!canWrite(mediaType))
+        {
+            return false;
+        }
+        ResolvableType target = (type != null) ? ResolvableType.forType(type) : ResolvableType.forClass(clazz);
+        if (clazz == Optional.class)
+        {
+            target = target.as(Optional.class).getGeneric(0);
+            clazz = target.resolve(Object.class);
+        }
+        return isCoffee(clazz, true)
+                || (Iterable.class.isAssignableFrom(clazz) && isCoffeeIterable(target, true));
+    }
+
+    @Override
+    public Object read(Type type, @Nullable Class<?> contextClass, HttpInputMessage inputMessage) throws IOException
+    {
+        return readInternal(ResolvableType.forType(type).resolve(Object.class), inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException
+    {
+        try
+        {
+            return (clazz == Coffee.class)
+                    ? CoffeeProtobuf.readCoffee(inputMessage.getBody())
+                    : CoffeeProtobuf.readCoffees(inputMessage.getBody());
+        }
+        catch (InvalidProtocolBufferException e)
+        {
+            throw new HttpMessageNotReadableException("無法解析的 Protobuf 內容: " + e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object body, @Nullable Type type, HttpOutputMessage outputMessage) throws IOException
+    {
+        if (body instanceof Optional<?> optional)
+        {
+            if (optional.isEmpty())
+            {
+                return;
+            }
+            body = optional.get();
+        }
+
+        if (body instanceof Iterable<?> coffees)
+        {
+            CoffeeProtobuf.writeCoffees(coffees, outputMessage.getBody());
+        }
+        else
+        {
+            CoffeeProtobuf.writeCoffee(body, outputMessage.getBody());
+        }
+    }
+
+    private static boolean isCoffeeIterable(ResolvableType type, boolean includeViews)
+    {
+        Class<?> element = type.as(Iterable.class).getGeneric(0).resolve();
+        return element != null && isCoffee(element, includeViews);
+    }
+
+    private static boolean isCoffee(Class<?> clazz, boolean includeViews)
+    {
+        return Coffee.class.isAssignableFrom(clazz) || (includeViews && CoffeeView.class == clazz);
+    }
+}
@@ -0,0 +1,29 @@
+package org.example.demo.repository;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// CoffeeRepository 的自訂片段 (fragment)：Spring Data 會把 CoffeeBulkOperationsImpl 的實作併入 CoffeeRepository。
+
+import java.util.Collection;
+import java.util.List;
+
+import org.example.demo.model.Coffee;
+
+public interface CoffeeBulkOperations
+{
+    // 以 JDBC 批次 (batch) 新增或更新多筆咖啡，每筆都不會先 SELECT。
+    // saveAll() 遇到自行指定的 id 會逐筆走 merge()，每筆一個 SELECT 加一個 INSERT，而且不會批次送出。
+    // 返回寫入的筆數。
+    int upsertAll(Collection<Coffee> coffees);
+
+    // 以集合式的 UPDATE ... WHERE id IN (...) 更新多筆咖啡的名稱，每段 batch_size 筆一個敘述，
+    // 只更新已經存在的 id，不會新增；同一個 id 出現多次時以最後一筆為準。
+    // 返回實際更新的咖啡。
+    List<Coffee> renameAll(Collection<Coffee> coffees);
+
+    // 啟動時的初始資料：H2 的 CSVREAD 直接讀取 CSV 檔，一個 INSERT ... SELECT 敘述寫入全部資料列，
+    // 不經過 JPA，也不需要在應用程式裡逐筆解析、綁定參數。
+    // 已經存在的 id 會略過，重新啟動不會重複寫入，也不會改變既有咖啡的版本號。
+    // location 可以是檔案路徑或 classpath:db/seed/coffees.csv，CSV 第一行必須是 ID,NAME 標題。
+    // 返回實際新增的筆數。
+    int insertMissingFromCsv(String location);
+}
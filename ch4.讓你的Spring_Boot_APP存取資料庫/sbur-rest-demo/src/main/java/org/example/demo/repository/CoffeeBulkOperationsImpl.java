@@ -0,0 +1,110 @@
+package org.example.demo.repository;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// CoffeeBulkOperations 的實作，名稱必須是「介面名稱 + Impl」，Spring Data 才找得到。
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.example.demo.model.Coffee;
+
+class CoffeeBulkOperationsImpl implements CoffeeBulkOperations
+{
+    // MERGE INTO ... KEY(id) 讓批次寫入保有 saveAll() 原本「有就更新、沒有就新增」的語意，
+    // 每一筆都從 coffee_version_seq 取新的版本號
+    private static final String UPSERT_SQL =
+            "MERGE INTO coffee (id, name, version) KEY(id) VALUES (?, ?, NEXT VALUE FOR coffee_version_seq)";
+
+    // 一段改名一個集合式 (set-based) 的 UPDATE：每筆的新名稱不同，以 CASE 依 id 選出，
+    // 再用 FINAL TABLE 取回實際更新的資料列，不存在的 id 不會出現在結果裡。
+    // %s 依序是 CASE 的 WHEN 子句和 IN 子句的參數位置，筆數依每一段的大小產生
+    private static final String RENAME_SQL =
+            "SELECT id, name FROM FINAL TABLE (UPDATE coffee SET name = CASE id %s END, "
+            + "version = NEXT VALUE FOR coffee_version_seq WHERE id IN (%s))";
+
+    // H2 在準備敘述時就要讀取 CSV 的欄位，CSVREAD 的檔名不能是參數，只能是字串常值
+    private static final String INSERT_FROM_CSV_SQL =
+            "INSERT INTO coffee (id, name, version) "
+            + "SELECT s.id, s.name, NEXT VALUE FOR coffee_version_seq FROM CSVREAD(%s) s "
+            + "WHERE NOT EXISTS (SELECT 1 FROM coffee c WHERE c.id = s.id)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    /**
+     * 建構函數
+     * @param jdbcTemplate 和 JPA 共用同一個 DataSource 與交易的 JdbcTemplate
+     * @param batchSize 每次送出的批次筆數，和 Hibernate 的 jdbc.batch_size 使用同一個設定
+     */
+    CoffeeBulkOperationsImpl(JdbcTemplate jdbcTemplate,
+                             @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:500}") int batchSize)
+    {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    @Transactional
+    public int upsertAll(Collection<Coffee> coffees)
+    {
+        jdbcTemplate.batchUpdate(UPSERT_SQL, coffees, batchSize, (ps, coffee) ->
+        {
+            ps.setString(1, coffee.getId());
+            ps.setString(2, coffee.getName());
+        });
+
+        return coffees.size();
+    }
+
+    @Override
+    @Transactional
+    public List<Coffee> renameAll(Collection<Coffee> coffees)
+    {
+        // 同一個 id 出現多次時以最後一筆為準，和逐筆更新的結果相同
+        Map<String, String> names = new LinkedHashMap<>(coffees.size() * 2);
+        for (Coffee coffee : coffees)
+        {
+            names.remove(coffee.getId());
+            names.put(coffee.getId(), coffee.getName());
+        }
+
+        List<Map.Entry<String, String>> entries = new ArrayList<>(names.entrySet());
+        List<Coffee> renamed = new ArrayList<>(entries.size());
+        for (int from = 0; from < entries.size(); from += batchSize)
+        {
+            List<Map.Entry<String, String>> chunk = entries.subList(from, Math.min(from + batchSize, entries.size()));
+            String sql = RENAME_SQL.formatted(
+                    String.join(" ", Collections.nCopies(chunk.size(), "WHEN ? THEN CAST(? AS VARCHAR(255))")),
+                    String.join(", ", Collections.nCopies(chunk.size(), "?")));
+
+            List<Object> parameters = new ArrayList<>(chunk.size() * 3);
+            for (Map.Entry<String, String> entry : chunk)
+            {
+                parameters.add(entry.getKey());
+                parameters.add(entry.getValue());   // 名稱可以是 null
+            }
+            chunk.forEach(entry -> parameters.add(entry.getKey()));
+
+            renamed.addAll(jdbcTemplate.query(sql,
+                    (row, i) -> new Coffee(row.getString(1), row.getString(2)), parameters.toArray()));
+        }
+        return renamed;
+    }
+
+    @Override
+    @Transactional
+    public int insertMissingFromCsv(String location)
+    {
+        // 位置來自設定檔，仍然依 SQL 字串常值的規則跳脫單引號
+        String literal = "'" + location.replace("'", "''") + "'";
+        return jdbcTemplate.update(INSERT_FROM_CSV_SQL.formatted(literal));
+    }
+}
@@ -3,20 +3,119 @@ package org.example.demo.repository;
 // 第四章 讓你的 Spring Boot APP 存取資料庫
 // 這個範例採用第三章的範例加入 H2 資料庫的功能。
 
+import jakarta.persistence.QueryHint;
+import jakarta.persistence.Tuple;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import org.example.demo.model.Coffee;
+import org.example.demo.model.CoffeeView;
 
-public interface CoffeeRepository extends JpaRepository<Coffee, String>
+public interface CoffeeRepository extends JpaRepository<Coffee, String>, CoffeeBulkOperations
 {
     // Spring Data JPA 會自動根據方法名稱產生 SQL 查詢：
     // SELECT * FROM coffee WHERE name = ?
     Optional<Coffee> findByName(String name);
 
     // 或是，如果你需要忽略大小寫的查詢，可以這樣寫：
-    Optional<Coffee> findByNameIgnoreCase(String name);
+    // 自動產生的 upper(name) = upper(?) 用不到索引，所以改查 V2 遷移腳本建立、有索引的 name_lower 欄位
+    String FIND_BY_NAME_IGNORE_CASE_SQL = "SELECT * FROM coffee WHERE name_lower = LOWER(:name)";
+
+    @Query(value = FIND_BY_NAME_IGNORE_CASE_SQL, nativeQuery = true)
+    Optional<Coffee> findByNameIgnoreCase(@Param("name") String name);
+
+    // 唯讀投影查詢：只取 id、name、version 三個欄位直接建立 CoffeeView，不建立實體，
+    // 唯讀交易會把 flush 模式設為 MANUAL，查詢提示再告訴 Hibernate 不需要保存快照。
+    @Transactional(readOnly = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query("select new org.example.demo.model.CoffeeView(c.id, c.name, c.version) from Coffee c")
+    List<CoffeeView> findAllViews();
+
+    @Transactional(readOnly = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query("select new org.example.demo.model.CoffeeView(c.id, c.name, c.version) from Coffee c where c.id = :id")
+    Optional<CoffeeView> findViewById(@Param("id") String id);
+
+    @Transactional(readOnly = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query(value = "SELECT id, name, version FROM coffee WHERE name_lower = LOWER(:name)", nativeQuery = true)
+    Optional<Tuple> findRowByNameIgnoreCase(@Param("name") String name);
+
+    // 原生查詢直接產生 record 時，Hibernate 要求 record 只有一個 3 個參數的建構函數，
+    // CoffeeView 另外有字串 id 的建構函數，所以先取得 Tuple 再建立
+    default Optional<CoffeeView> findViewByNameIgnoreCase(String name)
+    {
+        return findRowByNameIgnoreCase(name).map(row -> new CoffeeView(
+                row.get(0, String.class), row.get(1, String.class), row.get(2, Number.class).longValue()));
+    }
+
+    // 一次查詢多個 id：SELECT id, name, version FROM coffee WHERE id IN (?, ?, ...)
+    // 呼叫端要自行把 id 切成有上限的段落，避免 IN 子句過長
+    @Transactional(readOnly = true)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "MANUAL")
+    })
+    @Query("select new org.example.demo.model.CoffeeView(c.id, c.name, c.version) from Coffee c where c.id in :ids")
+    List<CoffeeView> findViewsByIdIn(@Param("ids") Collection<String> ids);
+
+    // 鍵集分頁 (keyset / seek pagination)：以上一頁最後一筆的 id 為起點往後取，
+    // 不像 OFFSET 分頁那樣越後面的頁越慢。
+    // 返回型別是 CoffeeView，Spring Data 只會 SELECT id, name, version 並直接建立投影。
+    // SELECT id, name, version FROM coffee ORDER BY id LIMIT ?
+    @Transactional(readOnly = true)
+    List<CoffeeView> findAllByOrderByIdAsc(Limit limit);
+
+    // SELECT id, name, version FROM coffee WHERE id > ? ORDER BY id LIMIT ?
+    @Transactional(readOnly = true)
+    List<CoffeeView> findByIdGreaterThanOrderByIdAsc(String id, Limit limit);
+
+    // 以串流逐筆讀取全部資料，JDBC 每次只抓 fetch size 筆，搭配 detach 讓記憶體用量固定。
+    // 呼叫端必須在交易內使用，並且用完要關閉串流。
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select c from Coffee c")
+    Stream<Coffee> streamAll();
+
+    // 一個 SQL 敘述完成「有就更新、沒有就新增」。
+    // save() 遇到自行指定的 String id 會走 merge()，先 SELECT 再 INSERT/UPDATE；
+    // 這裡改用 H2 的 MERGE INTO ... KEY(id)，並用 OLD TABLE 取回被更新前的資料列：
+    // 返回 1 表示原本就存在（更新），返回 0 表示新增。
+    // 版本號從 coffee_version_seq 取下一個值，不論新增或更新都會變大。
+    String UPSERT_SQL = "MERGE INTO coffee (id, name, version) KEY(id) VALUES (:id, :name, NEXT VALUE FOR coffee_version_seq)";
+
+    @Transactional
+    @Query(value = "SELECT COUNT(*) FROM OLD TABLE (" + UPSERT_SQL + ")", nativeQuery = true)
+    long upsert(@Param("id") String id, @Param("name") String name);
+
+    // 一個 DELETE 敘述刪除多筆：DELETE FROM coffee WHERE id IN (?, ?, ...)
+    // deleteById() 會先 SELECT 載入實體再刪除；這裡直接刪，並和 upsert 一樣用 OLD TABLE 取回被刪除的資料列，
+    // 返回實際刪除的 id，不存在的 id 不會出現在結果裡。
+    // 呼叫端要自行把 id 切成有上限的段落。
+    @Transactional
+    @Query(value = "SELECT id FROM OLD TABLE (DELETE FROM coffee WHERE id IN (:ids))", nativeQuery = true)
+    List<String> deleteByIdsReturningIds(@Param("ids") Collection<String> ids);
 }
 
 
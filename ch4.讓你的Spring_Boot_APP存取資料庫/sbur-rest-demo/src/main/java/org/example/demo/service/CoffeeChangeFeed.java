@@ -0,0 +1,355 @@
+package org.example.demo.service;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 以 Server-Sent Events 推送咖啡的變更，下游快取不必再定時重新取得整個 GET /coffees。
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.example.demo.model.CoffeeChange;
+
+/**
+ * 咖啡變更串流
+ * 每個變更取得一個遞增的序號，最近 coffee.changes.history 筆保留在環狀緩衝區，
+ * 斷線的訂閱者以 Last-Event-ID 重新連線時，從緩衝區補送錯過的變更。
+ * 每個訂閱者有自己的待送緩衝區，同一個 id 的變更只保留最新的一筆（合併），
+ * 待送的 id 超過 coffee.changes.subscriber-buffer 個時，整個緩衝區丟棄，改送一個 reset 事件要求重新取得咖啡列表。
+ * 寫入端只把變更放進緩衝區，實際的網路傳送由另外的執行緒進行，慢的訂閱者不會拖慢寫入。
+ * 變更由 CoffeeService 在每個寫入提交後發布：寫入大多是原生 SQL 和 JDBC 批次，JPA 的實體監聽器看不到。
+ */
+@Component
+public class CoffeeChangeFeed
+{
+    // 事件 id 的前綴：序號在重新啟動後會從 0 開始，加上啟動時間才能認出重新啟動前的 Last-Event-ID
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    // 最近的變更，序號 s 存放在 history[s % history.length]
+    private final CoffeeChange[] history;
+    private long sequence = 0;      // 只在 synchronized (this) 內使用
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final int subscriberBuffer;
+    private final int maxSubscribers;
+    private final long timeoutMillis;
+
+    // 傳送事件的執行緒，每個訂閱者同一時間最多佔用一個，閒置 60 秒後結束
+    private final ThreadPoolExecutor senders;
+
+    private final Counter resets;
+
+
+    /**
+     * 構造函數
+     * @param history 環狀緩衝區保留的變更數量，決定斷線多久之內還能續傳
+     * @param subscriberBuffer 每個訂閱者最多待送的 id 數量
+     * @param maxSubscribers 同時訂閱的上限
+     * @param timeout 每個訂閱的最長時間，到期後由客戶端帶 Last-Event-ID 重新連線
+     * @param registry 指標註冊表
+     */
+    public CoffeeChangeFeed(@Value("${coffee.changes.history:10000}") int history,
+                            @Value("${coffee.changes.subscriber-buffer:1000}") int subscriberBuffer,
+                            @Value("${coffee.changes.max-subscribers:256}") int maxSubscribers,
+                            @Value("${coffee.changes.timeout:30m}") Duration timeout,
+                            MeterRegistry registry)
+    {
+        this.history = new CoffeeChange[history];
+        this.subscriberBuffer = subscriberBuffer;
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMillis = timeout.toMillis();
+
+        AtomicInteger threads = new AtomicInteger();
+        this.senders = new ThreadPoolExecutor(maxSubscribers, maxSubscribers, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r ->
+                {
+                    Thread thread = new Thread(r, "coffee-changes-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.senders.allowCoreThreadTimeOut(true);
+
+        Gauge.builder("coffee.changes.subscribers", subscribers, List::size)
+                .description("目前訂閱變更串流的連線數")
+                .register(registry);
+        this.resets = Counter.builder("coffee.changes.resets")
+                .description("因為緩衝區溢出或無法續傳而送出 reset 事件的次數")
+                .register(registry);
+    }
+
+
+    /**
+     * 發布一個變更，分送給所有訂閱者的待送緩衝區，不會等待傳送
+     * @param type 變更類型
+     * @param id 咖啡的唯一識別碼
+     * @param name 變更後的名稱，刪除時為 null
+     */
+    public synchronized void publish(CoffeeChange.Type type, String id, String name)
+    {
+        CoffeeChange change = new CoffeeChange(++sequence, type, id, name);
+        history[(int) (change.seq() % history.length)] = change;
+        for (Subscriber subscriber : subscribers)
+        {
+            subscriber.offer(change);
+        }
+    }
+
+
+    /**
+     * 開始一個訂閱
+     * 第一個事件是 ready（從 Last-Event-ID 或現在開始接續）或 reset（錯過的變更已經無法補送）。
+     * 沒有 Last-Event-ID 的客戶端應該在收到 ready 之後才取得 GET /coffees，之後的變更都不會漏掉。
+     * @param lastEventId 客戶端最後收到的事件 id；第一次訂閱時為 null
+     * @return 送出事件的 SseEmitter
+     * @throws IllegalStateException 訂閱數已經到達上限
+     */
+    public SseEmitter subscribe(String lastEventId)
+    {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter);
+        CoffeeChange first;
+
+        synchronized (this)
+        {
+            if (subscribers.size() >= maxSubscribers)
+            {
+                throw new IllegalStateException("變更串流的訂閱數已經到達上限 " + maxSubscribers);
+            }
+
+            if (lastEventId == null || lastEventId.isBlank())
+            {
+                first = new CoffeeChange(sequence, CoffeeChange.Type.READY, null, null);
+            }
+            else
+            {
+                long resumeAfter = parseSequence(lastEventId);
+                List<CoffeeChange> missed = (resumeAfter < 0) ? null : since(resumeAfter);
+                if (missed == null)
+                {
+                    first = new CoffeeChange(sequence, CoffeeChange.Type.RESET, null, null);
+                    resets.increment();
+                }
+                else
+                {
+                    first = new CoffeeChange(resumeAfter, CoffeeChange.Type.READY, null, null);
+                    missed.forEach(subscriber::offer);
+                }
+            }
+            subscribers.add(subscriber);
+        }
+
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscriber.close());
+        subscriber.start(first);
+        return emitter;
+    }
+
+
+    /**
+     * 應用程式關閉時結束所有訂閱，客戶端會帶 Last-Event-ID 重新連線
+     */
+    @PreDestroy
+    public void shutdown()
+    {
+        for (Subscriber subscriber : subscribers)
+        {
+            subscriber.emitter.complete();
+        }
+        senders.shutdownNow();
+    }
+
+
+    // resumeAfter 之後的所有變更；已經不在環狀緩衝區裡，或序號比目前還新時返回 null
+    private List<CoffeeChange> since(long resumeAfter)
+    {
+        long oldest = Math.max(1, sequence - history.length + 1);
+        if (resumeAfter > sequence || resumeAfter + 1 < oldest)
+        {
+            return null;
+        }
+
+        List<CoffeeChange> missed = new ArrayList<>((int) (sequence - resumeAfter));
+        for (long seq = resumeAfter + 1; seq <= sequence; seq++)
+        {
+            missed.add(history[(int) (seq % history.length)]);
+        }
+        return missed;
+    }
+
+    // 事件 id 是「啟動時間-序號」；不是這次啟動發出的 id 返回 -1
+    private long parseSequence(String eventId)
+    {
+        String prefix = epoch + "-";
+        if (!eventId.startsWith(prefix))
+        {
+            return -1;
+        }
+        try
+        {
+            return Long.parseLong(eventId.substring(prefix.length()));
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    private SseEmitter.SseEventBuilder event(CoffeeChange change)
+    {
+        String name = switch (change.type())
+        {
+            case READY -> "ready";
+            case RESET -> "reset";
+            default -> "change";
+        };
+        return SseEmitter.event()
+                .id(epoch + "-" + change.seq())
+                .name(name)
+                .data(change, MediaType.APPLICATION_JSON);
+    }
+
+
+    /**
+     * 一個訂閱者和它的待送緩衝區
+     * 待送緩衝區以 id 為鍵，依序號排序：同一個 id 再次變更時先移除再放到最後，
+     * 送出的事件序號一定遞增，客戶端的 Last-Event-ID 不會跳過還沒收到的變更。
+     */
+    private final class Subscriber
+    {
+        private final SseEmitter emitter;
+
+        // 以下欄位都只在 synchronized (this) 內使用
+        private final Map<String, CoffeeChange> pending = new LinkedHashMap<>();
+        private CoffeeChange reset;          // 溢出時要先送出的 reset 事件
+        private boolean started;             // ready / reset 送出之前不傳送變更
+        private boolean scheduled;           // 已經有一個傳送工作在執行或排隊
+        private boolean closed;
+
+        Subscriber(SseEmitter emitter)
+        {
+            this.emitter = emitter;
+        }
+
+        synchronized void offer(CoffeeChange change)
+        {
+            if (closed)
+            {
+                return;
+            }
+
+            pending.remove(change.id());
+            pending.put(change.id(), change);
+            if (pending.size() > subscriberBuffer)
+            {
+                // 跟不上的訂閱者：丟棄待送的變更，改送 reset，客戶端重新取得列表後從這個序號接續
+                // 還沒送出的 reset 直接改成新的序號，同一次落後只計一次
+                pending.clear();
+                if (reset == null)
+                {
+                    resets.increment();
+                }
+                reset = new CoffeeChange(change.seq(), CoffeeChange.Type.RESET, null, null);
+            }
+            schedule();
+        }
+
+        void start(CoffeeChange first)
+        {
+            try
+            {
+                // 控制器返回 emitter 之前送出的事件會先暫存，不會在這裡阻塞
+                emitter.send(event(first));
+            }
+            catch (IOException e)
+            {
+                close();
+                return;
+            }
+
+            synchronized (this)
+            {
+                started = true;
+                schedule();
+            }
+        }
+
+        void close()
+        {
+            synchronized (this)
+            {
+                closed = true;
+                pending.clear();
+                reset = null;
+            }
+            subscribers.remove(this);
+        }
+
+        // 呼叫端必須持有 synchronized (this)
+        private void schedule()
+        {
+            if (started && !scheduled && !closed && (reset != null || !pending.isEmpty()))
+            {
+                scheduled = true;
+                senders.execute(this::drain);
+            }
+        }
+
+        // 在傳送執行緒上執行：每次取出目前所有待送的變更，送完再看有沒有新的
+        private void drain()
+        {
+            while (true)
+            {
+                CoffeeChange resetToSend;
+                List<CoffeeChange> batch;
+                synchronized (this)
+                {
+                    if (closed || (reset == null && pending.isEmpty()))
+                    {
+                        scheduled = false;
+                        return;
+                    }
+                    resetToSend = reset;
+                    reset = null;
+                    batch = new ArrayList<>(pending.values());
+                    pending.clear();
+                }
+
+                try
+                {
+                    if (resetToSend != null)
+                    {
+                        emitter.send(event(resetToSend));
+                    }
+                    for (CoffeeChange change : batch)
+                    {
+                        emitter.send(event(change));
+                    }
+                }
+                catch (IOException | IllegalStateException e)
+                {
+                    // 連線已經中斷或 emitter 已經結束
+                    close();
+                    emitter.completeWithError(e);
+                    return;
+                }
+            }
+        }
+    }
+}
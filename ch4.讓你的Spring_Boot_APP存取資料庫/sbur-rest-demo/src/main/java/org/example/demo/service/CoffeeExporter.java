@@ -0,0 +1,94 @@
+package org.example.demo.service;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 把整張 coffee 表以串流方式直接寫進回應，不先載入成一個 List。
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import org.example.demo.model.Coffee;
+import org.example.demo.repository.CoffeeRepository;
+
+/**
+ * 咖啡匯出器
+ * 在唯讀交易中開啟 Stream<Coffee>，每寫出一筆就把它從持久化上下文中 detach，
+ * 不論資料有多少筆，記憶體裡只會留著 JDBC fetch size 那麼多的實體。
+ */
+@Component
+public class CoffeeExporter
+{
+    // 每寫出這麼多筆就 flush 一次，讓客戶端可以邊收邊處理
+    private static final int FLUSH_EVERY = 500;
+
+    private final CoffeeRepository coffeeRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnlyTransaction;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * 建構函數
+     * @param coffeeRepository 咖啡存儲庫
+     * @param objectMapper 序列化咖啡用的 ObjectMapper
+     * @param transactionManager 交易管理器，串流查詢必須在交易內執行
+     */
+    public CoffeeExporter(CoffeeRepository coffeeRepository,
+                          ObjectMapper objectMapper,
+                          PlatformTransactionManager transactionManager)
+    {
+        this.coffeeRepository = coffeeRepository;
+        this.objectMapper = objectMapper;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+
+    /**
+     * 以 NDJSON 格式（每行一筆咖啡）寫出全部咖啡
+     * @param out 回應的輸出串流
+     */
+    public void writeNdjson(OutputStream out)
+    {
+        readOnlyTransaction.executeWithoutResult(status ->
+        {
+            try (Stream<Coffee> coffees = coffeeRepository.streamAll();
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(out))
+            {
+                generator.setRootValueSeparator(new SerializedString("\n"));
+
+                long written = 0;
+                Iterator<Coffee> iterator = coffees.iterator();
+                while (iterator.hasNext())
+                {
+                    Coffee coffee = iterator.next();
+                    generator.writeObject(coffee);
+                    entityManager.detach(coffee);       // 寫完就放掉，持久化上下文不會越長越大
+
+                    if (++written % FLUSH_EVERY == 0)
+                    {
+                        generator.flush();
+                    }
+                }
+
+                generator.writeRaw('\n');
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,445 @@
+package org.example.demo.service;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 在 CoffeeRepository 前面加一層 Caffeine 讀取快取，並在每一個寫入路徑上讓快取失效。
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.example.demo.model.Coffee;
+import org.example.demo.model.CoffeeChange;
+import org.example.demo.model.CoffeeId;
+import org.example.demo.model.CoffeeLookup;
+import org.example.demo.model.CoffeeView;
+import org.example.demo.repository.CoffeeRepository;
+
+/**
+ * 咖啡服務
+ * 讀取一律走唯讀投影 (CoffeeView)，不建立受管理的實體。
+ * 快取分兩層：coffeeById 存 id -> 咖啡；coffeeByName 存小寫名稱 -> id。
+ * 快取裡的 id 都是 CoffeeId，UUID 以兩個 long 存放；請求帶來的字串 id 在查快取之前解析一次。
+ * 名稱快取只記 id，命中後還是透過 coffeeById 取咖啡並核對名稱，
+ * 所以咖啡改名或被刪除時，舊名稱的項目就算還沒過期也不會返回錯誤的結果。
+ * 每一個寫入路徑提交後都會遞增變更計數，GET /coffees 以它產生 ETag，不需要查詢資料庫。
+ * 寫入提交後也會發布到變更串流 (GET /coffees/changes)，下游快取不必定時重新取得整個列表。
+ * 快取沒有命中時，同一個 id 或名稱同時進行的查詢會合併成一個 (SingleFlight)。
+ * 查詢結果只有在查詢期間這個鍵沒有失效過時才放進快取，否則
+ * 「查詢讀到舊資料 → 寫入提交並讓快取失效 → 查詢把舊資料放回快取」會讓舊的名稱和 ETag 一直留到過期。
+ */
+@Service
+public class CoffeeService
+{
+    public static final String BY_ID_CACHE = "coffeeById";
+    public static final String BY_NAME_CACHE = "coffeeByName";
+
+    // 多筆查詢時，每個 IN 子句最多帶的 id 數量
+    static final int IN_CLAUSE_CHUNK_SIZE = 500;
+
+    // 失效世代的分段數，必須是 2 的次方
+    private static final int INVALIDATION_STRIPES = 1024;
+
+    private final CoffeeRepository coffeeRepository;
+    private final Cache byIdCache;
+    private final Cache byNameCache;
+    private final CoffeeChangeFeed changeFeed;
+
+    // 快取沒有命中時，合併同時進行的相同查詢；名稱以小寫為鍵，和名稱快取相同
+    private final SingleFlight<CoffeeId, Optional<CoffeeView>> byIdFlights;
+    private final SingleFlight<String, Optional<CoffeeView>> byNameFlights;
+
+    // 整個咖啡集合的變更計數：只增不減，每次寫入提交後加一
+    private final AtomicLong changes = new AtomicLong();
+
+    // 快取的失效世代：鍵失效時先遞增再從快取移除，查詢之前記下，查詢之後比對。
+    // 以鍵的雜湊分段計數，記憶體固定；不同的鍵落在同一段，只會讓查詢結果少放一次快取
+    private final AtomicLongArray keyInvalidations = new AtomicLongArray(INVALIDATION_STRIPES);
+    // 任何鍵失效都會遞增，依名稱查詢時比對它
+    private final AtomicLong anyInvalidation = new AtomicLong();
+
+    /**
+     * 建構函數
+     * @param coffeeRepository 咖啡存儲庫
+     * @param cacheManager Spring Boot 依 spring.cache.* 建立的 Caffeine 快取管理器
+     * @param changeFeed 咖啡變更串流
+     * @param coalesceTimeout 等待同時進行的相同查詢的最長時間
+     * @param registry 指標註冊表
+     */
+    public CoffeeService(CoffeeRepository coffeeRepository, CacheManager cacheManager, CoffeeChangeFeed changeFeed,
+                         @Value("${coffee.lookup.coalesce-timeout:2s}") Duration coalesceTimeout,
+                         MeterRegistry registry)
+    {
+        this.coffeeRepository = coffeeRepository;
+        this.byIdCache = Objects.requireNonNull(cacheManager.getCache(BY_ID_CACHE));
+        this.byNameCache = Objects.requireNonNull(cacheManager.getCache(BY_NAME_CACHE));
+        this.changeFeed = changeFeed;
+        this.byIdFlights = new SingleFlight<>("id", coalesceTimeout, registry);
+        this.byNameFlights = new SingleFlight<>("name", coalesceTimeout, registry);
+    }
+
+
+    /**
+     * 整個咖啡集合的版本號
+     * 必須在讀取資料之前取得：讀取期間如果有寫入，版本號偏舊只會讓下一次請求多傳一次，不會讓客戶端錯過變更
+     * @return 目前的變更計數
+     */
+    public long collectionVersion()
+    {
+        return changes.get();
+    }
+
+
+    /**
+     * 獲取所有咖啡
+     * @return 所有咖啡的唯讀視圖
+     */
+    public List<CoffeeView> findAll()
+    {
+        return coffeeRepository.findAllViews();
+    }
+
+
+    /**
+     * 根據 ID 查找咖啡，先查快取
+     * @param id 咖啡的唯一識別碼
+     * @return 找到時返回包含該咖啡的 Optional；否則返回空的 Optional
+     * @throws org.springframework.dao.QueryTimeoutException 等待同一個 id 進行中的查詢逾時
+     */
+    public Optional<CoffeeView> findById(String id)
+    {
+        return findById(CoffeeId.of(id));
+    }
+
+    private Optional<CoffeeView> findById(CoffeeId id)
+    {
+        CoffeeView cached = byIdCache.get(id, CoffeeView.class);
+        if (cached != null)
+        {
+            return Optional.of(cached);
+        }
+
+        // 找不到的 id 不快取，避免之後新增了還一直返回空的
+        // 放進快取之後才完成查詢，查詢完成後才到達的請求會直接命中快取
+        return byIdFlights.load(id, () ->
+        {
+            long generation = generation(id);
+            Optional<CoffeeView> coffee = coffeeRepository.findViewById(id.toString());
+            coffee.ifPresent(c -> putUnlessInvalidated(byIdCache, c.id(), c, generation, keyInvalidations, stripe(id)));
+            return coffee;
+        });
+    }
+
+
+    /**
+     * 根據多個 ID 查找咖啡
+     * 快取裡有的直接取用，其餘的 id 切成每段 IN_CLAUSE_CHUNK_SIZE 個，每段一個 IN 查詢
+     * @param ids 咖啡的唯一識別碼集合
+     * @return 找到的咖啡（依請求順序，重複的 id 只出現一次）和找不到的 id
+     */
+    public CoffeeLookup findAllById(Collection<String> ids)
+    {
+        Collection<String> unique = new LinkedHashSet<>(ids);
+        Map<CoffeeId, CoffeeView> resolved = new HashMap<>(unique.size() * 2);
+        List<String> misses = new ArrayList<>();
+
+        for (String id : unique)
+        {
+            CoffeeView cached = byIdCache.get(CoffeeId.of(id), CoffeeView.class);
+            if (cached != null)
+            {
+                resolved.put(cached.id(), cached);
+            }
+            else
+            {
+                misses.add(id);
+            }
+        }
+
+        for (int from = 0; from < misses.size(); from += IN_CLAUSE_CHUNK_SIZE)
+        {
+            List<String> chunk = misses.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, misses.size()));
+            Map<CoffeeId, Long> generations = new HashMap<>(chunk.size() * 2);
+            for (String id : chunk)
+            {
+                CoffeeId key = CoffeeId.of(id);
+                generations.put(key, generation(key));
+            }
+            for (CoffeeView coffee : coffeeRepository.findViewsByIdIn(chunk))
+            {
+                resolved.put(coffee.id(), coffee);
+                putUnlessInvalidated(byIdCache, coffee.id(), coffee, generations.get(coffee.id()), keyInvalidations, stripe(coffee.id()));
+            }
+        }
+
+        List<CoffeeView> found = new ArrayList<>(resolved.size());
+        List<String> missing = new ArrayList<>();
+        for (String id : unique)
+        {
+            CoffeeView coffee = resolved.get(CoffeeId.of(id));
+            if (coffee == null)
+            {
+                missing.add(id);
+            }
+            else
+            {
+                found.add(coffee);
+            }
+        }
+        return new CoffeeLookup(found, missing);
+    }
+
+
+    /**
+     * 根據名稱查找咖啡（忽略大小寫），先查快取
+     * @param name 咖啡的名稱
+     * @return 找到時返回包含該咖啡的 Optional；否則返回空的 Optional
+     * @throws org.springframework.dao.QueryTimeoutException 等待同一個名稱進行中的查詢逾時
+     */
+    public Optional<CoffeeView> findByName(String name)
+    {
+        String key = nameKey(name);
+        CoffeeId id = byNameCache.get(key, CoffeeId.class);
+        if (id != null)
+        {
+            Optional<CoffeeView> coffee = findById(id);
+            if (coffee.isPresent() && name.equalsIgnoreCase(coffee.get().name()))
+            {
+                return coffee;
+            }
+            byNameCache.evict(key);     // 這個 id 已經被刪除或改名了
+        }
+
+        return byNameFlights.load(key, () ->
+        {
+            // 查詢之前還不知道 id，刪除這個 id 時也不一定知道它的名稱，所以比對任何鍵的失效
+            long generation = anyInvalidation.get();
+            Optional<CoffeeView> coffee = coffeeRepository.findViewByNameIgnoreCase(name);
+            coffee.ifPresent(c ->
+            {
+                putUnlessInvalidated(byIdCache, c.id(), c, generation, null, 0);
+                putUnlessInvalidated(byNameCache, key, c.id(), generation, null, 0);
+            });
+            return coffee;
+        });
+    }
+
+
+    /**
+     * 新增或更新一個咖啡
+     * 和 upsert() 相同以 MERGE 寫入；JPA 的 save() 會拿請求本文裡版本號 0 的實體去 merge，
+     * 遇到已經存在的咖啡會因為 @Version 不符而失敗
+     * @param coffee 要存儲的咖啡
+     * @return 返回存儲後的咖啡
+     */
+    public Coffee save(Coffee coffee)
+    {
+        upsert(coffee);
+        return coffee;
+    }
+
+
+    /**
+     * 以一個 MERGE 敘述新增或更新一個咖啡
+     * @param coffee 要存儲的咖啡，id 必須已經設定
+     * @return 原本就存在（更新）返回 true；新增返回 false
+     */
+    public boolean upsert(Coffee coffee)
+    {
+        boolean updated = coffeeRepository.upsert(coffee.getId(), coffee.getName()) > 0;
+        evict(coffee);
+        changes.incrementAndGet();
+        changeFeed.publish(updated ? CoffeeChange.Type.UPDATED : CoffeeChange.Type.CREATED, coffee.getId(), coffee.getName());
+        return updated;
+    }
+
+
+    /**
+     * 以 JDBC 批次新增或更新多個咖啡
+     * @param coffees 要存儲的咖啡集合
+     * @return 寫入的筆數
+     */
+    public int saveAll(Collection<Coffee> coffees)
+    {
+        int written = coffeeRepository.upsertAll(coffees);
+        coffees.forEach(this::evict);
+        changes.incrementAndGet();
+        coffees.forEach(c -> changeFeed.publish(CoffeeChange.Type.UPSERTED, c.getId(), c.getName()));
+        return written;
+    }
+
+
+    /**
+     * 從 CSV 檔匯入咖啡，已經存在的 id 會略過
+     * 只會新增咖啡，id 快取不會有舊資料；名稱快取記的是同名咖啡中的某一個，清掉讓它重新查詢
+     * CSVREAD 在資料庫裡直接新增，不知道新增了哪些 id，變更串流改送 reset
+     * @param location CSV 檔的位置，例如 classpath:db/seed/coffees.csv
+     * @return 實際新增的筆數
+     */
+    public int importCsv(String location)
+    {
+        int inserted = coffeeRepository.insertMissingFromCsv(location);
+        if (inserted > 0)
+        {
+            byNameCache.clear();
+            changes.incrementAndGet();
+            changeFeed.publish(CoffeeChange.Type.RESET, null, null);
+        }
+        return inserted;
+    }
+
+
+    /**
+     * 根據 ID 刪除咖啡，只發出一個 DELETE 敘述
+     * @param id 咖啡的唯一識別碼
+     */
+    public void deleteById(String id)
+    {
+        List<String> deleted = coffeeRepository.deleteByIdsReturningIds(List.of(id));
+        evictId(id);
+        changes.incrementAndGet();
+        if (!deleted.isEmpty())
+        {
+            changeFeed.publish(CoffeeChange.Type.DELETED, id, null);
+        }
+    }
+
+
+    /**
+     * 批次刪除咖啡
+     * id 切成每段 IN_CLAUSE_CHUNK_SIZE 個，每段一個 DELETE 敘述、一個交易，
+     * 每段提交後才讓快取失效，避免其他請求在提交前把舊資料重新放回快取
+     * @param ids 咖啡的唯一識別碼集合
+     * @return 實際刪除的筆數
+     */
+    public int deleteAllById(Collection<String> ids)
+    {
+        List<String> unique = List.copyOf(new LinkedHashSet<>(ids));
+        int deleted = 0;
+        for (int from = 0; from < unique.size(); from += IN_CLAUSE_CHUNK_SIZE)
+        {
+            List<String> chunk = unique.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, unique.size()));
+            List<String> chunkDeleted = coffeeRepository.deleteByIdsReturningIds(chunk);
+            chunk.forEach(this::evictId);
+            changes.incrementAndGet();
+            // 只發布真的被刪除的 id，不存在的 id 不會出現在變更串流裡
+            chunkDeleted.forEach(id -> changeFeed.publish(CoffeeChange.Type.DELETED, id, null));
+            deleted += chunkDeleted.size();
+        }
+        return deleted;
+    }
+
+
+    /**
+     * 批次改名，只更新已經存在的咖啡
+     * @param coffees 帶有 id 和新名稱的咖啡集合
+     * @return 實際更新的筆數
+     */
+    public int renameAll(Collection<Coffee> coffees)
+    {
+        List<Coffee> renamed = coffeeRepository.renameAll(coffees);
+        coffees.forEach(this::evict);
+        changes.incrementAndGet();
+        renamed.forEach(c -> changeFeed.publish(CoffeeChange.Type.UPDATED, c.getId(), c.getName()));
+        return renamed.size();
+    }
+
+
+    // 寫入後讓快取失效：舊名稱（從快取中的舊值得知）、新名稱和 id 本身
+    private void evict(Coffee coffee)
+    {
+        evictId(coffee.getId());
+        if (coffee.getName() != null)
+        {
+            evictName(nameKey(coffee.getName()));
+        }
+    }
+
+    private void evictId(String id)
+    {
+        CoffeeId key = CoffeeId.of(id);
+        CoffeeView previous = peek(key);
+        if (previous != null && previous.name() != null)
+        {
+            evictName(nameKey(previous.name()));
+        }
+        invalidate(key);
+        byIdCache.evict(key);
+        byIdFlights.forget(key);
+    }
+
+    private void evictName(String key)
+    {
+        invalidate(key);
+        byNameCache.evict(key);
+        byNameFlights.forget(key);
+    }
+
+    // 必須在從快取移除之前呼叫，見 putUnlessInvalidated()
+    private void invalidate(Object key)
+    {
+        keyInvalidations.incrementAndGet(stripe(key));
+        anyInvalidation.incrementAndGet();
+    }
+
+    private long generation(Object key)
+    {
+        return keyInvalidations.get(stripe(key));
+    }
+
+    // 查詢之前記下的世代沒有改變才放進快取。先放再檢查一次：
+    // 失效的遞增發生在檢查之前，這裡會把剛放的移除；發生在檢查之後，失效本身的 evict() 在放入之後執行，一樣會移除
+    private void putUnlessInvalidated(Cache cache, Object key, Object value, long generation,
+                                      AtomicLongArray generations, int stripe)
+    {
+        if (current(generations, stripe) != generation)
+        {
+            return;
+        }
+        cache.put(key, value);
+        if (current(generations, stripe) != generation)
+        {
+            cache.evict(key);
+        }
+    }
+
+    // generations 為 null 時比對任何鍵的失效
+    private long current(AtomicLongArray generations, int stripe)
+    {
+        return (generations == null) ? anyInvalidation.get() : generations.get(stripe);
+    }
+
+    private static int stripe(Object key)
+    {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (INVALIDATION_STRIPES - 1);
+    }
+
+    // 不經過 Cache.get()，才不會把失效前的檢查也算進命中率
+    @SuppressWarnings("unchecked")
+    private CoffeeView peek(CoffeeId id)
+    {
+        Object previous = ((com.github.benmanes.caffeine.cache.Cache<Object, Object>) byIdCache.getNativeCache())
+                .policy().getIfPresentQuietly(id);
+        return (previous instanceof CoffeeView coffee) ? coffee : null;
+    }
+
+    private static String nameKey(String name)
+    {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
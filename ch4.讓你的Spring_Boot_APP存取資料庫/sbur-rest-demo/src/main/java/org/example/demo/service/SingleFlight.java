@@ -0,0 +1,145 @@
+package org.example.demo.service;
+
+// 第四章 讓你的 Spring Boot APP 存取資料庫
+// 促銷期間上千個請求同時查詢同一個 id 或名稱，快取還沒有資料時，每個請求都會各自送出一次相同的查詢。
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 合併同時進行的相同查詢 (single flight)
+ * 同一個鍵第一個到達的請求（leader）在自己的執行緒上執行查詢，
+ * 查詢完成之前到達的請求（follower）不再查詢資料庫，等待 leader 的結果或例外。
+ * 查詢完成後立即移除，結果不會留在這裡，快取仍然是 CoffeeService 的 Caffeine 快取。
+ * 指標 coffee.lookup.coalesced 以 role 標籤區分 leader 和 follower，
+ * follower / (leader + follower) 就是被合併掉的查詢比例。
+ * @param <K> 查詢的鍵
+ * @param <V> 查詢的結果
+ */
+public class SingleFlight<K, V>
+{
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Duration timeout;
+
+    private final Counter leaders;
+    private final Counter followers;
+    private final Counter timeouts;
+
+
+    /**
+     * 構造函數
+     * @param lookup 查詢的名稱，作為指標的 lookup 標籤，例如 id、name
+     * @param timeout follower 等待 leader 結果的最長時間
+     * @param registry 指標註冊表
+     */
+    public SingleFlight(String lookup, Duration timeout, MeterRegistry registry)
+    {
+        this.timeout = timeout;
+        this.leaders = Counter.builder("coffee.lookup.coalesced")
+                .description("查詢的次數，leader 實際查詢資料庫，follower 共用 leader 的結果")
+                .tag("lookup", lookup)
+                .tag("role", "leader")
+                .register(registry);
+        this.followers = Counter.builder("coffee.lookup.coalesced")
+                .description("查詢的次數，leader 實際查詢資料庫，follower 共用 leader 的結果")
+                .tag("lookup", lookup)
+                .tag("role", "follower")
+                .register(registry);
+        this.timeouts = Counter.builder("coffee.lookup.coalesced.timeouts")
+                .description("follower 等待 leader 的結果逾時的次數")
+                .tag("lookup", lookup)
+                .register(registry);
+        Gauge.builder("coffee.lookup.in.flight", inFlight, Map::size)
+                .description("正在查詢資料庫的不同鍵數量")
+                .tag("lookup", lookup)
+                .register(registry);
+    }
+
+
+    /**
+     * 執行查詢；同一個鍵已經有查詢在進行時，等待它的結果
+     * leader 的查詢拋出例外時，所有 follower 收到同一個例外，而且不會記住失敗，下一個請求重新查詢
+     * @param key 查詢的鍵
+     * @param loader 實際的查詢，只在 leader 的執行緒上執行
+     * @return 查詢的結果
+     * @throws QueryTimeoutException follower 等待超過 timeout，或等待時被中斷
+     */
+    public V load(K key, Supplier<V> loader)
+    {
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null)
+        {
+            followers.increment();
+            return await(existing);
+        }
+
+        leaders.increment();
+        try
+        {
+            V value = loader.get();
+            call.complete(value);
+            return value;
+        }
+        catch (RuntimeException | Error e)
+        {
+            call.completeExceptionally(e);
+            throw e;
+        }
+        finally
+        {
+            inFlight.remove(key, call);
+        }
+    }
+
+
+    /**
+     * 讓之後的請求不再加入目前進行中的查詢
+     * 寫入提交後呼叫：進行中的查詢可能在寫入之前就讀到舊資料，之後的請求必須重新查詢
+     * @param key 查詢的鍵
+     */
+    public void forget(K key)
+    {
+        inFlight.remove(key);
+    }
+
+
+    private V await(CompletableFuture<V> call)
+    {
+        try
+        {
+            return call.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            timeouts.increment();
+            throw new QueryTimeoutException("等待相同查詢的結果超過 " + timeout.toMillis() + " ms", e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new QueryTimeoutException("等待相同查詢的結果時被中斷", e);
+        }
+        catch (ExecutionException e)
+        {
+            // leader 只會以 RuntimeException 或 Error 結束，原樣拋出，例外處理和沒有合併時相同
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime)
+            {
+                throw runtime;
+            }
+            throw (Error) cause;
+        }
+    }
+}
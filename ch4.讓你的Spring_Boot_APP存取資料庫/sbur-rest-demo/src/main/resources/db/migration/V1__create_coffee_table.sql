@@ -0,0 +1,7 @@
+-- 第四章 讓你的 Spring Boot APP 存取資料庫
+-- coffee 表，結構和原本 ddl-auto: update 依 Coffee 實體建立的相同。
+-- 既有的資料庫已經有這張表，所以用 IF NOT EXISTS。
+CREATE TABLE IF NOT EXISTS coffee (
+    id   VARCHAR(255) NOT NULL PRIMARY KEY,
+    name VARCHAR(255)
+);
@@ -0,0 +1,5 @@
+-- 名稱查詢忽略大小寫，原本產生的 upper(name) = upper(?) 用不到任何索引，只能全表掃描。
+-- 加一個由資料庫自動維護的小寫名稱欄位，並在上面建立索引。
+ALTER TABLE coffee ADD COLUMN IF NOT EXISTS name_lower VARCHAR(255) GENERATED ALWAYS AS (LOWER(name));
+
+CREATE INDEX IF NOT EXISTS idx_coffee_name_lower ON coffee (name_lower);
@@ -0,0 +1,6 @@
+-- 每一筆咖啡的版本號，用來產生 GET /coffees/{id} 的 ETag。
+-- 版本號取自序列而不是逐筆加一：同一個 id 被刪除後重新建立時，
+-- 新的版本號一定比以前用過的都大，客戶端手上的舊 ETag 不會誤判為沒有變更。
+CREATE SEQUENCE IF NOT EXISTS coffee_version_seq;
+
+ALTER TABLE coffee ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
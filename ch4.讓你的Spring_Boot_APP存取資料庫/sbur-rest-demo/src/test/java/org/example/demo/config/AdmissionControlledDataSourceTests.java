@@ -0,0 +1,61 @@
+package org.example.demo.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 准入控制：持有或等待連線的請求達到上限時立即失敗，許可在連線 close() 時歸還，而且只歸還一次。
+ */
+public class AdmissionControlledDataSourceTests
+{
+    private static final String URL = "jdbc:h2:mem:admission;DB_CLOSE_DELAY=-1";
+
+    @Test
+    void rejectsImmediatelyWhenAllPermitsAreTaken() throws SQLException
+    {
+        AdmissionControlledDataSource dataSource = new AdmissionControlledDataSource(h2(), 2);
+
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+        assertThat(dataSource.availablePermits()).isZero();
+
+        long start = System.nanoTime();
+        assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+        assertThat(System.nanoTime() - start).isLessThan(100_000_000L);       // 不等待
+
+        first.close();
+        first.close();      // 重複 close() 不會多歸還
+        assertThat(dataSource.availablePermits()).isEqualTo(1);
+
+        Connection third = dataSource.getConnection();
+        assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+
+        second.close();
+        third.close();
+        assertThat(dataSource.availablePermits()).isEqualTo(2);
+    }
+
+    @Test
+    void releasesThePermitWhenTheTargetFails()
+    {
+        DataSource failing = new DriverManagerDataSource("jdbc:h2:invalid:");
+        AdmissionControlledDataSource dataSource = new AdmissionControlledDataSource(failing, 1);
+
+        assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLException.class);
+        assertThat(dataSource.availablePermits()).isEqualTo(1);
+    }
+
+
+    private static DataSource h2()
+    {
+        return new DriverManagerDataSource(URL);
+    }
+}
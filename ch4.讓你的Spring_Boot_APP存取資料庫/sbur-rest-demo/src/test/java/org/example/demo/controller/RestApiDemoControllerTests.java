@@ -0,0 +1,241 @@
+package org.example.demo.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.example.demo.model.CoffeeChange;
+import org.example.demo.protobuf.CoffeeProtobufHttpMessageConverter;
+import org.example.demo.service.CoffeeChangeFeed;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * RestApiDemoController 的請求驗證和多筆端點的結果：不合法的請求必須是 400，不可以在服務或資料庫裡變成 500。
+ * SQL 敘述的數量由 SqlStatementBudgetTests 檢查，這裡只檢查回應的內容。
+ * 初始資料在啟動後以背景執行緒載入，會和計算筆數的測試互相干擾，所以關閉。
+ */
+@SpringBootTest(properties = {"spring.datasource.url=jdbc:h2:mem:controller", "coffee.seed.enabled=false",
+        "coffee.lookup.max-ids=" + RestApiDemoControllerTests.MAX_IDS})
+@AutoConfigureMockMvc
+public class RestApiDemoControllerTests
+{
+    private static final int CHUNK_SIZE = 500;      // CoffeeService.IN_CLAUSE_CHUNK_SIZE
+    static final int MAX_IDS = CHUNK_SIZE * 2 + 1;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoSpyBean
+    private CoffeeChangeFeed changeFeed;
+
+    @Test
+    void lookupReturnsEachIdOnceInRequestOrder() throws Exception
+    {
+        List<String> existing = newCoffees(2);
+        String missing = UUID.randomUUID().toString();
+
+        mockMvc.perform(post("/coffees/lookup").contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonArray(List.of(existing.get(1), missing, existing.get(0), existing.get(1), missing))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.found.length()").value(2))
+                .andExpect(jsonPath("$.found[0].id").value(existing.get(1)))
+                .andExpect(jsonPath("$.found[1].id").value(existing.get(0)))
+                .andExpect(jsonPath("$.missing.length()").value(1))
+                .andExpect(jsonPath("$.missing[0]").value(missing));
+    }
+
+    @Test
+    void lookupFindsIdsAcrossInClauseChunks() throws Exception
+    {
+        // 存在的 id 分散在三段 IN 子句裡：第一段的開頭、第二段的開頭和最後一段唯一的一個
+        List<String> existing = newCoffees(3);
+        List<String> ids = ids(MAX_IDS);
+        ids.set(0, existing.get(0));
+        ids.set(CHUNK_SIZE, existing.get(1));
+        ids.set(MAX_IDS - 1, existing.get(2));
+
+        mockMvc.perform(post("/coffees/lookup").contentType(MediaType.APPLICATION_JSON).content(jsonArray(ids)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.found.length()").value(3))
+                .andExpect(jsonPath("$.found[0].id").value(existing.get(0)))
+                .andExpect(jsonPath("$.found[1].id").value(existing.get(1)))
+                .andExpect(jsonPath("$.found[2].id").value(existing.get(2)))
+                .andExpect(jsonPath("$.missing.length()").value(MAX_IDS - 3));
+    }
+
+    @Test
+    void lookupRejectsNullIdsAndTooManyIds() throws Exception
+    {
+        mockMvc.perform(post("/coffees/lookup").contentType(MediaType.APPLICATION_JSON)
+                        .content("[\"" + UUID.randomUUID() + "\",null]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/coffees/lookup").contentType(MediaType.APPLICATION_JSON).content(jsonArray(ids(MAX_IDS + 1))))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void batchRenameUpdatesOnlyExistingIdsAndTheLastNameWins() throws Exception
+    {
+        List<String> ids = newCoffees(2);
+        String missing = UUID.randomUUID().toString();
+
+        mockMvc.perform(patch("/coffees/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"id\":\"" + ids.get(0) + "\",\"name\":\"First\"},"
+                                + "{\"id\":\"" + missing + "\",\"name\":\"Missing\"},"
+                                + "{\"id\":\"" + ids.get(1) + "\",\"name\":\"Second\"},"
+                                + "{\"id\":\"" + ids.get(0) + "\",\"name\":\"Last\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.requested").value(4))
+                .andExpect(jsonPath("$.affected").value(2));
+
+        mockMvc.perform(get("/coffees/{id}", ids.get(0))).andExpect(jsonPath("$.name").value("Last"));
+        mockMvc.perform(get("/coffees/{id}", ids.get(1))).andExpect(jsonPath("$.name").value("Second"));
+        mockMvc.perform(post("/coffees/lookup").contentType(MediaType.APPLICATION_JSON).content(jsonArray(List.of(missing))))
+                .andExpect(jsonPath("$.missing[0]").value(missing));
+    }
+
+    @Test
+    void batchDeleteCountsAndPublishesOnlyExistingIds() throws Exception
+    {
+        List<String> ids = newCoffees(2);
+        String missing = UUID.randomUUID().toString();
+
+        mockMvc.perform(delete("/coffees/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonArray(List.of(ids.get(0), missing, ids.get(1), ids.get(0)))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.requested").value(4))
+                .andExpect(jsonPath("$.affected").value(2));
+
+        mockMvc.perform(post("/coffees/lookup").contentType(MediaType.APPLICATION_JSON).content(jsonArray(ids)))
+                .andExpect(jsonPath("$.found.length()").value(0))
+                .andExpect(jsonPath("$.missing.length()").value(2));
+
+        // 變更串流只收到真的被刪除的 id，每個一次
+        verify(changeFeed).publish(CoffeeChange.Type.DELETED, ids.get(0), null);
+        verify(changeFeed).publish(CoffeeChange.Type.DELETED, ids.get(1), null);
+        verify(changeFeed, never()).publish(CoffeeChange.Type.DELETED, missing, null);
+    }
+
+    @Test
+    void batchWritesRejectNullIds() throws Exception
+    {
+        List<String> ids = newCoffees(1);
+
+        mockMvc.perform(delete("/coffees/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[\"" + ids.get(0) + "\",null]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/coffees/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"id\":\"" + ids.get(0) + "\",\"name\":\"Renamed\"},{\"id\":null,\"name\":\"Nameless\"}]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/coffees/batch").contentType(MediaType.APPLICATION_JSON).content("[null]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/coffees/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"id\":\"" + ids.get(0) + "\",\"name\":\"Renamed\"},{\"id\":null,\"name\":\"Nameless\"}]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/coffees").contentType(MediaType.APPLICATION_JSON).content("{\"id\":null,\"name\":\"Nameless\"}"))
+                .andExpect(status().isBadRequest());
+
+        // 整批在寫入之前就被拒絕
+        mockMvc.perform(get("/coffees/{id}", ids.get(0))).andExpect(jsonPath("$.name").value("Batch"));
+    }
+
+    @Test
+    void eTagDependsOnTheNegotiatedRepresentation() throws Exception
+    {
+        String id = newCoffees(1).get(0);
+
+        String json = mockMvc.perform(get("/coffees/{id}", id).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String protobuf = mockMvc.perform(get("/coffees/{id}", id).accept(CoffeeProtobufHttpMessageConverter.PROTOBUF))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(CoffeeProtobufHttpMessageConverter.PROTOBUF))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(protobuf).isNotEqualTo(json);
+
+        // 只有同一個格式的 ETag 才是 304，304 也要帶 Vary
+        mockMvc.perform(get("/coffees/{id}", id).accept(MediaType.APPLICATION_JSON).header(HttpHeaders.IF_NONE_MATCH, json))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)));
+        mockMvc.perform(get("/coffees/{id}", id).accept(CoffeeProtobufHttpMessageConverter.PROTOBUF).header(HttpHeaders.IF_NONE_MATCH, json))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void collectionETagDependsOnTheNegotiatedRepresentation() throws Exception
+    {
+        newCoffees(1);
+        MediaType cbor = MediaType.parseMediaType("application/cbor");
+
+        String json = mockMvc.perform(get("/coffees").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String binary = mockMvc.perform(get("/coffees").accept(cbor))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(cbor))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(binary).isNotEqualTo(json);
+
+        mockMvc.perform(get("/coffees").accept(cbor).header(HttpHeaders.IF_NONE_MATCH, binary))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)));
+        mockMvc.perform(get("/coffees").accept(cbor).header(HttpHeaders.IF_NONE_MATCH, json))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/coffees").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)));
+    }
+
+
+    private List<String> newCoffees(int count) throws Exception
+    {
+        List<String> ids = ids(count);
+        StringBuilder coffees = new StringBuilder("[");
+        for (String id : ids)
+        {
+            coffees.append(coffees.length() > 1 ? "," : "").append("{\"id\":\"").append(id).append("\",\"name\":\"Batch\"}");
+        }
+        coffees.append(']');
+        mockMvc.perform(post("/coffees/batch").contentType(MediaType.APPLICATION_JSON).content(coffees.toString()))
+                .andExpect(status().isOk());
+        return ids;
+    }
+
+    private static List<String> ids(int count)
+    {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return ids;
+    }
+
+    private static String jsonArray(List<String> values)
+    {
+        return "[\"" + String.join("\",\"", values) + "\"]";
+    }
+}
@@ -0,0 +1,172 @@
+package org.example.demo.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.example.demo.metrics.SqlDiagnosticsFilter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+/**
+ * 每個端點的 SQL 敘述預算：以 diagnostics 設定檔的 X-SQL-Statements 標頭檢查每個請求送到資料庫的敘述數量。
+ * 預算是精確值而不是上限，多出一個 SELECT（例如 existsById() 或 merge 前的查詢）就會讓建置失敗；
+ * 真的需要改變預算時，連同這裡的數字一起修改。
+ * 每個測試都用新的 id 和名稱，快取命中與否不會受到其他測試的影響。
+ * 初始資料在啟動後以背景執行緒載入，會讓集合 ETag 在測試中途改變，所以關閉。
+ */
+@SpringBootTest(properties = {"spring.datasource.url=jdbc:h2:mem:sql-budget", "coffee.seed.enabled=false"})
+@AutoConfigureMockMvc
+@ActiveProfiles("diagnostics")
+public class SqlStatementBudgetTests
+{
+    private static final int BATCH_SIZE = 500;      // application.yaml 的 hibernate.jdbc.batch_size，也是 IN 子句的分段大小
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void getCoffeesIsOneSelectAndNotModifiedIsNone() throws Exception
+    {
+        MvcResult result = perform(get("/coffees"), 1);
+
+        String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        assertStatements(mockMvc.perform(get("/coffees").header(HttpHeaders.IF_NONE_MATCH, eTag)).andReturn(), 0);
+    }
+
+    @Test
+    void getCoffeesPageIsOneSelect() throws Exception
+    {
+        perform(get("/coffees").param("size", "2"), 1);
+    }
+
+    @Test
+    void getCoffeeByIdIsOneSelectThenServedFromCache() throws Exception
+    {
+        String id = newCoffee();
+
+        perform(get("/coffees/{id}", id), 1);
+        perform(get("/coffees/{id}", id), 0);
+    }
+
+    @Test
+    void getCoffeeByNameIsOneSelectThenServedFromCache() throws Exception
+    {
+        String name = "Budget " + UUID.randomUUID();
+        perform(put("/coffees/{id}", UUID.randomUUID()).contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"" + name + "\"}"), 1);
+
+        perform(get("/coffees/name/{name}", name), 1);
+        perform(get("/coffees/name/{name}", name), 0);
+    }
+
+    @Test
+    void lookupIsOneSelectPerInClauseChunk() throws Exception
+    {
+        perform(post("/coffees/lookup").contentType(MediaType.APPLICATION_JSON)
+                .content(jsonArray(ids(BATCH_SIZE))), 1);
+        perform(post("/coffees/lookup").contentType(MediaType.APPLICATION_JSON)
+                .content(jsonArray(ids(BATCH_SIZE + 1))), 2);
+    }
+
+    @Test
+    void postCoffeeIsOneMerge() throws Exception
+    {
+        perform(post("/coffees").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\":\"" + UUID.randomUUID() + "\",\"name\":\"Budget\"}"), 1);
+    }
+
+    @Test
+    void putCoffeeIsOneMergeForBothInsertAndUpdate() throws Exception
+    {
+        String id = UUID.randomUUID().toString();
+
+        perform(put("/coffees/{id}", id).contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"Before\"}"), 1);
+        perform(put("/coffees/{id}", id).contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"After\"}"), 1);
+    }
+
+    @Test
+    void deleteCoffeeIsOneDelete() throws Exception
+    {
+        perform(delete("/coffees/{id}", newCoffee()), 1);
+    }
+
+    @Test
+    void batchWritesAreOneStatementPerJdbcBatch() throws Exception
+    {
+        List<String> ids = ids(BATCH_SIZE * 2);
+        StringBuilder coffees = new StringBuilder("[");
+        for (String id : ids)
+        {
+            coffees.append(coffees.length() > 1 ? "," : "").append("{\"id\":\"").append(id).append("\",\"name\":\"Budget\"}");
+        }
+        coffees.append(']');
+
+        perform(post("/coffees/batch").contentType(MediaType.APPLICATION_JSON).content(coffees.toString()), 2);
+        perform(patch("/coffees/batch").contentType(MediaType.APPLICATION_JSON).content(coffees.toString()), 2);
+        perform(delete("/coffees/batch").contentType(MediaType.APPLICATION_JSON).content(jsonArray(ids)), 2);
+    }
+
+    @Test
+    void streamImportIsOneStatementPerChunk() throws Exception
+    {
+        String ndjson = "{\"id\":\"" + UUID.randomUUID() + "\",\"name\":\"Budget\"}\n"
+                + "{\"id\":\"" + UUID.randomUUID() + "\",\"name\":\"Budget\"}\n";
+
+        perform(post("/coffees/batch/stream").contentType(MediaType.APPLICATION_NDJSON).content(ndjson), 1);
+    }
+
+
+    private MvcResult perform(RequestBuilder request, int expectedStatements) throws Exception
+    {
+        MvcResult result = mockMvc.perform(request).andReturn();
+        assertThat(result.getResponse().getStatus()).isLessThan(400);
+        assertStatements(result, expectedStatements);
+        return result;
+    }
+
+    private static void assertStatements(MvcResult result, int expectedStatements)
+    {
+        assertThat(result.getResponse().getHeader(SqlDiagnosticsFilter.STATEMENTS_HEADER))
+                .as("%s %s 的 SQL 敘述數量", result.getRequest().getMethod(), result.getRequest().getRequestURI())
+                .isEqualTo(Integer.toString(expectedStatements));
+    }
+
+    private String newCoffee() throws Exception
+    {
+        String id = UUID.randomUUID().toString();
+        mockMvc.perform(put("/coffees/{id}", id).contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"Budget\"}"));
+        return id;
+    }
+
+    private static List<String> ids(int count)
+    {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return ids;
+    }
+
+    private static String jsonArray(List<String> values)
+    {
+        return "[\"" + String.join("\",\"", values) + "\"]";
+    }
+}
@@ -0,0 +1,173 @@
+package org.example.demo.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.example.demo.model.Coffee;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// 初始資料在啟動後以背景執行緒載入，會和計算筆數的測試互相干擾，所以關閉
+@SpringBootTest(properties = {"spring.datasource.url=jdbc:h2:mem:bulk-operations", "coffee.seed.enabled=false"})
+public class CoffeeBulkOperationsTests
+{
+    private static final int ROWS = 10_000;
+    private static final int BATCH_SIZE = 500;      // application.yaml 的 hibernate.jdbc.batch_size
+
+    @Autowired
+    private CoffeeRepository coffeeRepository;
+
+    @Autowired
+    private StatementCounter statementCounter;
+
+    @Test
+    void upsertAllSendsOneJdbcBatchPerBatchSizeAndNoSelects()
+    {
+        List<Coffee> coffees = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++)
+        {
+            coffees.add(new Coffee("Coffee " + i));
+        }
+        long before = coffeeRepository.count();
+
+        statementCounter.reset();
+        coffeeRepository.upsertAll(coffees);
+        int batches = statementCounter.batches.get();
+        int singles = statementCounter.singles.get();
+
+        assertThat(batches).isEqualTo(ROWS / BATCH_SIZE);
+        assertThat(singles).isZero();
+        assertThat(coffeeRepository.count()).isEqualTo(before + ROWS);
+    }
+
+    @Test
+    void upsertAllUpdatesExistingRows()
+    {
+        Coffee coffee = new Coffee("Before");
+        coffeeRepository.upsertAll(List.of(coffee));
+
+        coffee.setName("After");
+        coffeeRepository.upsertAll(List.of(coffee));
+
+        assertThat(coffeeRepository.findById(coffee.getId())).get()
+                .extracting(Coffee::getName).isEqualTo("After");
+    }
+
+
+    /**
+     * 計算送到資料庫的敘述次數：executeBatch() 算一個批次，其他 execute*() 各算一次
+     */
+    static class StatementCounter
+    {
+        final AtomicInteger batches = new AtomicInteger();
+        final AtomicInteger singles = new AtomicInteger();
+
+        void reset()
+        {
+            batches.set(0);
+            singles.set(0);
+        }
+
+        DataSource wrap(DataSource dataSource)
+        {
+            return (DataSource) proxy(dataSource, DataSource.class);
+        }
+
+        // DataSource -> Connection -> Statement 一路包裝下去，只在 Statement 上計數
+        private Object proxy(Object target, Class<?> type)
+        {
+            InvocationHandler handler = (p, method, args) ->
+            {
+                count(type, method);
+
+                Object result;
+                try
+                {
+                    result = method.invoke(target, args);
+                }
+                catch (InvocationTargetException e)
+                {
+                    throw e.getTargetException();
+                }
+
+                if (result instanceof CallableStatement)
+                {
+                    return result;
+                }
+                if (result instanceof PreparedStatement)
+                {
+                    return proxy(result, PreparedStatement.class);
+                }
+                if (result instanceof Statement)
+                {
+                    return proxy(result, Statement.class);
+                }
+                if (result instanceof Connection)
+                {
+                    return proxy(result, Connection.class);
+                }
+                return result;
+            };
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type}, handler);
+        }
+
+        private void count(Class<?> type, Method method)
+        {
+            if (!Statement.class.isAssignableFrom(type))
+            {
+                return;
+            }
+
+            String name = method.getName();
+            if (name.equals("executeBatch") || name.equals("executeLargeBatch"))
+            {
+                batches.incrementAndGet();
+            }
+            else if (name.startsWith("execute"))
+            {
+                singles.incrementAndGet();
+            }
+        }
+    }
+
+    @TestConfiguration
+    static class StatementCounterConfiguration
+    {
+        @Bean
+        StatementCounter statementCounter()
+        {
+            return new StatementCounter();
+        }
+
+        @Bean
+        static BeanPostProcessor statementCountingDataSource(ObjectProvider<StatementCounter> counter)
+        {
+            return new BeanPostProcessor()
+            {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName)
+                {
+                    return (bean instanceof DataSource dataSource) ? counter.getObject().wrap(dataSource) : bean;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.example.demo.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import org.example.demo.model.Coffee;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:name-index")
+public class CoffeeNameIndexTests
+{
+    @Autowired
+    private CoffeeRepository coffeeRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void findByNameIgnoreCaseUsesTheNameIndex()
+    {
+        String sql = CoffeeRepository.FIND_BY_NAME_IGNORE_CASE_SQL.replace(":name", "'Cafe Lareno'");
+
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+
+        assertThat(plan).containsIgnoringCase("IDX_COFFEE_NAME_LOWER")
+                .doesNotContainIgnoringCase("tableScan");
+    }
+
+    @Test
+    void findByNameIgnoreCaseMatchesAnyCase()
+    {
+        Coffee coffee = new Coffee("Kaldi's Coffee");
+        coffeeRepository.upsertAll(List.of(coffee));
+
+        assertThat(coffeeRepository.findByNameIgnoreCase("KALDI'S COFFEE")).get()
+                .extracting(Coffee::getId).isEqualTo(coffee.getId());
+    }
+
+    @Test
+    void nameLowerFollowsRenames()
+    {
+        Coffee coffee = new Coffee("Old Name");
+        coffeeRepository.upsertAll(List.of(coffee));
+        coffeeRepository.upsert(coffee.getId(), "New Name");
+
+        assertThat(coffeeRepository.findByNameIgnoreCase("old name")).isEmpty();
+        assertThat(coffeeRepository.findByNameIgnoreCase("new name")).isPresent();
+    }
+}
@@ -0,0 +1,93 @@
+package org.example.demo.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.example.demo.model.Coffee;
+import org.example.demo.model.CoffeeView;
+import org.example.demo.repository.CoffeeRepository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mockingDetails;
+
+/**
+ * 查詢讀到舊資料之後、放進快取之前，寫入提交並讓快取失效：舊資料不可以被放回快取。
+ * 以 spy 讓查詢在讀完資料庫之後停住，等寫入完成才放行。
+ */
+@SpringBootTest(properties = {"spring.datasource.url=jdbc:h2:mem:service-cache", "coffee.seed.enabled=false"})
+public class CoffeeServiceCacheTests
+{
+    @Autowired
+    private CoffeeService coffeeService;
+
+    @MockitoSpyBean
+    private CoffeeRepository coffeeRepository;
+
+    @Test
+    void findByIdDoesNotCacheARowReadBeforeAnEviction() throws Exception
+    {
+        String id = UUID.randomUUID().toString();
+        coffeeService.upsert(new Coffee(id, "Before"));
+        CountDownLatch read = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        doAnswer(invocation ->
+        {
+            Object row = delegate().answer(invocation);
+            read.countDown();
+            written.await(5, TimeUnit.SECONDS);
+            return row;
+        }).when(coffeeRepository).findViewById(eq(id));
+
+        CompletableFuture<Optional<CoffeeView>> stale = CompletableFuture.supplyAsync(() -> coffeeService.findById(id));
+        assertThat(read.await(5, TimeUnit.SECONDS)).isTrue();
+        coffeeService.upsert(new Coffee(id, "After"));
+        written.countDown();
+
+        assertThat(stale.get(5, TimeUnit.SECONDS)).map(CoffeeView::name).contains("Before");
+        assertThat(coffeeService.findById(id)).map(CoffeeView::name).contains("After");
+    }
+
+    @Test
+    void findByNameDoesNotCacheARowReadBeforeAnEviction() throws Exception
+    {
+        String id = UUID.randomUUID().toString();
+        String name = "Name " + id;
+        coffeeService.upsert(new Coffee(id, name));
+        CountDownLatch read = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        doAnswer(invocation ->
+        {
+            Object row = delegate().answer(invocation);
+            read.countDown();
+            written.await(5, TimeUnit.SECONDS);
+            return row;
+        }).when(coffeeRepository).findViewByNameIgnoreCase(anyString());
+
+        CompletableFuture<Optional<CoffeeView>> stale = CompletableFuture.supplyAsync(() -> coffeeService.findByName(name));
+        assertThat(read.await(5, TimeUnit.SECONDS)).isTrue();
+        coffeeService.deleteById(id);
+        written.countDown();
+
+        assertThat(stale.get(5, TimeUnit.SECONDS)).isPresent();
+        assertThat(coffeeService.findByName(name)).isEmpty();
+        assertThat(coffeeService.findById(id)).isEmpty();
+    }
+
+    // 儲存庫是 JDK 代理，spy 以委派呼叫原本的 bean，不能用 callRealMethod()
+    private Answer<?> delegate()
+    {
+        return mockingDetails(coffeeRepository).getMockCreationSettings().getDefaultAnswer();
+    }
+}
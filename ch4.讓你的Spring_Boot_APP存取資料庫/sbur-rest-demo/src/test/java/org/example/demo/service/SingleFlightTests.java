@@ -0,0 +1,141 @@
+package org.example.demo.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * SingleFlight 的合併、例外傳遞和逾時。
+ * leader 的查詢以 CountDownLatch 卡住，直到所有 follower 都已經加入，結果才不會受執行緒排程影響。
+ */
+public class SingleFlightTests
+{
+    private static final int CALLERS = 50;
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception
+    {
+        SingleFlight<String, String> flight = new SingleFlight<>("id", Duration.ofSeconds(10), registry);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = runConcurrently(() -> flight.load("hot", () ->
+        {
+            loads.incrementAndGet();
+            await(release);
+            return "coffee";
+        }));
+        waitForFollowers(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results)
+        {
+            assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo("coffee");
+        }
+        assertThat(loads).hasValue(1);
+        assertThat(registry.get("coffee.lookup.coalesced").tag("role", "leader").counter().count()).isEqualTo(1);
+        assertThat(registry.get("coffee.lookup.in.flight").gauge().value()).isZero();
+    }
+
+    @Test
+    void leaderFailureIsPropagatedAndNotRemembered() throws Exception
+    {
+        SingleFlight<String, String> flight = new SingleFlight<>("id", Duration.ofSeconds(10), registry);
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("database down");
+
+        List<Future<String>> results = runConcurrently(() -> flight.load("hot", () ->
+        {
+            await(release);
+            throw failure;
+        }));
+        waitForFollowers(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results)
+        {
+            assertThatThrownBy(() -> result.get(10, TimeUnit.SECONDS)).hasCause(failure);
+        }
+        assertThat(flight.load("hot", () -> "recovered")).isEqualTo("recovered");
+    }
+
+    @Test
+    void followerGivesUpAfterTimeout() throws Exception
+    {
+        SingleFlight<String, String> flight = new SingleFlight<>("id", Duration.ofMillis(50), registry);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<String> leader = executor.submit(() -> flight.load("slow", () ->
+            {
+                await(release);
+                return "coffee";
+            }));
+            while (registry.get("coffee.lookup.in.flight").gauge().value() == 0)
+            {
+                Thread.onSpinWait();
+            }
+
+            assertThatThrownBy(() -> flight.load("slow", () -> "unexpected")).isInstanceOf(QueryTimeoutException.class);
+            assertThat(registry.get("coffee.lookup.coalesced.timeouts").counter().count()).isEqualTo(1);
+
+            release.countDown();
+            assertThat(leader.get(10, TimeUnit.SECONDS)).isEqualTo("coffee");
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+
+    private List<Future<String>> runConcurrently(Callable<String> call)
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        List<Future<String>> results = new ArrayList<>(CALLERS);
+        for (int i = 0; i < CALLERS; i++)
+        {
+            results.add(executor.submit(call));
+        }
+        executor.shutdown();
+        return results;
+    }
+
+    private void waitForFollowers(int expected)
+    {
+        while (registry.get("coffee.lookup.coalesced").tag("role", "follower").counter().count() < expected)
+        {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}